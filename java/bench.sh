@@ -0,0 +1,35 @@
+#! /bin/bash
+# Usage: ./bench.sh [name of database] [port_number] [userID] [scale ...]
+# Benchmarks the shipped data/ set and then one synthetic set per scale.
+# WARNING: every data set is loaded with --truncate, replacing the tables' contents.
+# Results go to bench-<set>.csv; an existing file is used as the baseline and
+# renamed to bench-<set>.prev.csv, so a throughput drop of more than 20% fails the run.
+DBNAME=$1
+PORT=$2
+USER=$3
+CP="lib/*:bin/"
+status=0
+
+source ./compile.sh
+
+run_set() {
+	local name=$1 dir=$2
+	java -cp "$CP" DataLoader $DBNAME $PORT $USER --data=$dir --truncate || return 1
+	local base=""
+	if [ -f bench-$name.csv ]; then
+		mv bench-$name.csv bench-$name.prev.csv
+		base="--baseline=bench-$name.prev.csv"
+	fi
+	java -cp "$CP" Bench $DBNAME $PORT $USER --out=bench-$name.csv $base
+}
+
+run_set shipped ../data || status=1
+for scale in "${@:4}"; do
+	dir=/tmp/$USER/synthetic-x$scale
+	java -cp "$CP" SyntheticData $dir --scale=$scale || exit 1
+	run_set x$scale $dir || status=1
+done
+
+# leave the database with the shipped data
+java -cp "$CP" DataLoader $DBNAME $PORT $USER --data=../data --truncate
+exit $status
@@ -0,0 +1,380 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Micro-benchmarks of the DBproject query and booking paths against a live
+ * database.  Each benchmark is warmed up for a few iterations, so the JIT
+ * and the server's plan and buffer caches settle, and then measured for a
+ * fixed number of timed iterations.  Results are printed and can be written
+ * to a CSV file; given the CSV of an earlier run as a baseline, benchmarks
+ * whose throughput dropped by more than the tolerance are reported as
+ * regressions and the run exits with status 1.
+ *
+ * Usage: java Bench <dbname> <port> <user> [--warmup=3] [--iterations=5] [--time=1000]
+ *                   [--only=REGEX] [--out=FILE.csv] [--baseline=FILE.csv] [--tolerance=0.2]
+ *
+ * Run it against the shipped data/ set and against larger sets produced by
+ * SyntheticData and loaded with DataLoader (see bench.sh).
+ *
+ */
+
+public class Bench {
+	/**
+	 * One operation to measure.  Every call is timed individually.
+	 */
+	interface Op {
+		void run() throws Exception;
+	}
+
+	/**
+	 * A named operation; rows says how many rows one call handles so the
+	 * per-row cost can be compared across batch sizes.
+	 */
+	static final class Benchmark {
+		final String name;
+		final int rows;
+		final Op op;
+
+		Benchmark(String name, int rows, Op op) {
+			this.name = name;
+			this.rows = rows;
+			this.op = op;
+		}
+	}
+
+	/**
+	 * Measured figures of one benchmark.
+	 */
+	static final class Result {
+		final String name;
+		final double opsPerSec;
+		final double meanMicros;
+		final double p50Micros;
+		final double p99Micros;
+		final double rowsPerSec;
+		final long samples;
+
+		Result(String name, double opsPerSec, double meanMicros, double p50Micros, double p99Micros,
+				double rowsPerSec, long samples) {
+			this.name = name;
+			this.opsPerSec = opsPerSec;
+			this.meanMicros = meanMicros;
+			this.p50Micros = p50Micros;
+			this.p99Micros = p99Micros;
+			this.rowsPerSec = rowsPerSec;
+			this.samples = samples;
+		}
+
+		String toCsv() {
+			return String.format(Locale.ROOT, "%s,%.1f,%.1f,%.1f,%.1f,%.1f,%d",
+				name, opsPerSec, meanMicros, p50Micros, p99Micros, rowsPerSec, samples);
+		}
+	}
+
+	static final String CSV_HEADER = "benchmark,ops_per_sec,mean_us,p50_us,p99_us,rows_per_sec,samples";
+	static final int INSERT_ROWS = 100;
+
+	private final DBproject _esql;
+	private final int _warmup;
+	private final int _iterations;
+	private final long _iterationNanos;
+	private final Random _random = new Random(42);
+
+	public Bench(DBproject esql, int warmup, int iterations, long iterationMillis) {
+		this._esql = esql;
+		this._warmup = warmup;
+		this._iterations = iterations;
+		this._iterationNanos = iterationMillis * 1000000L;
+	}
+
+	/**
+	 * Method to measure one benchmark.  Each timed iteration calls the
+	 * operation until the iteration time is used up; throughput is the
+	 * median over iterations and latencies are taken over every call.
+	 *
+	 * @param b the benchmark
+	 * @return the measured figures
+	 * @throws java.lang.Exception when the operation failed
+	 */
+	Result measure(Benchmark b) throws Exception {
+		for (int i = 0; i < _warmup; ++i) {
+			runFor(b.op, null);
+		}
+		double[] throughput = new double[_iterations];
+		long[] latencies = new long[1024];
+		int count = 0;
+		for (int i = 0; i < _iterations; ++i) {
+			List<long[]> sink = new ArrayList<long[]>();
+			long start = System.nanoTime();
+			int calls = runFor(b.op, sink);
+			throughput[i] = calls / ((System.nanoTime() - start) / 1e9);
+			for (long[] chunk : sink) {
+				int n = (int) chunk[0];
+				if (count + n > latencies.length) {
+					latencies = Arrays.copyOf(latencies, Math.max(latencies.length * 2, count + n));
+				}
+				System.arraycopy(chunk, 1, latencies, count, n);
+				count += n;
+			}
+		}
+		Arrays.sort(throughput);
+		Arrays.sort(latencies, 0, count);
+		long total = 0;
+		for (int i = 0; i < count; ++i) {
+			total += latencies[i];
+		}
+		double ops = throughput[throughput.length / 2];
+		return new Result(b.name, ops, count == 0 ? 0 : total / 1e3 / count,
+			percentile(latencies, count, 0.50) / 1e3, percentile(latencies, count, 0.99) / 1e3,
+			ops * b.rows, count);
+	}//end measure
+
+	//calls op until the iteration time is up; latencies go to sink in chunks of [n, l1, .., ln]
+	private int runFor(Op op, List<long[]> sink) throws Exception {
+		long end = System.nanoTime() + _iterationNanos;
+		long[] chunk = new long[1025];
+		int calls = 0;
+		long now = System.nanoTime();
+		while (now < end) {
+			long t0 = now;
+			op.run();
+			now = System.nanoTime();
+			++calls;
+			if (sink != null) {
+				chunk[(int) ++chunk[0]] = now - t0;
+				if (chunk[0] == chunk.length - 1) {
+					sink.add(chunk);
+					chunk = new long[1025];
+				}
+			}
+		}
+		if (sink != null && chunk[0] > 0) {
+			sink.add(chunk);
+		}
+		return calls;
+	}
+
+	private static long percentile(long[] sorted, int count, double q) {
+		if (count == 0) {
+			return 0;
+		}
+		return sorted[Math.min(count - 1, (int) Math.ceil(q * count) - 1)];
+	}
+
+	/**
+	 * Method to build the benchmark list.  The scratch fixture is used by
+	 * the booking benchmark; the bench_rows table by the insert ones.
+	 */
+	List<Benchmark> benchmarks(final ScratchFlight scratch, final int[] flights) {
+		final String scan = "SELECT rnum, cid, fid, status FROM Reservation";
+		final String lookup = "SELECT fnum, cost, num_sold FROM Flight WHERE fnum = ";
+		final RowHandler discard = rs -> rs.getString(1);
+		final int[] nextCustomer = { 0 };
+		List<Benchmark> list = new ArrayList<Benchmark>();
+
+		//materialising a whole table versus streaming it through a cursor
+		list.add(new Benchmark("scan.returnResult", 1, () -> _esql.executeQueryAndReturnResult(scan)));
+		list.add(new Benchmark("scan.stream", 1, () -> _esql.executeQueryAndStreamResult(scan, discard)));
+		//the same rows read with the typed getters instead of as text
+		list.add(new Benchmark("scan.queryList", 1, () -> _esql.queryList(scan,
+			rs -> new Booking(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4).charAt(0)))));
+
+		//literal SQL parsed on every call versus a cached prepared statement
+		list.add(new Benchmark("lookup.statement", 1, () -> _esql.executeInTransaction(pc -> {
+			try (Statement stmt = pc.getConnection().createStatement();
+					ResultSet rs = stmt.executeQuery(lookup + randomFlight(flights))) {
+				return rs.next();
+			}
+		})));
+		list.add(new Benchmark("lookup.prepared", 1, () -> _esql.executeInTransaction(pc -> {
+			PreparedStatement stmt = pc.prepare(lookup + "?");
+			stmt.setInt(1, randomFlight(flights));
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next();
+			}
+		})));
+
+		//INSERT_ROWS rows per call, one statement each versus one batch
+		list.add(new Benchmark("insert.single", INSERT_ROWS, () -> _esql.executeInTransaction(pc -> {
+			PreparedStatement stmt = pc.prepare("INSERT INTO bench_rows (id, payload) VALUES (?, ?)");
+			for (int i = 0; i < INSERT_ROWS; ++i) {
+				stmt.setInt(1, i);
+				stmt.setString(2, "payload");
+				stmt.executeUpdate();
+			}
+			return null;
+		})));
+		list.add(new Benchmark("insert.batched", INSERT_ROWS, () -> _esql.executeInTransaction(pc -> {
+			PreparedStatement stmt = pc.prepare("INSERT INTO bench_rows (id, payload) VALUES (?, ?)");
+			stmt.clearBatch();
+			for (int i = 0; i < INSERT_ROWS; ++i) {
+				stmt.setInt(1, i);
+				stmt.setString(2, "payload");
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			return null;
+		})));
+
+		//the BookFlight path; once the scratch plane is full bookings are waitlisted
+		list.add(new Benchmark("book", 1, () -> {
+			if (nextCustomer[0] == scratch.customers) {
+				scratch.reset();
+				nextCustomer[0] = 0;
+			}
+			_esql.bookFlight(scratch.flight, scratch.customer(nextCustomer[0]++));
+		}));
+
+		//reports 6 to 9 as run by the menu
+		list.add(new Benchmark("report6.query", 1, () -> _esql.executeQueryAndStreamResult(DBproject.LOAD_SEATS,
+			discard, randomFlight(flights))));
+		list.add(new Benchmark("report6.cached", 1, () -> _esql.getSeatAvailability(randomFlight(flights))));
+		list.add(new Benchmark("report7", 1, () -> _esql.executeQueryAndStreamResult(DBproject.QUERY7, discard)));
+		list.add(new Benchmark("report8", 1, () -> _esql.executeQueryAndStreamResult(DBproject.QUERY8, discard)));
+		list.add(new Benchmark("report9", 1, () -> _esql.executeQueryAndStreamResult(DBproject.QUERY9, discard,
+			randomFlight(flights), "R")));
+		return list;
+	}//end benchmarks
+
+	private int randomFlight(int[] flights) {
+		return flights[_random.nextInt(flights.length)];
+	}
+
+	/**
+	 * Method to read the results of an earlier run.
+	 *
+	 * @param file a CSV written with --out
+	 * @return operations per second by benchmark name
+	 * @throws java.io.IOException when the file cannot be read
+	 */
+	static Map<String, Double> readBaseline(String file) throws IOException {
+		Map<String, Double> baseline = new LinkedHashMap<String, Double>();
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] f = line.split(",");
+				if (f.length >= 2 && !line.equals(CSV_HEADER)) {
+					baseline.put(f[0], Double.parseDouble(f[1]));
+				}
+			}
+		}
+		return baseline;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java [-classpath <classpath>] " + Bench.class.getName()
+				+ " <dbname> <port> <user> [--warmup=3] [--iterations=5] [--time=1000] [--only=REGEX]"
+				+ " [--out=FILE.csv] [--baseline=FILE.csv] [--tolerance=0.2]");
+			return;
+		}
+		int warmup = 3, iterations = 5;
+		long time = 1000;
+		double tolerance = 0.2;
+		Pattern only = null;
+		String out = null, baselineFile = null;
+		for (int i = 3; i < args.length; ++i) {
+			String a = args[i];
+			if (a.startsWith("--warmup=")) {
+				warmup = Integer.parseInt(a.substring("--warmup=".length()));
+			} else if (a.startsWith("--iterations=")) {
+				iterations = Integer.parseInt(a.substring("--iterations=".length()));
+			} else if (a.startsWith("--time=")) {
+				time = Long.parseLong(a.substring("--time=".length()));
+			} else if (a.startsWith("--only=")) {
+				only = Pattern.compile(a.substring("--only=".length()));
+			} else if (a.startsWith("--out=")) {
+				out = a.substring("--out=".length());
+			} else if (a.startsWith("--baseline=")) {
+				baselineFile = a.substring("--baseline=".length());
+			} else if (a.startsWith("--tolerance=")) {
+				tolerance = Double.parseDouble(a.substring("--tolerance=".length()));
+			} else {
+				System.err.println("Unknown option: " + a);
+				return;
+			}
+		}
+		if (iterations < 1) {
+			System.err.println("--iterations must be at least 1");
+			return;
+		}
+		Map<String, Double> baseline = baselineFile == null ? null : readBaseline(baselineFile);
+
+		Class.forName("org.postgresql.Driver");
+		DBproject esql = new DBproject(args[0], args[1], args[2], "", 1, 2);
+		ScratchFlight scratch = null;
+		boolean regressed = false;
+		try {
+			esql.executeUpdate("CREATE UNLOGGED TABLE IF NOT EXISTS bench_rows (id INTEGER, payload TEXT)");
+			scratch = ScratchFlight.create(esql, 150, 5000);
+			int[] flights = esql.queryIntColumn("SELECT fnum FROM Flight WHERE fnum <> ?", scratch.flight);
+			if (flights.length == 0) {
+				throw new IllegalStateException("the database holds no flights; load data/ first");
+			}
+			int reservations = esql.queryInt("SELECT COUNT(*) FROM Reservation");
+			System.out.printf("data set: %d flights, %d reservations; %d warmup and %d x %d ms iterations%n",
+				flights.length, reservations, warmup, iterations, time);
+
+			Bench bench = new Bench(esql, warmup, iterations, time);
+			List<Result> results = new ArrayList<Result>();
+			System.out.printf("%-20s %12s %10s %10s %10s %12s%n", "benchmark", "ops/s", "mean us", "p50 us", "p99 us", "rows/s");
+			for (Benchmark b : bench.benchmarks(scratch, flights)) {
+				if (only != null && !only.matcher(b.name).find()) {
+					continue;
+				}
+				Result r = bench.measure(b);
+				results.add(r);
+				esql.executeUpdate("TRUNCATE bench_rows");
+				String verdict = "";
+				Double before = baseline == null ? null : baseline.get(r.name);
+				if (before != null && before > 0) {
+					double change = r.opsPerSec / before - 1.0;
+					verdict = String.format("%+.1f%%", 100.0 * change);
+					if (change < -tolerance) {
+						verdict += " REGRESSION";
+						regressed = true;
+					}
+				}
+				System.out.printf("%-20s %12.1f %10.1f %10.1f %10.1f %12.1f %s%n", r.name, r.opsPerSec,
+					r.meanMicros, r.p50Micros, r.p99Micros, r.rowsPerSec, verdict);
+			}
+			if (out != null) {
+				try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8))) {
+					w.println(CSV_HEADER);
+					for (Result r : results) {
+						w.println(r.toCsv());
+					}
+				}
+				System.out.println("Results written to " + out);
+			}
+		} catch (SQLException e) {
+			System.err.println("Benchmark failed: " + e.getMessage());
+			regressed = true;
+		} finally {
+			if (scratch != null) {
+				scratch.drop();
+			}
+			esql.executeUpdate("DROP TABLE IF EXISTS bench_rows");
+			esql.cleanup();
+		}
+		if (regressed) {
+			System.exit(1);
+		}
+	}//end main
+}
@@ -0,0 +1,28 @@
+/**
+ * The outcome of booking a flight: the generated reservation number and the
+ * status it was stored with ('R' reserved or 'W' waitlisted).
+ *
+ */
+
+public final class Booking {
+	public final int rnum;
+	public final int cid;
+	public final int fid;
+	public final char status;
+
+	public Booking(int rnum, int cid, int fid, char status) {
+		this.rnum = rnum;
+		this.cid = cid;
+		this.fid = fid;
+		this.status = status;
+	}
+
+	public boolean isReserved() {
+		return status == 'R';
+	}
+
+	@Override
+	public String toString() {
+		return "reservation " + rnum + " (customer " + cid + ", flight " + fid + ", status " + status + ")";
+	}
+}
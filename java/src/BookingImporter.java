@@ -0,0 +1,323 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Bulk import of bookings from a CSV or JSON-lines file.  Every line names a
+ * customer and the flight to book:
+ *
+ *   CSV:   cid,fname,lname,gtype,dob,address,phone,zipcode,flight
+ *   JSONL: {"cid":1,"fname":"..","lname":"..","gtype":"F","dob":"1990-01-31",
+ *           "address":"..","phone":"5555555555","zipcode":"92507","flight":12}
+ *
+ * Lines are validated with the same rules as the interactive BookFlight menu
+ * and written in batches: one transaction per batch locks the flights it
+ * touches, batch-inserts the customers and reservations and updates each
+ * flight's num_sold with a single aggregated UPDATE.  Seats are handed out
+ * in file order; bookings past a flight's capacity are waitlisted ('W').
+ * Reservation numbers are reserved from rnum_seq a batch at a time.
+ *
+ */
+
+public class BookingImporter {
+	static final String LOCK_FLIGHTS =
+		"SELECT f.fnum, f.num_sold, " +
+		"  (SELECT MAX(p.seats) FROM FlightInfo fi, Plane p WHERE fi.flight_id = f.fnum AND p.id = fi.plane_id) " +
+		"FROM Flight f WHERE f.fnum = ANY (?) ORDER BY f.fnum FOR UPDATE OF f";
+	static final String INSERT_CUSTOMER =
+		"INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode) " +
+		"VALUES (?, ?, ?, ?, CAST(? AS DATE), ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+	//rnum comes from the allocator rather than the column default
+	static final String INSERT_RESERVATION =
+		"INSERT INTO Reservation (rnum, cid, fid, status) VALUES (?, ?, ?, ?)";
+	static final String UPDATE_SOLD =
+		"UPDATE Flight SET num_sold = num_sold + ? WHERE fnum = ?";
+
+	static final String[] COLUMNS = { "cid", "fname", "lname", "gtype", "dob", "address", "phone", "zipcode", "flight" };
+
+	private final DBproject _esql;
+	private final int _batchSize;
+	private final RnumAllocator _rnums;
+
+	public BookingImporter(DBproject esql, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		}
+		this._esql = esql;
+		this._batchSize = batchSize;
+		this._rnums = new RnumAllocator(batchSize);
+	}
+
+	/**
+	 * Method to import every booking of a file.  Invalid lines are reported
+	 * on standard error and skipped; a batch that the database rejects is
+	 * rolled back as a whole and counted as failed.
+	 *
+	 * @param file path of a .csv or .jsonl/.json file
+	 * @return the import totals
+	 * @throws java.io.IOException when the file cannot be read
+	 */
+	public Summary importFile(String file) throws IOException {
+		boolean json = file.endsWith(".jsonl") || file.endsWith(".json");
+		Summary summary = new Summary();
+		long start = System.nanoTime();
+		List<Row> batch = new ArrayList<Row>(_batchSize);
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			String line;
+			int lineNo = 0;
+			while ((line = reader.readLine()) != null) {
+				++lineNo;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				String[] fields;
+				try {
+					fields = json ? jsonFields(line) : csvFields(line);
+				} catch (IllegalArgumentException e) {
+					summary.read++;
+					reject(summary, lineNo, e.getMessage());
+					continue;
+				}
+				//a CSV header line is recognised by its non-numeric customer id
+				if (!json && lineNo == 1 && !fields[0].matches("\\d+")) {
+					continue;
+				}
+				summary.read++;
+				String error = validate(fields);
+				if (error != null) {
+					reject(summary, lineNo, error);
+					continue;
+				}
+				batch.add(new Row(lineNo, fields));
+				if (batch.size() >= _batchSize) {
+					writeBatch(batch, summary);
+					batch.clear();
+				}
+			}//end while
+		}
+		if (!batch.isEmpty()) {
+			writeBatch(batch, summary);
+		}
+		summary.nanos = System.nanoTime() - start;
+		return summary;
+	}//end importFile
+
+	/**
+	 * Method to check one booking with the rules of the interactive menu.
+	 *
+	 * @param f the fields in COLUMNS order
+	 * @return a description of the first problem, or null when valid
+	 */
+	static String validate(String[] f) {
+		if (!f[0].matches("\\d+") || f[0].length() > 9) return "customer id must be numeric";
+		if (f[1].isEmpty() || f[1].length() > 24) return "first name must be 1 to 24 characters";
+		if (f[2].isEmpty() || f[2].length() > 24) return "last name must be 1 to 24 characters";
+		if (!f[3].equalsIgnoreCase("F") && !f[3].equalsIgnoreCase("M")) return "gender must be F or M";
+		if (!f[4].matches("\\d{4}-\\d{1,2}-\\d{1,2}")) return "date of birth must be YYYY-MM-DD";
+		try {
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+			format.setLenient(false);
+			format.parse(f[4]);
+		} catch (java.text.ParseException e) {
+			return "date of birth is not a valid date";
+		}
+		if (f[5].isEmpty() || f[5].length() > 256) return "address must be 1 to 256 characters";
+		if (!f[6].matches("\\d{10}")) return "phone must be 10 digits";
+		if (!f[7].matches("\\d{5}") && !f[7].matches("\\d{5}-\\d{4}")) return "zipcode must be ##### or #####-####";
+		if (!f[8].matches("\\d+") || f[8].length() > 9) return "flight number must be numeric";
+		return null;
+	}//end validate
+
+	private void writeBatch(final List<Row> batch, Summary summary) {
+		try {
+			int[] counts = _esql.executeInTransaction(pc -> {
+				//lock every flight of the batch in a fixed order
+				TreeSet<Integer> flights = new TreeSet<Integer>();
+				for (Row row : batch) {
+					flights.add(row.flight);
+				}
+				Array ids = pc.getConnection().createArrayOf("int4", flights.toArray());
+				Map<Integer, Integer> free = new HashMap<Integer, Integer>();
+				PreparedStatement lock = pc.prepare(LOCK_FLIGHTS);
+				lock.setArray(1, ids);
+				try (ResultSet rs = lock.executeQuery()) {
+					while (rs.next()) {
+						int seats = rs.getInt(3);
+						free.put(rs.getInt(1), Math.max(0, seats - rs.getInt(2)));
+					}
+				}
+
+				//cached statements may still hold rows of a batch that failed earlier
+				PreparedStatement customers = pc.prepare(INSERT_CUSTOMER);
+				PreparedStatement reservations = pc.prepare(INSERT_RESERVATION);
+				customers.clearBatch();
+				reservations.clearBatch();
+				Map<Integer, Integer> sold = new LinkedHashMap<Integer, Integer>();
+				int reserved = 0, waitlisted = 0, missing = 0;
+				for (Row row : batch) {
+					Integer left = free.get(row.flight);
+					if (left == null) {
+						System.err.println("line " + row.lineNo + ": flight " + row.flight + " does not exist");
+						missing++;
+						continue;
+					}
+					String[] f = row.fields;
+					customers.setInt(1, row.cid);
+					customers.setString(2, f[1]);
+					customers.setString(3, f[2]);
+					customers.setString(4, f[3].toUpperCase());
+					customers.setString(5, f[4]);
+					customers.setString(6, f[5]);
+					customers.setString(7, f[6]);
+					customers.setString(8, f[7]);
+					customers.addBatch();
+
+					String status = "W";
+					if (left > 0) {
+						status = "R";
+						free.put(row.flight, left - 1);
+						sold.merge(row.flight, 1, Integer::sum);
+						reserved++;
+					} else {
+						waitlisted++;
+					}
+					reservations.setInt(1, _rnums.next(pc));
+					reservations.setInt(2, row.cid);
+					reservations.setInt(3, row.flight);
+					reservations.setString(4, status);
+					reservations.addBatch();
+				}
+				customers.executeBatch();
+				reservations.executeBatch();
+
+				//one aggregated num_sold update per flight
+				PreparedStatement update = pc.prepare(UPDATE_SOLD);
+				update.clearBatch();
+				for (Map.Entry<Integer, Integer> e : sold.entrySet()) {
+					update.setInt(1, e.getValue());
+					update.setInt(2, e.getKey());
+					update.addBatch();
+				}
+				update.executeBatch();
+				return new int[] { reserved, waitlisted, missing };
+			});
+			for (Row row : batch) {
+				_esql.invalidateSeatCache(row.flight);
+			}
+			summary.reserved += counts[0];
+			summary.waitlisted += counts[1];
+			summary.rejected += counts[2];
+		} catch (SQLException e) {
+			SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+			System.err.println("lines " + batch.get(0).lineNo + "-" + batch.get(batch.size() - 1).lineNo
+				+ ": batch rolled back: " + cause.getMessage());
+			summary.failed += batch.size();
+		}
+	}//end writeBatch
+
+	private static void reject(Summary summary, int lineNo, String message) {
+		System.err.println("line " + lineNo + ": " + message);
+		summary.rejected++;
+	}
+
+	private static String[] jsonFields(String line) {
+		Map<String, String> obj = Json.parseObject(line);
+		String[] fields = new String[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; ++i) {
+			String v = obj.get(COLUMNS[i]);
+			fields[i] = v == null ? "" : v.trim();
+		}
+		return fields;
+	}
+
+	/**
+	 * Method to split one CSV line, honouring double-quoted fields.
+	 */
+	static String[] csvFields(String line) {
+		List<String> fields = new ArrayList<String>(COLUMNS.length);
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); ++i) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					sb.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					sb.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(sb.toString().trim());
+				sb.setLength(0);
+			} else {
+				sb.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("unterminated quoted field");
+		}
+		fields.add(sb.toString().trim());
+		if (fields.size() != COLUMNS.length) {
+			throw new IllegalArgumentException("expected " + COLUMNS.length + " fields but found " + fields.size());
+		}
+		return fields.toArray(new String[0]);
+	}//end csvFields
+
+	private static final class Row {
+		final int lineNo;
+		final String[] fields;
+		final int cid;
+		final int flight;
+
+		Row(int lineNo, String[] fields) {
+			this.lineNo = lineNo;
+			this.fields = fields;
+			this.cid = Integer.parseInt(fields[0]);
+			this.flight = Integer.parseInt(fields[8]);
+		}
+	}
+
+	/**
+	 * Totals of one import run.
+	 */
+	public static final class Summary {
+		public int read;
+		public int reserved;
+		public int waitlisted;
+		public int rejected;
+		public int failed;
+		public long nanos;
+
+		public int imported() {
+			return reserved + waitlisted;
+		}
+
+		public double bookingsPerSecond() {
+			return nanos == 0 ? 0.0 : imported() / (nanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Imported %d of %d bookings (%d reserved, %d waitlisted), %d rejected, "
+				+ "%d failed in %.2f s (%.0f bookings/s)", imported(), read, reserved, waitlisted,
+				rejected, failed, nanos / 1e9, bookingsPerSecond());
+		}
+	}//end Summary
+}
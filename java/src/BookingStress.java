@@ -0,0 +1,119 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress check for DBproject.bookFlight.  Creates a scratch plane, pilot and
+ * flight, lets many threads book it at once and then verifies that the
+ * flight was not oversold: num_sold must equal the number of 'R'
+ * reservations and never exceed the plane's seats, and every other booking
+ * must have been waitlisted.  Exits with status 1 when a check fails.
+ *
+ * Usage: java BookingStress <dbname> <port> <user> [--threads=N] [--bookings=N] [--seats=N] [--keep]
+ *
+ */
+
+public class BookingStress {
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java [-classpath <classpath>] " + BookingStress.class.getName()
+				+ " <dbname> <port> <user> [--threads=N] [--bookings=N] [--seats=N] [--keep]");
+			return;
+		}
+		int threads = 32;
+		int bookingsPerThread = 20;
+		int seats = 100;
+		boolean keep = false;
+		for (int i = 3; i < args.length; ++i) {
+			if (args[i].startsWith("--threads=")) {
+				threads = Integer.parseInt(args[i].substring("--threads=".length()));
+			} else if (args[i].startsWith("--bookings=")) {
+				bookingsPerThread = Integer.parseInt(args[i].substring("--bookings=".length()));
+			} else if (args[i].startsWith("--seats=")) {
+				seats = Integer.parseInt(args[i].substring("--seats=".length()));
+			} else if (args[i].equals("--keep")) {
+				keep = true;
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		Class.forName("org.postgresql.Driver");
+		final DBproject esql = new DBproject(args[0], args[1], args[2], "", 1, threads);
+		boolean ok = false;
+		ScratchFlight scratch = null;
+		try {
+			//scratch fixture with ids above everything already loaded
+			scratch = ScratchFlight.create(esql, seats, threads * bookingsPerThread);
+			final ScratchFlight fixture = scratch;
+			final int flight = scratch.flight;
+			final int perThread = bookingsPerThread;
+			final AtomicInteger reserved = new AtomicInteger();
+			final AtomicInteger waitlisted = new AtomicInteger();
+			final AtomicInteger failed = new AtomicInteger();
+			final CountDownLatch go = new CountDownLatch(1);
+			List<Thread> workers = new ArrayList<Thread>();
+			for (int t = 0; t < threads; ++t) {
+				final int thread = t;
+				Thread worker = new Thread(() -> {
+					try {
+						go.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < perThread; ++i) {
+						try {
+							Booking b = esql.bookFlight(flight, fixture.customer(thread * perThread + i));
+							(b.isReserved() ? reserved : waitlisted).incrementAndGet();
+						} catch (SQLException e) {
+							failed.incrementAndGet();
+							System.err.println("booking failed: " + e.getMessage());
+						}
+					}
+				}, "booker-" + t);
+				worker.start();
+				workers.add(worker);
+			}
+			long start = System.nanoTime();
+			go.countDown();
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			int total = threads * bookingsPerThread;
+			int numSold = esql.queryInt("SELECT num_sold FROM Flight WHERE fnum = ?", flight);
+			int rCount = esql.queryInt("SELECT COUNT(*) FROM Reservation WHERE fid = ? AND status = 'R'", flight);
+			int wCount = esql.queryInt("SELECT COUNT(*) FROM Reservation WHERE fid = ? AND status = 'W'", flight);
+
+			System.out.printf("%d bookings by %d threads in %.2f s (%.0f bookings/s)%n", total, threads, seconds, total / seconds);
+			System.out.printf("seats %d, num_sold %d, reserved %d (client saw %d), waitlisted %d (client saw %d), failed %d%n",
+				seats, numSold, rCount, reserved.get(), wCount, waitlisted.get(), failed.get());
+
+			ok = check(numSold <= seats, "num_sold exceeds the plane's seats")
+				& check(rCount == numSold, "num_sold does not match the reserved bookings")
+				& check(rCount == Math.min(seats, total - failed.get()), "seats were left unsold while bookers were waitlisted")
+				& check(rCount + wCount == total - failed.get(), "reservations are missing")
+				& check(failed.get() == 0, "some bookings failed");
+			System.out.println(ok ? "OK: no overselling" : "FAILED");
+		} finally {
+			if (!keep && scratch != null) {
+				scratch.drop();
+			}
+			esql.cleanup();
+		}
+		if (!ok) {
+			System.exit(1);
+		}
+	}//end main
+
+	private static boolean check(boolean condition, String message) {
+		if (!condition) {
+			System.err.println("CHECK FAILED: " + message);
+		}
+		return condition;
+	}
+}
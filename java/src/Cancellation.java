@@ -0,0 +1,27 @@
+import java.util.List;
+
+/**
+ * The outcome of cancelling a reservation: the reservation with the status
+ * it had before ('R' or 'W'), and the waitlisted reservations of the same
+ * flight that took the seat it gave back.
+ *
+ */
+
+public final class Cancellation {
+	public final Booking cancelled;
+	public final List<Booking> promoted;
+
+	public Cancellation(Booking cancelled, List<Booking> promoted) {
+		this.cancelled = cancelled;
+		this.promoted = promoted;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("cancelled " + cancelled);
+		for (Booking b : promoted) {
+			sb.append("; promoted ").append(b);
+		}
+		return sb.toString();
+	}
+}
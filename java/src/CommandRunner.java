@@ -0,0 +1,593 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non-interactive command mode.  Each menu option is available as a
+ * subcommand taking its values as flags, and run-script executes a file of
+ * such commands (one per line) in the same JVM over the same connection
+ * pool, so batch jobs pay for startup and connecting only once.
+ *
+ *   add-plane --id N --make M --model M --age N --seats N
+ *   add-pilot --id N --name NAME --nationality N
+ *   add-flight --fnum N --cost N --sold N --stops N --departure YYYY-MM-DD --arrival YYYY-MM-DD
+ *              --arrival-airport CODE --departure-airport CODE
+ *   add-technician --id N --name NAME
+ *   book --flight N --cid N --fname F --lname L --gender F|M --dob YYYY-MM-DD --address A
+ *        --phone NNNNNNNNNN --zipcode NNNNN
+ *   seats --flight N --date YYYY-MM-DD
+ *   repairs-per-plane
+ *   repairs-per-year
+ *   rebuild-repair-summaries
+ *   check-repair-summaries [--repair]
+ *   check-passenger-counts [--repair]
+ *   passengers --flight N --status W|R|C
+ *   cancel --rnum N
+ *   promote-waitlist [--flight N] [--watch SECONDS [--workers N] [--interval-ms N]]
+ *   dashboard --flight N [--top N]
+ *   partitions [--from YYYY-MM-DD] [--ahead N] [--keep N [--drop]] [--watch SECONDS [--interval-ms N]]
+ *   import-bookings --file F [--batch-size N]
+ *   serve [--port N] [--bind ADDRESS] [--seconds N]
+ *   stats
+ *   run-script FILE|- [--stop-on-error]
+ *
+ * Flags are written "--name value" or "--name=value"; script lines may quote
+ * values with double quotes and use # for comments.
+ *
+ */
+
+public class CommandRunner {
+	//the flags each command accepts
+	static final Map<String, List<String>> COMMANDS = new LinkedHashMap<String, List<String>>();
+	static {
+		COMMANDS.put("add-plane", Arrays.asList("id", "make", "model", "age", "seats"));
+		COMMANDS.put("add-pilot", Arrays.asList("id", "name", "nationality"));
+		COMMANDS.put("add-flight", Arrays.asList("fnum", "cost", "sold", "stops", "departure", "arrival",
+			"arrival-airport", "departure-airport"));
+		COMMANDS.put("add-technician", Arrays.asList("id", "name"));
+		COMMANDS.put("book", Arrays.asList("flight", "cid", "fname", "lname", "gender", "dob", "address",
+			"phone", "zipcode"));
+		COMMANDS.put("seats", Arrays.asList("flight", "date"));
+		COMMANDS.put("repairs-per-plane", Collections.<String>emptyList());
+		COMMANDS.put("repairs-per-year", Collections.<String>emptyList());
+		COMMANDS.put("rebuild-repair-summaries", Collections.<String>emptyList());
+		COMMANDS.put("check-repair-summaries", Arrays.asList("repair"));
+		COMMANDS.put("check-passenger-counts", Arrays.asList("repair"));
+		COMMANDS.put("passengers", Arrays.asList("flight", "status"));
+		COMMANDS.put("dashboard", Arrays.asList("flight", "top"));
+		COMMANDS.put("cancel", Arrays.asList("rnum"));
+		COMMANDS.put("promote-waitlist", Arrays.asList("flight", "watch", "workers", "interval-ms"));
+		COMMANDS.put("partitions", Arrays.asList("from", "ahead", "keep", "drop", "watch", "interval-ms"));
+		COMMANDS.put("import-bookings", Arrays.asList("file", "batch-size"));
+		COMMANDS.put("serve", Arrays.asList("port", "bind", "seconds"));
+		COMMANDS.put("stats", Collections.<String>emptyList());
+		COMMANDS.put("run-script", Arrays.asList("stop-on-error"));
+	}
+
+	private final DBproject _esql;
+	//scripts check ids against the in-memory key sets before inserting
+	private boolean _useKeySets = false;
+
+	public CommandRunner(DBproject esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to run one command.
+	 *
+	 * @param argv the command name followed by its flags
+	 * @return true when the command succeeded
+	 */
+	public boolean run(List<String> argv) {
+		if (argv.isEmpty()) {
+			return true;
+		}
+		String command = argv.get(0);
+		if (!COMMANDS.containsKey(command)) {
+			System.err.println("Unknown command: " + command + " (expected one of " + COMMANDS.keySet() + ")");
+			return false;
+		}
+		try {
+			Flags flags = new Flags(argv.subList(1, argv.size()), COMMANDS.get(command));
+			switch (command) {
+				case "add-plane": {
+					int seats = seats(flags);
+					int id = flags.getInt("id");
+					checkNew(DBproject.PLANE_KEYS, "plane", id);
+					added(_esql.addPlane(id, flags.get("make", 32), flags.get("model", 64), flags.getInt("age"), seats),
+						"plane", id);
+					break;
+				}
+				case "add-pilot": {
+					int id = flags.getInt("id");
+					checkNew(DBproject.PILOT_KEYS, "pilot", id);
+					added(_esql.addPilot(id, flags.get("name", 128), flags.get("nationality", 24)), "pilot", id);
+					break;
+				}
+				case "add-flight": {
+					int fnum = flags.getInt("fnum");
+					checkNew(DBproject.FLIGHT_KEYS, "flight", fnum);
+					added(_esql.addFlight(fnum, flags.getInt("cost"), flags.getInt("sold"), flags.getInt("stops"),
+						flags.getDate("departure").toString(), flags.getDate("arrival").toString(),
+						flags.get("arrival-airport", 5), flags.get("departure-airport", 5)), "flight", fnum);
+					break;
+				}
+				case "add-technician": {
+					int id = flags.getInt("id");
+					checkNew(DBproject.TECHNICIAN_KEYS, "technician", id);
+					added(_esql.addTechnician(id, flags.get("name", 128)), "technician", id);
+					break;
+				}
+				case "book": {
+					Booking booking = _esql.bookFlight(flags.getInt("flight"), customer(flags));
+					System.out.println("Booked " + booking);
+					break;
+				}
+				case "seats":
+					_esql.printAvailableSeats(flags.getInt("flight"), flags.getDate("date"));
+					break;
+				case "repairs-per-plane":
+					_esql.printRepairsPerPlane();
+					break;
+				case "repairs-per-year":
+					_esql.printRepairsPerYear();
+					break;
+				case "rebuild-repair-summaries":
+					_esql.rebuildRepairSummaries();
+					System.out.println("Rebuilt repairs_per_plane and repairs_per_year");
+					break;
+				case "check-repair-summaries": {
+					List<List<String>> diffs = _esql.checkRepairSummaries();
+					for (List<String> d : diffs) {
+						System.out.println(d.get(0) + " " + d.get(1) + ": Repairs has " + d.get(2) + ", aggregate has " + d.get(3));
+					}
+					if (diffs.isEmpty()) {
+						System.out.println("Repair aggregates are consistent");
+						return true;
+					}
+					if (!flags.has("repair")) {
+						System.err.println(diffs.size() + " aggregate rows differ; run with --repair to rebuild");
+						return false;
+					}
+					_esql.rebuildRepairSummaries();
+					System.out.println("Rebuilt repairs_per_plane and repairs_per_year");
+					break;
+				}
+				case "check-passenger-counts": {
+					List<List<String>> diffs = _esql.checkPassengerCounts();
+					for (List<String> d : diffs) {
+						System.out.println("flight " + d.get(0) + " status " + d.get(1) + ": Reservation has " + d.get(2)
+							+ ", counter has " + d.get(3));
+					}
+					if (diffs.isEmpty()) {
+						System.out.println("Passenger counts are consistent");
+						return true;
+					}
+					if (!flags.has("repair")) {
+						System.err.println(diffs.size() + " counters differ; run with --repair to fix them");
+						return false;
+					}
+					System.out.println("Repaired " + _esql.repairPassengerCounts() + " passenger counters");
+					break;
+				}
+				case "passengers": {
+					_esql.printPassengersWithStatus(flags.getInt("flight"), status(flags));
+					break;
+				}
+				case "cancel": {
+					int rnum = flags.getInt("rnum");
+					Cancellation cancellation = _esql.cancelReservation(rnum);
+					if (cancellation == null) {
+						throw new IllegalArgumentException("no active reservation " + rnum);
+					}
+					System.out.println("Cancelled " + cancellation.cancelled);
+					for (Booking b : cancellation.promoted) {
+						System.out.println("Promoted " + b);
+					}
+					break;
+				}
+				case "promote-waitlist":
+					if (flags.has("flight")) {
+						for (Booking b : _esql.promoteWaitlist(flags.getInt("flight"))) {
+							System.out.println("Promoted " + b);
+						}
+					} else if (flags.has("watch")) {
+						int workers = flags.has("workers") ? flags.getInt("workers") : 1;
+						long interval = flags.has("interval-ms") ? flags.getInt("interval-ms") : 1000;
+						try (WaitlistPromoter promoter = new WaitlistPromoter(_esql, workers, interval)) {
+							promoter.start();
+							Thread.sleep(flags.getInt("watch") * 1000L);
+							System.out.println("Promoted " + promoter.getPromoted() + " reservations in "
+								+ promoter.getPasses() + " passes");
+						}
+					} else {
+						System.out.println("Promoted " + new WaitlistPromoter(_esql, 1, 1000).pass() + " reservations");
+					}
+					break;
+				case "dashboard":
+					dashboard(flags.getInt("flight"), flags.has("top") ? flags.getInt("top") : 10);
+					break;
+				case "partitions": {
+					int ahead = flags.has("ahead") ? flags.getInt("ahead") : 3;
+					int keep = flags.has("keep") ? flags.getInt("keep") : PartitionMaintenance.KEEP_ALL;
+					try (PartitionMaintenance maintenance = new PartitionMaintenance(_esql, ahead, keep, flags.has("drop"))) {
+						if (flags.has("from")) {
+							//months of older data about to be loaded
+							LocalDate from = flags.getDate("from");
+							System.out.println("Created " + maintenance.createPartitions(from, LocalDate.now().plusMonths(ahead)));
+						} else if (flags.has("watch")) {
+							maintenance.start(flags.has("interval-ms") ? flags.getInt("interval-ms") : 24 * 3600 * 1000);
+							Thread.sleep(flags.getInt("watch") * 1000L);
+							System.out.println("Created " + maintenance.getCreated() + " and "
+								+ (flags.has("drop") ? "dropped " : "archived ") + maintenance.getArchived() + " partitions");
+						} else {
+							System.out.println("Created or detached " + maintenance.pass() + " partitions");
+						}
+					}
+					break;
+				}
+				case "import-bookings": {
+					int batchSize = flags.has("batch-size") ? flags.getInt("batch-size") : 1000;
+					System.out.println(new BookingImporter(_esql, batchSize).importFile(flags.get("file")));
+					break;
+				}
+				case "serve": {
+					int port = flags.has("port") ? flags.getInt("port") : HttpService.DEFAULT_PORT;
+					String bind = flags.has("bind") ? flags.get("bind") : "127.0.0.1";
+					try (HttpService service = new HttpService(_esql, new InetSocketAddress(bind, port))) {
+						service.start();
+						System.out.println("Serving on http://" + bind + ":" + service.getAddress().getPort() + "/");
+						System.out.flush();
+						if (flags.has("seconds")) {
+							Thread.sleep(flags.getInt("seconds") * 1000L);
+						} else {
+							service.awaitStop();
+						}
+						System.out.println("Served " + service.getRequests() + " requests, " + service.getFailures() + " failed");
+					}
+					break;
+				}
+				case "stats":
+					System.out.println(_esql.getPoolStats());
+					System.out.println(_esql.getSeatCacheStats());
+					if (_esql.getReplicaStats() != null) {
+						System.out.println(_esql.getReplicaStats());
+					}
+					System.out.flush();
+					_esql.getQueryMetrics().dump(ResultPrinter.stdout());
+					break;
+				case "run-script":
+					//the file is the first word that is not a flag, wherever the flags are
+					String script = null;
+					for (String arg : argv.subList(1, argv.size())) {
+						if (!arg.startsWith("--")) {
+							script = arg;
+							break;
+						}
+					}
+					if (script == null) {
+						throw new IllegalArgumentException("run-script needs a file name, or - for standard input");
+					}
+					return runScript(script, flags.has("stop-on-error"));
+			}
+			return true;
+		} catch (Exception e) {
+			System.err.println(command + ": " + e.getMessage());
+			return false;
+		}
+	}//end run
+
+	/**
+	 * Method to print a flight's seats and passenger counts next to the
+	 * repair reports.  The six queries are fired together through the
+	 * async API and printed once all of them are done, so the command takes
+	 * about as long as the slowest query rather than the sum.
+	 *
+	 * @param flight the flight number
+	 * @param top planes listed from the repairs per plane report
+	 */
+	private void dashboard(int flight, int top) throws Exception {
+		long start = System.nanoTime();
+		CompletableFuture<SeatCache.Entry> seats = _esql.getSeatAvailabilityAsync(flight);
+		CompletableFuture<Integer> reserved = _esql.countPassengersWithStatusAsync(flight, "R");
+		CompletableFuture<Integer> waitlisted = _esql.countPassengersWithStatusAsync(flight, "W");
+		CompletableFuture<Integer> cancelled = _esql.countPassengersWithStatusAsync(flight, "C");
+		CompletableFuture<int[]> perPlane = _esql.repairsPerPlaneAsync();
+		CompletableFuture<List<int[]>> perYear = _esql.repairsPerYearAsync();
+		try {
+			CompletableFuture.allOf(seats, reserved, waitlisted, cancelled, perPlane, perYear).join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		SeatCache.Entry entry = seats.join();
+		System.out.println("== flight " + flight);
+		if (entry == null) {
+			System.out.println("no such flight");
+		} else if (!entry.hasPlane()) {
+			System.out.println("no plane assigned, " + entry.numSold + " seats sold");
+		} else {
+			System.out.println(entry.available() + " of " + entry.seats + " seats available, departs "
+				+ entry.departureDate + (entry.scheduled ? "" : " (not scheduled)"));
+		}
+		System.out.println("passengers: " + reserved.join() + " reserved, " + waitlisted.join() + " waitlisted, "
+			+ cancelled.join() + " cancelled");
+		System.out.println("== repairs per plane (top " + top + ")");
+		System.out.flush();
+		int[] planes = perPlane.join();
+		List<String[]> planeRows = new ArrayList<String[]>();
+		for (int i = 0; i < Math.min(top, planes.length); ++i) {
+			planeRows.add(new String[] { Integer.toString(planes[i]) });
+		}
+		_esql.printResult(new String[] { "plane_id" }, new boolean[] { true }, planeRows);
+		System.out.println("== repairs per year");
+		System.out.flush();
+		List<String[]> yearRows = new ArrayList<String[]>();
+		for (int[] year : perYear.join()) {
+			yearRows.add(new String[] { Integer.toString(year[0]), Integer.toString(year[1]) });
+		}
+		_esql.printResult(new String[] { "year", "repairs_per_year" }, new boolean[] { true, true }, yearRows);
+		System.err.printf("dashboard: 6 queries in %.1f ms%n", elapsed / 1e6);
+	}//end dashboard
+
+	/**
+	 * Method to read the seat count of a new plane.
+	 */
+	static int seats(Flags flags) {
+		int seats = flags.getInt("seats");
+		if (seats <= 0 || seats >= 500) {
+			throw flags.invalid("seats", "must be greater than 0 and less than 500");
+		}
+		return seats;
+	}
+
+	/**
+	 * Method to read a reservation status, W, R or C in any case.
+	 */
+	static String status(Flags flags) {
+		String status = flags.get("status").toUpperCase();
+		if (!status.equals("W") && !status.equals("R") && !status.equals("C")) {
+			throw flags.invalid("status", "must be W, R or C");
+		}
+		return status;
+	}
+
+	/**
+	 * Method to read the customer of a booking, checked like the rows of
+	 * an import file.
+	 */
+	static Customer customer(Flags flags) {
+		String[] fields = {
+			flags.get("cid"), flags.get("fname"), flags.get("lname"), flags.get("gender"),
+			flags.get("dob"), flags.get("address"), flags.get("phone"), flags.get("zipcode"),
+			flags.get("flight")
+		};
+		String error = BookingImporter.validate(fields);
+		if (error != null) {
+			throw new IllegalArgumentException(error);
+		}
+		return new Customer(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3].toUpperCase(),
+			fields[4], fields[5], fields[6], fields[7]);
+	}
+
+	//turns a duplicate id away without a round trip once the key set is loaded
+	private void checkNew(String keys, String what, int id) throws java.sql.SQLException {
+		if (_useKeySets && _esql.keyExists(keys, id)) {
+			throw new IllegalArgumentException(what + " " + id + " already exists");
+		}
+	}
+
+	private static void added(boolean created, String what, int id) {
+		if (!created) {
+			throw new IllegalArgumentException(what + " " + id + " already exists");
+		}
+		System.out.println("Added " + what + " " + id);
+	}
+
+	/**
+	 * Method to run every command of a script file.  Add commands are
+	 * checked against key sets loaded once per table, so a script full of
+	 * duplicates costs no more round trips than it has new rows.
+	 *
+	 * @param file the script, or - for standard input
+	 * @param stopOnError stop at the first failing command
+	 * @return true when every command succeeded
+	 */
+	public boolean runScript(String file, boolean stopOnError) throws java.io.IOException {
+		boolean ok = true;
+		int commands = 0;
+		long start = System.nanoTime();
+		_useKeySets = true;
+		try (BufferedReader reader = file.equals("-")
+				? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+				: Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			String line;
+			int lineNo = 0;
+			while ((line = reader.readLine()) != null) {
+				++lineNo;
+				List<String> argv;
+				try {
+					argv = tokenize(line);
+				} catch (IllegalArgumentException e) {
+					System.err.println(file + ":" + lineNo + ": " + e.getMessage());
+					ok = false;
+					if (stopOnError) {
+						break;
+					}
+					continue;
+				}
+				if (argv.isEmpty()) {
+					continue;
+				}
+				if (argv.get(0).equals("run-script")) {
+					System.err.println(file + ":" + lineNo + ": scripts cannot nest");
+					ok = false;
+					if (stopOnError) {
+						break;
+					}
+					continue;
+				}
+				++commands;
+				if (!run(argv)) {
+					System.err.println(file + ":" + lineNo + ": command failed");
+					ok = false;
+					if (stopOnError) {
+						break;
+					}
+				}
+			}//end while
+		} finally {
+			_useKeySets = false;
+		}
+		System.err.printf("%d commands in %.2f s%n", commands, (System.nanoTime() - start) / 1e9);
+		return ok;
+	}//end runScript
+
+	/**
+	 * Method to split a script line into words.  Double quotes group words
+	 * and a # outside quotes starts a comment.
+	 */
+	static List<String> tokenize(String line) {
+		List<String> words = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false, inWord = false;
+		for (int i = 0; i < line.length(); ++i) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					quoted = false;
+				} else if (c == '\\' && i + 1 < line.length()) {
+					sb.append(line.charAt(++i));
+				} else {
+					sb.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+				inWord = true;
+			} else if (c == '#') {
+				break;
+			} else if (Character.isWhitespace(c)) {
+				if (inWord) {
+					words.add(sb.toString());
+					sb.setLength(0);
+					inWord = false;
+				}
+			} else {
+				sb.append(c);
+				inWord = true;
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("unterminated quote in: " + line);
+		}
+		if (inWord) {
+			words.add(sb.toString());
+		}
+		return words;
+	}//end tokenize
+
+	/**
+	 * The --name value flags of one command, or the members of a JSON
+	 * request body carrying the same values.
+	 */
+	static final class Flags {
+		private final Map<String, String> _values = new HashMap<String, String>();
+		//how names are written in error messages
+		private final String _prefix;
+
+		Flags(List<String> args, List<String> known) {
+			this._prefix = "--";
+			for (int i = 0; i < args.size(); ++i) {
+				String a = args.get(i);
+				if (!a.startsWith("--")) {
+					//positional values (the run-script file) are read by the command itself
+					continue;
+				}
+				String name = a.substring(2);
+				String value = "";
+				int eq = name.indexOf('=');
+				if (eq >= 0) {
+					value = name.substring(eq + 1);
+					name = name.substring(0, eq);
+				} else if (i + 1 < args.size() && !args.get(i + 1).startsWith("--")) {
+					value = args.get(++i);
+				}
+				if (!known.contains(name)) {
+					throw new IllegalArgumentException("unknown flag --" + name);
+				}
+				_values.put(name, value);
+			}
+		}
+
+		/**
+		 * @param values the values by name, as parsed from a JSON object
+		 * @param known the names the command accepts
+		 */
+		Flags(Map<String, String> values, List<String> known) {
+			this._prefix = "";
+			for (Map.Entry<String, String> e : values.entrySet()) {
+				if (!known.contains(e.getKey())) {
+					throw new IllegalArgumentException("unknown field " + e.getKey());
+				}
+				//a JSON null counts as missing
+				if (e.getValue() != null) {
+					_values.put(e.getKey(), e.getValue());
+				}
+			}
+		}
+
+		IllegalArgumentException invalid(String name, String problem) {
+			return new IllegalArgumentException(_prefix + name + " " + problem);
+		}
+
+		boolean has(String name) {
+			return _values.containsKey(name);
+		}
+
+		String get(String name) {
+			String v = _values.get(name);
+			if (v == null) {
+				throw invalid(name, "is missing");
+			}
+			return v.trim();
+		}
+
+		String get(String name, int maxLength) {
+			String v = get(name);
+			if (v.isEmpty() || v.length() > maxLength) {
+				throw invalid(name, "must be 1 to " + maxLength + " characters");
+			}
+			return v;
+		}
+
+		int getInt(String name) {
+			String v = get(name);
+			if (!v.matches("\\d{1,9}")) {
+				throw invalid(name, "must be a non-negative number");
+			}
+			return Integer.parseInt(v);
+		}
+
+		LocalDate getDate(String name) {
+			try {
+				return LocalDate.parse(get(name));
+			} catch (java.time.format.DateTimeParseException e) {
+				throw invalid(name, "must be a date as YYYY-MM-DD");
+			}
+		}
+	}//end Flags
+}
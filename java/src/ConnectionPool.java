@@ -0,0 +1,443 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class defines a bounded pool of physical PostgreSQL connections.
+ * Connections are handed out through borrow() and go back to the pool when
+ * the returned PooledConnection is closed, so callers can use
+ * try-with-resources and never leak a connection.
+ *
+ */
+
+public class ConnectionPool {
+	//connection settings
+	private final String _url;
+	private final String _user;
+	private final String _passwd;
+
+	//sizing and timeouts
+	private final int _minSize;
+	private final int _maxSize;
+	private final long _idleTimeoutMillis;
+	private final long _maxWaitMillis;
+	private final long _validationIntervalMillis;
+	private final int _statementCacheSize;
+
+	//idle connections, most recently returned first
+	private final ArrayDeque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+	private final ReentrantLock _lock = new ReentrantLock();
+	private final Condition _available = _lock.newCondition();
+	private int _total = 0;
+	private boolean _closed = false;
+	private final ScheduledExecutorService _evictor;
+
+	//pool-wait metrics, guarded by _lock
+	private long _borrows = 0;
+	private long _waits = 0;
+	private long _waitNanos = 0;
+	private long _maxWaitNanos = 0;
+	private long _timeouts = 0;
+	private long _created = 0;
+	private long _destroyed = 0;
+	private long _validationFailures = 0;
+
+	//statement cache metrics, summed over every connection
+	private final LongAdder _statementHits = new LongAdder();
+	private final LongAdder _statementMisses = new LongAdder();
+
+	/**
+	 * Creates the pool and eagerly opens minSize connections.
+	 *
+	 * @param url the JDBC connection URL
+	 * @param user the database user
+	 * @param passwd the database password
+	 * @param minSize number of connections kept open even when idle
+	 * @param maxSize upper bound on open connections
+	 * @param idleTimeoutMillis idle time after which connections above minSize are closed
+	 * @param maxWaitMillis how long borrow() waits for a free connection before failing
+	 * @param statementCacheSize prepared statements cached per connection
+	 * @throws java.sql.SQLException when the initial connections cannot be opened
+	 */
+	public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize,
+			long idleTimeoutMillis, long maxWaitMillis, int statementCacheSize) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+		}
+		this._url = url;
+		this._user = user;
+		this._passwd = passwd;
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+		this._idleTimeoutMillis = idleTimeoutMillis;
+		this._maxWaitMillis = maxWaitMillis;
+		this._validationIntervalMillis = 1000;
+		this._statementCacheSize = statementCacheSize;
+
+		try {
+			for (int i = 0; i < minSize; ++i) {
+				PooledConnection pc = open();
+				_lock.lock();
+				try {
+					_total++;
+					_idle.push(pc);
+				} finally {
+					_lock.unlock();
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			//the caller never gets the pool, so nothing else would close the ones already open
+			while (!_idle.isEmpty()) {
+				closeQuietly(_idle.pop());
+				_total--;
+			}
+			throw e;
+		}
+
+		this._evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		this._evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}//end ConnectionPool
+
+	/**
+	 * Method to take a connection out of the pool.  Idle connections are
+	 * validated before being handed out; if none is idle and the pool is
+	 * full, the caller waits up to maxWaitMillis.
+	 *
+	 * @return a pooled connection, to be closed by the caller when done
+	 * @throws java.sql.SQLException when no connection became available in time
+	 */
+	public PooledConnection borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(_maxWaitMillis);
+		boolean waited = false;
+		while (true) {
+			PooledConnection pc = null;
+			boolean create = false;
+			_lock.lock();
+			try {
+				while (true) {
+					if (_closed) {
+						throw new SQLException("Connection pool is closed");
+					}
+					if (!_idle.isEmpty()) {
+						pc = _idle.pop();
+						break;
+					}
+					if (_total < _maxSize) {
+						_total++;
+						create = true;
+						break;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						_timeouts++;
+						throw new SQLException("Timed out after " + _maxWaitMillis
+							+ " ms waiting for a database connection (pool max " + _maxSize + ")");
+					}
+					waited = true;
+					try {
+						_available.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection", e);
+					}
+				}//end while
+			} finally {
+				_lock.unlock();
+			}
+
+			if (create) {
+				try {
+					pc = open();
+				} catch (SQLException e) {
+					_lock.lock();
+					try {
+						_total--;
+						_available.signal();
+					} finally {
+						_lock.unlock();
+					}
+					throw e;
+				}
+			} else if (!validate(pc)) {
+				discard(pc);
+				continue;
+			}
+
+			long waitNanos = System.nanoTime() - start;
+			_lock.lock();
+			try {
+				_borrows++;
+				if (waited) {
+					_waits++;
+				}
+				_waitNanos += waitNanos;
+				_maxWaitNanos = Math.max(_maxWaitNanos, waitNanos);
+			} finally {
+				_lock.unlock();
+			}
+			pc._inUse = true;
+			return pc;
+		}
+	}//end borrow
+
+	/**
+	 * Method to hand a connection back to the pool.  Connections left in a
+	 * transaction are rolled back; broken ones are closed instead of reused.
+	 *
+	 * @param pc the connection obtained from borrow()
+	 */
+	void release(PooledConnection pc) {
+		if (!pc._inUse) {
+			return;
+		}
+		pc._inUse = false;
+		boolean healthy = true;
+		try {
+			if (pc._connection.isClosed()) {
+				healthy = false;
+			} else if (!pc._connection.getAutoCommit()) {
+				pc._connection.rollback();
+				pc._connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			healthy = false;
+		}
+		if (!healthy) {
+			discard(pc);
+			return;
+		}
+
+		pc._lastUsed = System.currentTimeMillis();
+		_lock.lock();
+		try {
+			if (_closed) {
+				_total--;
+				closeQuietly(pc);
+				return;
+			}
+			_idle.push(pc);
+			_available.signal();
+		} finally {
+			_lock.unlock();
+		}
+	}//end release
+
+	/**
+	 * Method to close idle connections that have been unused for longer than
+	 * the idle timeout, never going below the minimum pool size.
+	 */
+	void evictIdle() {
+		long cutoff = System.currentTimeMillis() - _idleTimeoutMillis;
+		_lock.lock();
+		try {
+			//the oldest connections sit at the tail of the deque
+			Iterator<PooledConnection> it = _idle.descendingIterator();
+			while (it.hasNext() && _total > _minSize) {
+				PooledConnection pc = it.next();
+				if (pc._lastUsed >= cutoff) {
+					break;
+				}
+				it.remove();
+				_total--;
+				_destroyed++;
+				closeQuietly(pc);
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}//end evictIdle
+
+	/**
+	 * Method to close every idle connection and refuse further borrows.
+	 * Connections still in use are closed as they are returned.
+	 */
+	public void close() {
+		_evictor.shutdownNow();
+		_lock.lock();
+		try {
+			_closed = true;
+			while (!_idle.isEmpty()) {
+				closeQuietly(_idle.pop());
+				_total--;
+			}
+			_available.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}//end close
+
+	/**
+	 * Method to take a consistent snapshot of the pool metrics.
+	 *
+	 * @return the current pool statistics
+	 */
+	public Stats getStats() {
+		_lock.lock();
+		try {
+			return new Stats(_total, _idle.size(), _maxSize, _borrows, _waits, _waitNanos,
+				_maxWaitNanos, _timeouts, _created, _destroyed, _validationFailures,
+				_statementHits.sum(), _statementMisses.sum());
+		} finally {
+			_lock.unlock();
+		}
+	}//end getStats
+
+	public int getMaxSize() {
+		return _maxSize;
+	}
+
+	private PooledConnection open() throws SQLException {
+		Connection conn = DriverManager.getConnection(_url, _user, _passwd);
+		_lock.lock();
+		try {
+			_created++;
+		} finally {
+			_lock.unlock();
+		}
+		return new PooledConnection(this, conn,
+			new StatementCache(conn, _statementCacheSize, _statementHits, _statementMisses));
+	}
+
+	private boolean validate(PooledConnection pc) {
+		//connections returned moments ago are trusted without a round trip
+		if (System.currentTimeMillis() - pc._lastUsed < _validationIntervalMillis) {
+			return true;
+		}
+		try {
+			if (pc._connection.isValid(5)) {
+				return true;
+			}
+		} catch (SQLException e) {
+			// treated as invalid below.
+		}
+		_lock.lock();
+		try {
+			_validationFailures++;
+		} finally {
+			_lock.unlock();
+		}
+		return false;
+	}
+
+	private void discard(PooledConnection pc) {
+		closeQuietly(pc);
+		_lock.lock();
+		try {
+			_total--;
+			_destroyed++;
+			_available.signal();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private static void closeQuietly(PooledConnection pc) {
+		pc._statements.clear();
+		try {
+			pc._connection.close();
+		} catch (SQLException e) {
+			// ignored.
+		}
+	}
+
+	/**
+	 * A physical connection on loan from the pool.  Closing it returns the
+	 * connection to the pool rather than closing the socket.
+	 */
+	public static final class PooledConnection implements AutoCloseable {
+		private final ConnectionPool _pool;
+		private final Connection _connection;
+		private final StatementCache _statements;
+		private volatile long _lastUsed = System.currentTimeMillis();
+		private volatile boolean _inUse = false;
+
+		PooledConnection(ConnectionPool pool, Connection connection, StatementCache statements) {
+			this._pool = pool;
+			this._connection = connection;
+			this._statements = statements;
+		}
+
+		public Connection getConnection() {
+			return _connection;
+		}
+
+		/**
+		 * Method to get a cached PreparedStatement for this connection.  The
+		 * statement stays owned by the cache and must not be closed.
+		 *
+		 * @param sql the parameterized SQL text
+		 * @return the prepared statement
+		 * @throws java.sql.SQLException when the statement cannot be prepared
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			return _statements.prepare(sql);
+		}
+
+		@Override
+		public void close() {
+			_pool.release(this);
+		}
+	}//end PooledConnection
+
+	/**
+	 * Immutable snapshot of the pool metrics.
+	 */
+	public static final class Stats {
+		public final int total;
+		public final int idle;
+		public final int maxSize;
+		public final long borrows;
+		public final long waits;
+		public final long waitNanos;
+		public final long maxWaitNanos;
+		public final long timeouts;
+		public final long created;
+		public final long destroyed;
+		public final long validationFailures;
+		public final long statementHits;
+		public final long statementMisses;
+
+		Stats(int total, int idle, int maxSize, long borrows, long waits, long waitNanos,
+				long maxWaitNanos, long timeouts, long created, long destroyed, long validationFailures,
+				long statementHits, long statementMisses) {
+			this.total = total;
+			this.idle = idle;
+			this.maxSize = maxSize;
+			this.borrows = borrows;
+			this.waits = waits;
+			this.waitNanos = waitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+			this.timeouts = timeouts;
+			this.created = created;
+			this.destroyed = destroyed;
+			this.validationFailures = validationFailures;
+			this.statementHits = statementHits;
+			this.statementMisses = statementMisses;
+		}
+
+		@Override
+		public String toString() {
+			double avgWaitMs = borrows == 0 ? 0.0 : (waitNanos / 1e6) / borrows;
+			return String.format("connections %d/%d (idle %d), borrows %d, waited %d, avg wait %.3f ms, "
+				+ "max wait %.3f ms, timeouts %d, created %d, destroyed %d, validation failures %d, "
+				+ "statement cache hits %d, misses %d",
+				total, maxSize, idle, borrows, waits, avgWaitMs, maxWaitNanos / 1e6, timeouts,
+				created, destroyed, validationFailures, statementHits, statementMisses);
+		}
+	}//end Stats
+}
@@ -0,0 +1,28 @@
+/**
+ * The customer details collected when booking a flight.  Values are kept as
+ * entered; dob is a YYYY-MM-DD string cast to DATE by the database.
+ *
+ */
+
+public final class Customer {
+	public final int id;
+	public final String fname;
+	public final String lname;
+	public final String gtype;
+	public final String dob;
+	public final String address;
+	public final String phone;
+	public final String zipcode;
+
+	public Customer(int id, String fname, String lname, String gtype, String dob,
+			String address, String phone, String zipcode) {
+		this.id = id;
+		this.fname = fname;
+		this.lname = lname;
+		this.gtype = gtype;
+		this.dob = dob;
+		this.address = address;
+		this.phone = phone;
+		this.zipcode = zipcode;
+	}
+}
@@ -13,17 +13,34 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Writer;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import java.util.Date;
+import java.time.LocalDate;
 import java.text.SimpleDateFormat;
 
 /**
@@ -33,43 +50,100 @@ import java.text.SimpleDateFormat;
  */
 
 public class DBproject{
-	//reference to physical database connection
-	private Connection _connection = null;
+	//pool of physical database connections shared by every method
+	private ConnectionPool _pool = null;
+	//read replica for the reports, null unless -Ddbproject.replica.port is set
+	private ReplicaRouter _replica = null;
+	//format used by executeQueryAndPrintResult
+	private volatile ResultPrinter.Format _outputFormat = ResultPrinter.Format.TSV;
+	//plane capacity and seats sold per flight
+	private final SeatCache _seatCache = new SeatCache (SEAT_CACHE_SIZE, SEAT_CACHE_TTL_MS);
+	//primary keys of the tables the add options write, by the query that loads them
+	private final ConcurrentHashMap<String, KeySet> _keySets = new ConcurrentHashMap<String, KeySet> ();
+	//timings and row counts per query shape, published over JMX
+	private final QueryMetrics _metrics = new QueryMetrics ();
+	//plans of statements slower than SLOW_QUERY_MS, null when disabled (the default)
+	private final SlowQueryLog _slowLog = SLOW_QUERY_MS < 0 ? null
+		: new SlowQueryLog (new File (SLOW_QUERY_LOG), SLOW_QUERY_MS, SLOW_QUERY_LOG_BYTES, SLOW_QUERY_LOG_KEEP, this::explain);
+	//runs the *Async methods, one virtual thread per call where the JVM has them
+	private final ExecutorService _async = VirtualThreads.newExecutor (true, ASYNC_MAX_IN_FLIGHT, "dbproject-async");
+	//async calls touching the database at the same time; the rest wait for a permit
+	private final Semaphore _asyncPermits = new Semaphore (ASYNC_MAX_IN_FLIGHT);
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	//progress messages; sent to standard error in command mode so stdout only carries results
+	static PrintStream log = System.out;
+
+	//pool sizing, overridable with -Ddbproject.pool.min=... etc.
+	static final int POOL_MIN = Integer.getInteger("dbproject.pool.min", 1);
+	static final int POOL_MAX = Integer.getInteger("dbproject.pool.max", 8);
+	static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("dbproject.pool.idleTimeoutMs", 60000L);
+	static final long POOL_MAX_WAIT_MS = Long.getLong("dbproject.pool.maxWaitMs", 30000L);
+	static final int STATEMENT_CACHE_SIZE = Integer.getInteger("dbproject.statementCacheSize", 64);
+	static final int STREAM_FETCH_SIZE = Integer.getInteger("dbproject.fetchSize", 1000);
+	static final int SEAT_CACHE_SIZE = Integer.getInteger("dbproject.seatCache.size", 10000);
+	static final long SEAT_CACHE_TTL_MS = Long.getLong("dbproject.seatCache.ttlMs", 5000L);
+	//slow query threshold (negative disables the log) and log rotation
+	static final long SLOW_QUERY_MS = Long.getLong("dbproject.slowQueryMs", -1L);
+	static final String SLOW_QUERY_LOG = System.getProperty("dbproject.slowQueryLog", "slow-queries.log");
+	static final long SLOW_QUERY_LOG_BYTES = Long.getLong("dbproject.slowQueryLog.maxBytes", 10L << 20);
+	static final int SLOW_QUERY_LOG_KEEP = Integer.getInteger("dbproject.slowQueryLog.keep", 5);
+	//async database calls in flight at once, by default as many as the pool has connections
+	static final int ASYNC_MAX_IN_FLIGHT = Integer.getInteger ("dbproject.async.maxInFlight", POOL_MAX);
+	//file the query metrics are written to by cleanup(), none by default
+	static final String METRICS_FILE = System.getProperty("dbproject.metrics.file");
 	
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
-		System.out.print("Connecting to database...");
+		this(dbname, dbport, user, passwd, POOL_MIN, POOL_MAX);
+	}
+
+	public DBproject(String dbname, String dbport, String user, String passwd, int poolMin, int poolMax) throws SQLException {
+		log.print("Connecting to database...");
 		try{
 			// constructs the connection URL
-			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-			System.out.println ("Connection URL: " + url + "\n");
+			// batched inserts are rewritten into multi-row INSERTs by the driver
+			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname + "?reWriteBatchedInserts=true";
+			log.println ("Connection URL: " + url + "\n");
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
-	        System.out.println("Done");
+			// open the pool of physical connections
+	        this._pool = new ConnectionPool(url, user, passwd, poolMin, poolMax,
+	        		POOL_IDLE_TIMEOUT_MS, POOL_MAX_WAIT_MS, STATEMENT_CACHE_SIZE);
+	        this._replica = ReplicaRouter.fromProperties (dbname, user, passwd);
+	        this._metrics.register ();
+	        log.println("Done");
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
-	        System.out.println("Make sure you started postgres on this machine");
+	        log.println("Make sure you started postgres on this machine");
 	        System.exit(-1);
 		}
 	}
 	
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
-	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.  Values are passed
+	 * as '?' parameters and bound in order.
 	 * 
 	 * @param sql the input SQL string
+	 * @param params values bound to the '?' placeholders
+	 * @return the number of rows affected
 	 * @throws java.sql.SQLException when update failed
 	 * */
-	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeUpdate (String sql, Object... params) throws SQLException { 
+		QueryMetrics.Shape shape = this._metrics.shape (sql);
+		long start = System.nanoTime ();
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			// fetches the cached statement object
+			PreparedStatement stmt = pc.prepare (sql);
+			bind (stmt, params);
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
-
-		// close the instruction
-	    stmt.close ();
+			// issues the update instruction
+			int rows = stmt.executeUpdate ();
+			shape.affected (start, rows);
+			checkSlow (sql, params, start, rows);
+			return rows;
+		}catch (SQLException e){
+			shape.failed (start);
+			throw e;
+		}
 	}//end executeUpdate
 
 	/**
@@ -78,42 +152,165 @@ public class DBproject{
 	 * standard out.
 	 * 
 	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		ResultPrinter printer = new ResultPrinter (ResultPrinter.stdout (), this._outputFormat);
+		try {
+			int rowCount = executeQueryAndStreamResult (query, printer, params);
+			printer.finish ();
+			return rowCount;
+		}catch (IOException | UncheckedIOException e){
+			throw new SQLException ("Unable to write the query result: " + e.getMessage (), e);
+		}
+	}
+
+	/**
+	 * Method to print rows computed in memory with the same format as
+	 * executeQueryAndPrintResult.
+	 *
+	 * @param columnNames the column names
+	 * @param numeric which columns hold numbers
+	 * @param rows the rows to print
+	 * @return the number of rows printed
+	 * @throws java.io.IOException when the output cannot be written
+	 */
+	public int printResult (String[] columnNames, boolean[] numeric, List<String[]> rows) throws IOException {
+		ResultPrinter printer = new ResultPrinter (ResultPrinter.stdout (), this._outputFormat);
+		printer.start (columnNames, numeric);
+		for (String[] row : rows){
+			printer.writeRow (row);
+		}
+		printer.finish ();
+		return rows.size ();
+	}
+
+	/**
+	 * Method to choose how executeQueryAndPrintResult formats its output.
+	 *
+	 * @param format TSV (the default), CSV, JSONL or TABLE
+	 */
+	public void setOutputFormat (ResultPrinter.Format format) {
+		this._outputFormat = format;
+	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * push each row to a handler as it arrives.  The query runs inside a
+	 * transaction with a fetch size, so pgjdbc reads it through a
+	 * server-side cursor and only holds one batch of rows in memory no
+	 * matter how large the result is.
+	 * 
+	 * @param query the input query string
+	 * @param handler the callback receiving the metadata and every row
+	 * @param params values bound to the '?' placeholders
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndStreamResult (String query, RowHandler handler, Object... params) throws SQLException {
+		QueryMetrics.Shape shape = this._metrics.shape (query);
+		long start = System.nanoTime ();
+		//cursors are only used outside auto-commit mode
+		Integer replicaRows;
+		int rows;
+		try {
+			replicaRows = streamFromReplica (query, handler, params);
+			rows = replicaRows != null ? replicaRows
+				: executeInTransaction (pc -> streamResult (pc, query, handler, params));
+		}catch (SQLException | RuntimeException e){
+			shape.failed (start);
+			throw e;
+		}
+		shape.returned (start, rows);
+		if (replicaRows == null){
+			checkSlow (query, params, start, rows);
+		}
+		return rows;
+	}//end executeQueryAndStreamResult
+
+	/**
+	 * Method to stream a report from the read replica when it is usable.
+	 * A failure before the first row reaches the handler is left to the
+	 * primary; after that the rows already handed out cannot be taken back.
+	 *
+	 * @return the number of rows, or null when the primary has to run it
+	 */
+	private Integer streamFromReplica (String query, final RowHandler handler, Object[] params) throws SQLException {
+		if (!readsReplica (query)){
+			return null;
+		}
+		final boolean[] started = { false };
+		RowHandler tracked = new RowHandler () {
+			@Override
+			public void start (ResultSetMetaData rsmd) throws SQLException {
+				started[0] = true;
+				handler.start (rsmd);
+			}
+
+			@Override
+			public void row (ResultSet rs) throws SQLException {
+				handler.row (rs);
 			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
+		};
+		try (ConnectionPool.PooledConnection pc = this._replica.borrow ()) {
+			return inTransaction (pc, c -> streamResult (c, query, tracked, params));
+		}catch (SQLException e){
+			if (started[0]){
+				throw e;
+			}
+			this._replica.failed (e);
+			return null;
+		}
+	}//end streamFromReplica
+
+	private static int streamResult (ConnectionPool.PooledConnection pc, String query, RowHandler handler,
+			Object[] params) throws SQLException {
+		PreparedStatement stmt = pc.prepare (query);
+		bind (stmt, params);
+		stmt.setFetchSize (STREAM_FETCH_SIZE);
+
+		int rowCount = 0;
+		try (ResultSet rs = stmt.executeQuery ()) {
+			handler.start (rs.getMetaData ());
+			while (rs.next ()){
+				handler.row (rs);
+				++rowCount;
+			}//end while
+		}
 		return rowCount;
-	}
+	}//end streamResult
+
+	/**
+	 * Method to run several statements as one transaction on a single
+	 * pooled connection.  The work is committed when it returns normally
+	 * and rolled back when it throws.
+	 * 
+	 * @param work the statements to run
+	 * @return whatever the work returns
+	 * @throws java.sql.SQLException when any statement or the commit failed
+	 */
+	public <T> T executeInTransaction (TransactionCallback<T> work) throws SQLException {
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			return inTransaction (pc, work);
+		}
+	}//end executeInTransaction
+
+	private static <T> T inTransaction (ConnectionPool.PooledConnection pc, TransactionCallback<T> work) throws SQLException {
+		Connection conn = pc.getConnection ();
+		conn.setAutoCommit (false);
+		try {
+			T result = work.run (pc);
+			conn.commit ();
+			return result;
+		} finally {
+			if (!conn.getAutoCommit ()) {
+				conn.rollback ();
+				conn.setAutoCommit (true);
+			}
+		}
+	}//end inTransaction
 	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -121,66 +318,877 @@ public class DBproject{
 	 * a list of records. Each record in turn is a list of attribute values
 	 * 
 	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
 	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+		return queryList (query, DBproject::strings, params);
+	}//end executeQueryAndReturnResult
+
+	//every column of the current row as text
+	private static List<String> strings (ResultSet rs) throws SQLException {
+		int numCol = rs.getMetaData ().getColumnCount ();
+		List<String> record = new ArrayList<String> (numCol);
+		for (int i=1; i<=numCol; ++i) 
+			record.add (rs.getString (i)); 
+		return record;
+	}
+
+	/**
+	 * Method to execute a query and map every row to a typed value.
+	 * 
+	 * @param query the input query string
+	 * @param mapper builds the value of one row
+	 * @param params values bound to the '?' placeholders
+	 * @return the mapped rows in query order
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public <T> List<T> queryList (String query, final RowMapper<T> mapper, Object... params) throws SQLException {
+		final List<T> result = new ArrayList<T> ();
+		readRows (query, params, Integer.MAX_VALUE, rs -> result.add (mapper.map (rs)));
+		return result;
+	}
+
+	/**
+	 * Method to execute a query and map its first row.
+	 * 
+	 * @param query the input query string
+	 * @param mapper builds the value of the row
+	 * @param params values bound to the '?' placeholders
+	 * @return the mapped first row, or null when there is none
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public <T> T queryOne (String query, final RowMapper<T> mapper, Object... params) throws SQLException {
+		final List<T> result = new ArrayList<T> (1);
+		readRows (query, params, 1, rs -> result.add (mapper.map (rs)));
+		return result.isEmpty () ? null : result.get (0);
+	}
+
+	/**
+	 * Method to execute a query returning one number, e.g. a COUNT(*).
+	 * 
+	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
+	 * @return the first column of the first row; SQL NULL reads as 0
+	 * @throws java.sql.SQLException when failed to execute the query or it returned no row
+	 */
+	public int queryInt (String query, Object... params) throws SQLException {
+		final int[] value = new int[1];
+		if (readRows (query, params, 1, rs -> value[0] = rs.getInt (1)) == 0){
+			throw new SQLException ("Query returned no row: " + query);
+		}
+		return value[0];
+	}
+
+	/**
+	 * Method to execute a query returning one truth value, e.g. an EXISTS.
+	 * 
+	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
+	 * @return the first column of the first row; SQL NULL reads as false
+	 * @throws java.sql.SQLException when failed to execute the query or it returned no row
+	 */
+	public boolean queryBoolean (String query, Object... params) throws SQLException {
+		final boolean[] value = new boolean[1];
+		if (readRows (query, params, 1, rs -> value[0] = rs.getBoolean (1)) == 0){
+			throw new SQLException ("Query returned no row: " + query);
+		}
+		return value[0];
+	}
+
+	/**
+	 * Method to execute a query and read its first column into an array,
+	 * e.g. a list of ids, without boxing every value.
+	 * 
+	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
+	 * @return the first column of every row; SQL NULL reads as 0
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int[] queryIntColumn (String query, Object... params) throws SQLException {
+		final int[][] column = { new int[16] };
+		final int[] size = { 0 };
+		readRows (query, params, Integer.MAX_VALUE, rs -> {
+			if (size[0] == column[0].length){
+				column[0] = Arrays.copyOf (column[0], size[0] * 2);
+			}
+			column[0][size[0]++] = rs.getInt (1);
+		});
+		return Arrays.copyOf (column[0], size[0]);
+	}
+
+	/**
+	 * Method to run a query in auto-commit mode and hand up to limit rows
+	 * to a handler.  Reports the replica may answer are read there first.
+	 *
+	 * @return the number of rows handed to the handler
+	 */
+	private int readRows (String query, Object[] params, int limit, final RowHandler handler) throws SQLException {
+		QueryMetrics.Shape shape = this._metrics.shape (query);
+		long start = System.nanoTime ();
+		if (readsReplica (query)){
+			final int[] handed = { 0 };
+			try (ConnectionPool.PooledConnection pc = this._replica.borrow ()) {
+				//not passed to the slow query log, whose EXPLAIN would run on the primary
+				int rows = readRows (pc, query, params, limit, rs -> {
+					handed[0]++;
+					handler.row (rs);
+				});
+				shape.returned (start, rows);
+				return rows;
+			}catch (SQLException e){
+				if (handed[0] > 0){
+					shape.failed (start);
+					throw e;
+				}
+				//the primary answers instead
+				this._replica.failed (e);
+			}
+		}//end if
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			int rows = readRows (pc, query, params, limit, handler);
+			shape.returned (start, rows);
+			checkSlow (query, params, start, rows);
+			return rows;
+		}catch (SQLException e){
+			shape.failed (start);
+			throw e;
+		}
+	}//end readRows
+
+	private static int readRows (ConnectionPool.PooledConnection pc, String query, Object[] params, int limit,
+			RowHandler handler) throws SQLException {
+		//fetches the cached statement object 
+		PreparedStatement stmt = pc.prepare (query);
+		bind (stmt, params);
 		
 		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
-	}//end executeQueryAndReturnResult
+		try (ResultSet rs = stmt.executeQuery ()) {
+			int rowCount = 0;
+			while (rowCount < limit && rs.next ()){
+				handler.row (rs);
+				++rowCount;
+			}//end while 
+			return rowCount; 
+		}
+	}//end readRows
 	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the number of results
 	 * 
 	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeQuery (String query, Object... params) throws SQLException {
+		QueryMetrics.Shape shape = this._metrics.shape (query);
+		long start = System.nanoTime ();
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			//fetches the cached statement object
+			PreparedStatement stmt = pc.prepare (query);
+			bind (stmt, params);
 
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+			//issues the query instruction
+			try (ResultSet rs = stmt.executeQuery ()) {
+				int rowCount = 0;
 
-		int rowCount = 0;
+				//iterates through the result set and count nuber of results.
+				if(rs.next()){
+					rowCount++;
+				}//end while
+				shape.returned (start, rowCount);
+				checkSlow (query, params, start, rowCount);
+				return rowCount;
+			}
+		}catch (SQLException e){
+			shape.failed (start);
+			throw e;
+		}
+	}
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+	/**
+	 * Method to hand a finished statement to the slow query log.
+	 */
+	private void checkSlow (String sql, Object[] params, long start, long rows) {
+		if (this._slowLog != null){
+			this._slowLog.check (sql, params, start, rows);
+		}
 	}
+
+	/**
+	 * Method to explain a statement for the slow query log.  A SELECT is
+	 * run again as EXPLAIN (ANALYZE, BUFFERS) in a read-only transaction,
+	 * which is rolled back; one that turns out to write (e.g. by calling a
+	 * function) and every other statement get a plain EXPLAIN, which plans
+	 * without executing.
+	 *
+	 * @param sql the statement
+	 * @param params its parameters
+	 * @return the plan, one line per element
+	 * @throws java.sql.SQLException when the statement cannot be explained
+	 */
+	List<String> explain (String sql, Object[] params) throws SQLException {
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			Connection conn = pc.getConnection ();
+			conn.setAutoCommit (false);
+			try {
+				if (SlowQueryLog.firstWord (sql).equals ("SELECT")){
+					try (Statement readOnly = conn.createStatement ()) {
+						readOnly.execute ("SET TRANSACTION READ ONLY");
+					}
+					try {
+						return plan (conn, "EXPLAIN (ANALYZE, BUFFERS) " + sql, params);
+					}catch (SQLException e){
+						//25006: the SELECT tried to write
+						if (!"25006".equals (e.getSQLState ())){
+							throw e;
+						}
+						conn.rollback ();
+					}
+				}//end if
+				return plan (conn, "EXPLAIN " + sql, params);
+			} finally {
+				conn.rollback ();
+				conn.setAutoCommit (true);
+			}
+		}
+	}//end explain
+
+	private static List<String> plan (Connection conn, String explain, Object[] params) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement (explain)) {
+			bind (stmt, params);
+			List<String> plan = new ArrayList<String> ();
+			try (ResultSet rs = stmt.executeQuery ()) {
+				while (rs.next ()){
+					plan.add (rs.getString (1));
+				}
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * Method to bind query parameters in order.  Strings, Integers and
+	 * java.sql.Dates map onto the matching SQL types; null binds SQL NULL.
+	 *
+	 * @param stmt the prepared statement
+	 * @param params the values for the '?' placeholders
+	 * @throws java.sql.SQLException when a value cannot be bound
+	 */
+	static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+		for (int i = 0; i < params.length; ++i) {
+			stmt.setObject (i + 1, params[i]);
+		}
+	}//end bind
 	
+	/**
+	 * Single statement booking: registers the customer if new, takes a seat
+	 * if the plane still has one and inserts the reservation, all in one
+	 * round trip.  The seat is taken by a conditional UPDATE on the Flight
+	 * row, so concurrent bookers queue on that row lock and re-check the
+	 * capacity after it is released; a flight can never be oversold.  The
+	 * updated num_sold is returned (NULL when waitlisted) so the seat cache
+	 * stores the committed value instead of adding to what it holds.
+	 */
+	static final String BOOK_FLIGHT =
+		"WITH cust AS ( " +
+		"  INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode) " +
+		"  VALUES (?, ?, ?, ?, CAST(? AS DATE), ?, ?, ?) ON CONFLICT (id) DO NOTHING " +
+		"), seat AS ( " +
+		"  UPDATE Flight f SET num_sold = f.num_sold + 1 FROM FlightInfo fi, Plane p " +
+		"  WHERE f.fnum = ? AND fi.flight_id = f.fnum AND p.id = fi.plane_id AND f.num_sold < p.seats " +
+		"  RETURNING f.fnum, f.num_sold " +
+		") " +
+		"INSERT INTO Reservation (cid, fid, status) " +
+		"SELECT ?, ?, CASE WHEN EXISTS (SELECT 1 FROM seat) THEN 'R' ELSE 'W' END " +
+		"RETURNING rnum, status, (SELECT num_sold FROM seat)";
+
+	/**
+	 * Method to book a flight for a customer.  The customer row is created
+	 * when the id is new (an existing customer is reused as is).  The
+	 * reservation is 'R' when a seat was available and 'W' (waitlisted)
+	 * when the flight is full.
+	 * 
+	 * @param flight the flight number
+	 * @param customer the customer details
+	 * @return the new reservation with its generated rnum and status
+	 * @throws java.sql.SQLException when the booking failed, e.g. unknown flight
+	 */
+	public Booking bookFlight (int flight, Customer customer) throws SQLException {
+		QueryMetrics.Shape shape = this._metrics.shape (BOOK_FLIGHT);
+		long start = System.nanoTime ();
+		Object[] params = { customer.id, customer.fname, customer.lname, customer.gtype,
+			customer.dob, customer.address, customer.phone, customer.zipcode,
+			flight, customer.id, flight };
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			PreparedStatement stmt = pc.prepare (BOOK_FLIGHT);
+			bind (stmt, params);
+			Booking booking;
+			int numSold;
+			try (ResultSet rs = stmt.executeQuery ()) {
+				rs.next ();
+				booking = new Booking (rs.getInt (1), customer.id, flight, rs.getString (2).charAt (0));
+				numSold = rs.getInt (3);
+			}
+			shape.affected (start, 1);
+			checkSlow (BOOK_FLIGHT, params, start, 1);
+			this._seatCache.recordBooking (flight, booking.isReserved (), numSold);
+			return booking;
+		}catch (SQLException e){
+			shape.failed (start);
+			throw e;
+		}
+	}//end bookFlight
+
+	//cancellation locks the flight before the reservation, in the same order
+	//as booking and promotion, so the three never deadlock
+	static final String FIND_RESERVATION = "SELECT cid, fid, status FROM Reservation WHERE rnum = ?";
+	static final String LOCK_FLIGHT = "SELECT fnum FROM Flight WHERE fnum = ? FOR UPDATE";
+	static final String LOCK_RESERVATION = "SELECT status FROM Reservation WHERE rnum = ? FOR UPDATE";
+	static final String CANCEL_RESERVATION = "UPDATE Reservation SET status = 'C' WHERE rnum = ?";
+	static final String RELEASE_SEAT = "UPDATE Flight SET num_sold = GREATEST(num_sold - 1, 0) WHERE fnum = ?";
+	//fills a flight's free seats from its waitlist, oldest rnum first.  Flights
+	//and waitlisted rows locked by another transaction are skipped, not waited
+	//for, so concurrent promoters each take different flights.  The partial
+	//index reservation_waitlist keeps the cost proportional to the seats filled.
+	static final String PROMOTE_WAITLIST =
+		"WITH f AS ( " +
+		"  SELECT f.fnum, (SELECT MAX(p.seats) FROM FlightInfo fi, Plane p WHERE fi.flight_id = f.fnum AND p.id = fi.plane_id) - f.num_sold AS free " +
+		"  FROM Flight f WHERE f.fnum = ? FOR UPDATE OF f SKIP LOCKED " +
+		"), w AS ( " +
+		"  SELECT r.rnum FROM Reservation r WHERE r.fid = (SELECT fnum FROM f) AND r.status = 'W' " +
+		"  ORDER BY r.rnum LIMIT GREATEST((SELECT free FROM f), 0) FOR UPDATE OF r SKIP LOCKED " +
+		"), promoted AS ( " +
+		"  UPDATE Reservation r SET status = 'R' FROM w WHERE r.rnum = w.rnum RETURNING r.rnum, r.cid " +
+		"), sold AS ( " +
+		"  UPDATE Flight SET num_sold = num_sold + (SELECT COUNT(*) FROM promoted) " +
+		"  WHERE fnum = (SELECT fnum FROM f) AND EXISTS (SELECT 1 FROM promoted) RETURNING fnum " +
+		") " +
+		"SELECT rnum, cid FROM promoted ORDER BY rnum";
+	//flights with a waitlist and a free seat; reads only the waitlist index
+	static final String FLIGHTS_TO_PROMOTE =
+		"SELECT f.fnum FROM (SELECT DISTINCT fid FROM Reservation WHERE status = 'W') w JOIN Flight f ON f.fnum = w.fid " +
+		"WHERE f.num_sold < (SELECT MAX(p.seats) FROM FlightInfo fi, Plane p WHERE fi.flight_id = f.fnum AND p.id = fi.plane_id) " +
+		"LIMIT ?";
+
+	/**
+	 * Method to cancel a reservation.  A reserved seat is given back and
+	 * handed to the flight's oldest waitlisted reservation in the same
+	 * transaction, so a new booking cannot take it first.
+	 *
+	 * @param rnum the reservation number
+	 * @return the cancelled and promoted reservations, or null when the
+	 *         reservation does not exist or was already cancelled
+	 * @throws java.sql.SQLException when the cancellation failed
+	 */
+	public Cancellation cancelReservation (final int rnum) throws SQLException {
+		Cancellation cancellation = executeInTransaction (pc -> {
+			int cid, fid;
+			PreparedStatement find = pc.prepare (FIND_RESERVATION);
+			find.setInt (1, rnum);
+			try (ResultSet rs = find.executeQuery ()) {
+				if (!rs.next ()) {
+					return null;
+				}
+				cid = rs.getInt (1);
+				fid = rs.getInt (2);
+			}
+			PreparedStatement lockFlight = pc.prepare (LOCK_FLIGHT);
+			lockFlight.setInt (1, fid);
+			try (ResultSet rs = lockFlight.executeQuery ()) {
+				rs.next ();
+			}
+			//read again under the flight lock: a concurrent cancel or promotion may have changed it
+			char status;
+			PreparedStatement lock = pc.prepare (LOCK_RESERVATION);
+			lock.setInt (1, rnum);
+			try (ResultSet rs = lock.executeQuery ()) {
+				status = rs.next () ? rs.getString (1).charAt (0) : 'C';
+			}
+			if (status == 'C') {
+				return null;
+			}
+			PreparedStatement cancel = pc.prepare (CANCEL_RESERVATION);
+			cancel.setInt (1, rnum);
+			cancel.executeUpdate ();
+			List<Booking> promoted = new ArrayList<Booking> ();
+			if (status == 'R') {
+				PreparedStatement release = pc.prepare (RELEASE_SEAT);
+				release.setInt (1, fid);
+				release.executeUpdate ();
+				promoted = promote (pc, fid);
+			}
+			return new Cancellation (new Booking (rnum, cid, fid, status), promoted);
+		});
+		if (cancellation != null) {
+			this._seatCache.invalidate (cancellation.cancelled.fid);
+		}
+		return cancellation;
+	}//end cancelReservation
+
+	/**
+	 * Method to move waitlisted reservations of a flight to 'R' while it
+	 * has free seats, oldest first.  Returns nothing when another
+	 * transaction holds the flight; it will be promoted by that one or by
+	 * a later call.
+	 *
+	 * @param flight the flight number
+	 * @return the promoted reservations
+	 * @throws java.sql.SQLException when the promotion failed
+	 */
+	public List<Booking> promoteWaitlist (final int flight) throws SQLException {
+		List<Booking> promoted = executeInTransaction (pc -> promote (pc, flight));
+		if (!promoted.isEmpty ()) {
+			this._seatCache.invalidate (flight);
+		}
+		return promoted;
+	}
+
+	private List<Booking> promote (ConnectionPool.PooledConnection pc, int flight) throws SQLException {
+		QueryMetrics.Shape shape = this._metrics.shape (PROMOTE_WAITLIST);
+		long start = System.nanoTime ();
+		List<Booking> promoted = new ArrayList<Booking> ();
+		try {
+			PreparedStatement stmt = pc.prepare (PROMOTE_WAITLIST);
+			stmt.setInt (1, flight);
+			try (ResultSet rs = stmt.executeQuery ()) {
+				while (rs.next ()) {
+					promoted.add (new Booking (rs.getInt (1), rs.getInt (2), flight, 'R'));
+				}
+			}
+		}catch (SQLException e){
+			shape.failed (start);
+			throw e;
+		}
+		shape.affected (start, promoted.size ());
+		checkSlow (PROMOTE_WAITLIST, new Object[] { flight }, start, promoted.size ());
+		return promoted;
+	}//end promote
+
+	/**
+	 * Method to list flights that have waitlisted reservations and a free
+	 * seat, i.e. the work of the promotion worker.
+	 *
+	 * @param limit the most flights returned
+	 * @return the flight numbers
+	 * @throws java.sql.SQLException when the query failed
+	 */
+	public List<Integer> flightsToPromote (int limit) throws SQLException {
+		return queryList (FLIGHTS_TO_PROMOTE, rs -> rs.getInt (1), limit);
+	}
+
+	static final String LOAD_SEATS =
+		"SELECT f.num_sold, f.actual_departure_date, " +
+		"  (SELECT MAX(p.seats) FROM FlightInfo fi, Plane p WHERE fi.flight_id = f.fnum AND p.id = fi.plane_id), " +
+		"  EXISTS (SELECT 1 FROM Schedule s WHERE s.flightNum = f.fnum) " +
+		"FROM Flight f WHERE f.fnum = ?";
+
+	/**
+	 * Method to get the seat capacity and seats sold of a flight, from the
+	 * seat cache when it holds a fresh entry and from the database otherwise.
+	 * 
+	 * @param flight the flight number
+	 * @return the seat information, or null when the flight does not exist
+	 * @throws java.sql.SQLException when the flight could not be loaded
+	 */
+	public SeatCache.Entry getSeatAvailability (int flight) throws SQLException {
+		SeatCache.Entry entry = this._seatCache.get (flight);
+		if (entry != null) {
+			return entry;
+		}
+		QueryMetrics.Shape shape = this._metrics.shape (LOAD_SEATS);
+		long start = System.nanoTime ();
+		//stamped before the read, so a booking written through meanwhile wins over this row
+		long loadedAt = System.nanoTime ();
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			PreparedStatement stmt = pc.prepare (LOAD_SEATS);
+			stmt.setInt (1, flight);
+			try (ResultSet rs = stmt.executeQuery ()) {
+				if (!rs.next ()) {
+					shape.returned (start, 0);
+					return null;
+				}
+				int seats = rs.getInt (3);
+				if (rs.wasNull ()) {
+					seats = -1;
+				}
+				entry = new SeatCache.Entry (flight, seats, rs.getInt (1),
+					rs.getDate (2).toLocalDate (), rs.getBoolean (4), loadedAt);
+			}
+			shape.returned (start, 1);
+			checkSlow (LOAD_SEATS, new Object[] { flight }, start, 1);
+		}catch (SQLException e){
+			shape.failed (start);
+			throw e;
+		}
+		this._seatCache.put (entry);
+		return entry;
+	}//end getSeatAvailability
+
+	/**
+	 * Method to drop a flight from the seat cache after num_sold or its
+	 * plane was changed outside bookFlight.
+	 *
+	 * @param flight the flight number
+	 */
+	public void invalidateSeatCache (int flight) {
+		this._seatCache.invalidate (flight);
+	}
+
+	public SeatCache.Stats getSeatCacheStats () {
+		return this._seatCache.getStats ();
+	}
+
+	//queries behind the menu options, shared with the command mode
+	//an existing id leaves the row alone and reports 0 rows instead of failing.
+	//INSERT_FLIGHT names no conflict target: fnum alone is not a unique key of
+	//the partitioned Flight, whose triggers skip a taken fnum instead
+	static final String INSERT_PLANE = "INSERT INTO Plane (id, make, model, age, seats) VALUES (?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+	static final String INSERT_PILOT = "INSERT INTO Pilot (id, fullname, nationality) VALUES (?, ?, ?) ON CONFLICT (id) DO NOTHING";
+	static final String INSERT_FLIGHT = "INSERT INTO Flight (fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, arrival_airport, departure_airport) VALUES (?, ?, ?, ?, CAST(? AS DATE), CAST(? AS DATE), ?, ?) ON CONFLICT DO NOTHING";
+	static final String INSERT_TECHNICIAN = "INSERT INTO Technician (id, full_name) VALUES (?, ?) ON CONFLICT (id) DO NOTHING";
+	//primary keys of the tables above, for the key sets
+	static final String PLANE_KEYS = "SELECT id FROM Plane";
+	static final String PILOT_KEYS = "SELECT id FROM Pilot";
+	static final String FLIGHT_KEYS = "SELECT fnum FROM Flight";
+	static final String TECHNICIAN_KEYS = "SELECT id FROM Technician";
+	static final String FLIGHT_EXISTS = "SELECT EXISTS (SELECT 1 FROM Flight f WHERE f.fnum = ?)";
+	//queries 7 and 8 read the aggregates the Repairs triggers maintain (see create.sql)
+	static final String QUERY7 = "SELECT plane_id FROM repairs_per_plane WHERE total_repairs > 0 ORDER BY total_repairs DESC, plane_id DESC";
+	static final String QUERY8 = "SELECT year, total_repairs AS repairs_per_year FROM repairs_per_year WHERE total_repairs > 0 ORDER BY repairs_per_year ASC";
+	static final String REBUILD_REPAIR_SUMMARIES = "SELECT rebuild_repair_summaries()";
+	//aggregate rows that disagree with a fresh count over Repairs
+	static final String CHECK_REPAIR_SUMMARIES =
+		"SELECT 'plane' AS kind, COALESCE(a.plane_id, s.plane_id) AS key, COALESCE(a.n, 0) AS actual, COALESCE(s.total_repairs, 0) AS stored " +
+		"FROM (SELECT plane_id, COUNT(*) AS n FROM Repairs GROUP BY plane_id) a " +
+		"FULL JOIN repairs_per_plane s ON s.plane_id = a.plane_id WHERE COALESCE(a.n, 0) <> COALESCE(s.total_repairs, 0) " +
+		"UNION ALL " +
+		"SELECT 'year', COALESCE(a.year, s.year), COALESCE(a.n, 0), COALESCE(s.total_repairs, 0) " +
+		"FROM (SELECT EXTRACT(year FROM repair_date)::INTEGER AS year, COUNT(*) AS n FROM Repairs GROUP BY 1) a " +
+		"FULL JOIN repairs_per_year s ON s.year = a.year WHERE COALESCE(a.n, 0) <> COALESCE(s.total_repairs, 0)";
+	//query 9 reads the counters the Reservation triggers maintain (see create.sql)
+	static final String QUERY9 = "SELECT COALESCE((SELECT passengers FROM flight_status_counts WHERE fid = ? AND status = CAST(? AS CHAR(1))), 0) AS Number_of_Passengers";
+	//read-only reports that a usable replica answers instead of the primary
+	static final Set<String> REPLICA_QUERIES = new HashSet<String> (Arrays.asList (QUERY7, QUERY8, QUERY9));
+	//counters that disagree with a fresh count over Reservation
+	static final String CHECK_PASSENGER_COUNTS =
+		"SELECT COALESCE(a.fid, s.fid) AS fid, COALESCE(a.status, s.status) AS status, COALESCE(a.n, 0) AS actual, COALESCE(s.passengers, 0) AS stored " +
+		"FROM (SELECT fid, status, COUNT(*) AS n FROM Reservation WHERE status IS NOT NULL GROUP BY fid, status) a " +
+		"FULL JOIN flight_status_counts s ON s.fid = a.fid AND s.status = a.status WHERE COALESCE(a.n, 0) <> COALESCE(s.passengers, 0)";
+	//overwrites only the counters that drifted
+	static final String REPAIR_PASSENGER_COUNTS =
+		"INSERT INTO flight_status_counts (fid, status, passengers) SELECT fid, status, actual FROM (" + CHECK_PASSENGER_COUNTS + ") d " +
+		"ON CONFLICT (fid, status) DO UPDATE SET passengers = EXCLUDED.passengers";
+
+	/**
+	 * Method to add a plane (menu option 1).
+	 *
+	 * @return true when the plane was created, false when the id exists
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public boolean addPlane (int id, String make, String model, int age, int seats) throws SQLException {
+		return created (PLANE_KEYS, id, executeUpdate (INSERT_PLANE, id, make, model, age, seats));
+	}
+
+	/**
+	 * Method to add a pilot (menu option 2).
+	 *
+	 * @return true when the pilot was created, false when the id exists
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public boolean addPilot (int id, String fullname, String nationality) throws SQLException {
+		return created (PILOT_KEYS, id, executeUpdate (INSERT_PILOT, id, fullname, nationality));
+	}
+
+	/**
+	 * Method to add a flight (menu option 3).  Dates are YYYY-MM-DD.
+	 *
+	 * @return true when the flight was created, false when the number exists
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public boolean addFlight (int fnum, int cost, int numSold, int numStops, String departureDate,
+			String arrivalDate, String arrivalAirport, String departureAirport) throws SQLException {
+		return created (FLIGHT_KEYS, fnum, executeUpdate (INSERT_FLIGHT, fnum, cost, numSold, numStops,
+			departureDate, arrivalDate, arrivalAirport, departureAirport));
+	}
+
+	/**
+	 * Method to add a technician (menu option 4).
+	 *
+	 * @return true when the technician was created, false when the id exists
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public boolean addTechnician (int id, String fullName) throws SQLException {
+		return created (TECHNICIAN_KEYS, id, executeUpdate (INSERT_TECHNICIAN, id, fullName));
+	}
+
+	//either way the id exists now; a loaded key set learns it
+	private boolean created (String keys, int id, int rows) {
+		KeySet set = this._keySets.get (keys);
+		if (set != null){
+			set.add (id);
+		}
+		return rows == 1;
+	}
+
+	/**
+	 * Method to check an id against the in-memory key set of its table,
+	 * without a round trip.  The set is read from the database the first
+	 * time a table is asked about; ids other sessions add afterwards are
+	 * not in it, so a false answer still needs the ON CONFLICT result of
+	 * the add method.
+	 *
+	 * @param keys PLANE_KEYS, PILOT_KEYS, FLIGHT_KEYS or TECHNICIAN_KEYS
+	 * @param id the id to look up
+	 * @return true when the id is known to exist
+	 * @throws java.sql.SQLException when the key set cannot be loaded
+	 */
+	public boolean keyExists (String keys, int id) throws SQLException {
+		KeySet set = this._keySets.get (keys);
+		if (set == null){
+			KeySet loaded = KeySet.load (this, keys);
+			set = this._keySets.putIfAbsent (keys, loaded);
+			if (set == null){
+				set = loaded;
+			}
+		}
+		return set.contains (id);
+	}
+
+	/**
+	 * Method to get the seats available on a flight departing on a date
+	 * (menu option 6), answered from the seat cache.
+	 *
+	 * @return the seats left, or null when the flight does not depart that
+	 *         day, has no plane or is not scheduled
+	 */
+	public Integer availableSeats (int flight, LocalDate departureDate) throws SQLException {
+		SeatCache.Entry seats = getSeatAvailability (flight);
+		if (seats != null && seats.scheduled && seats.hasPlane () && seats.departureDate.equals (departureDate)) {
+			return seats.available ();
+		}
+		return null;
+	}
+
+	/**
+	 * Method to print the seats available on a flight departing on a date
+	 * (menu option 6).  Only scheduled flights with a plane are listed.
+	 *
+	 * @return the number of rows printed
+	 */
+	public int printAvailableSeats (int flight, LocalDate departureDate) throws SQLException, IOException {
+		Integer seats = availableSeats (flight, departureDate);
+		List<String[]> rows = new ArrayList<String[]> ();
+		if (seats != null) {
+			rows.add (new String[] { seats.toString () });
+		}
+		return printResult (new String[] { "seats_available" }, new boolean[] { true }, rows);
+	}
+
+	/**
+	 * Method to print the planes by number of repairs, most repaired first
+	 * (menu option 7).
+	 *
+	 * @return the number of rows printed
+	 */
+	public int printRepairsPerPlane () throws SQLException {
+		return executeQueryAndPrintResult (QUERY7);
+	}
+
+	/**
+	 * Method to print the number of repairs per year in ascending order
+	 * (menu option 8).
+	 *
+	 * @return the number of rows printed
+	 */
+	public int printRepairsPerYear () throws SQLException {
+		return executeQueryAndPrintResult (QUERY8);
+	}
+
+	/**
+	 * Method to recompute repairs_per_plane and repairs_per_year from the
+	 * Repairs table.  Writes to Repairs wait until it is done.
+	 *
+	 * @throws java.sql.SQLException when the rebuild failed
+	 */
+	public void rebuildRepairSummaries () throws SQLException {
+		executeInTransaction (pc -> {
+			try (ResultSet rs = pc.prepare (REBUILD_REPAIR_SUMMARIES).executeQuery ()) {
+				return rs.next ();
+			}
+		});
+	}
+
+	/**
+	 * Method to compare the repair aggregates with a fresh count.  Runs in
+	 * one repeatable-read snapshot so concurrent repairs cannot show up as
+	 * differences.
+	 *
+	 * @return one row per differing plane or year: kind, key, actual count, stored count
+	 * @throws java.sql.SQLException when the check could not run
+	 */
+	public List<List<String>> checkRepairSummaries () throws SQLException {
+		return checkInSnapshot (CHECK_REPAIR_SUMMARIES);
+	}
+
+	/**
+	 * Method to compare the passenger counters of query 9 with a fresh
+	 * count over Reservation, in one repeatable-read snapshot.
+	 *
+	 * @return one row per differing counter: fid, status, actual count, stored count
+	 * @throws java.sql.SQLException when the check could not run
+	 */
+	public List<List<String>> checkPassengerCounts () throws SQLException {
+		return checkInSnapshot (CHECK_PASSENGER_COUNTS);
+	}
+
+	/**
+	 * Method to overwrite the passenger counters that differ from a fresh
+	 * count.  Writes to Reservation wait until it is done.
+	 *
+	 * @return the number of counters repaired
+	 * @throws java.sql.SQLException when the repair failed
+	 */
+	public int repairPassengerCounts () throws SQLException {
+		return executeInTransaction (pc -> {
+			try (Statement stmt = pc.getConnection ().createStatement ()) {
+				stmt.execute ("LOCK TABLE Reservation IN SHARE MODE");
+			}
+			return pc.prepare (REPAIR_PASSENGER_COUNTS).executeUpdate ();
+		});
+	}
+
+	private List<List<String>> checkInSnapshot (final String check) throws SQLException {
+		return executeInTransaction (pc -> {
+			Connection conn = pc.getConnection ();
+			try (Statement stmt = conn.createStatement ()) {
+				stmt.execute ("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+			}
+			List<List<String>> diffs = new ArrayList<List<String>> ();
+			try (ResultSet rs = pc.prepare (check).executeQuery ()) {
+				while (rs.next ()){
+					List<String> row = new ArrayList<String> ();
+					for (int i = 1; i <= 4; ++i){
+						row.add (rs.getString (i));
+					}
+					diffs.add (row);
+				}
+			}
+			return diffs;
+		});
+	}//end checkInSnapshot
+
+	/**
+	 * Method to print how many passengers of a flight have a status
+	 * (menu option 9).
+	 *
+	 * @param status W, R or C
+	 * @return the number of rows printed
+	 */
+	public int printPassengersWithStatus (int flight, String status) throws SQLException {
+		return executeQueryAndPrintResult (QUERY9, flight, status);
+	}
+
+	/**
+	 * Method to count the passengers of a flight with a status, as menu
+	 * option 9 prints it.
+	 *
+	 * @param status W, R or C
+	 * @return the number of passengers
+	 */
+	public int countPassengersWithStatus (int flight, String status) throws SQLException {
+		return queryInt (QUERY9, flight, status);
+	}
+
+	/**
+	 * Method to run a call on the async executor.  The call waits for one
+	 * of ASYNC_MAX_IN_FLIGHT permits before it starts, so firing many at
+	 * once queues them in memory instead of queueing them on the pool.
+	 * Failures, SQLException included, complete the future exceptionally.
+	 *
+	 * @param task the work, typically one or more DBproject calls
+	 * @return a future completed with the task's result
+	 */
+	public <T> CompletableFuture<T> supplyAsync (final Callable<T> task) {
+		final CompletableFuture<T> future = new CompletableFuture<T> ();
+		try {
+			this._async.execute (() -> {
+				try {
+					this._asyncPermits.acquire ();
+				}catch (InterruptedException e){
+					future.completeExceptionally (e);
+					return;
+				}
+				try {
+					future.complete (task.call ());
+				}catch (Throwable e){
+					future.completeExceptionally (e);
+				}finally{
+					this._asyncPermits.release ();
+				}
+			});
+		}catch (RejectedExecutionException e){
+			//cleanup() has run
+			future.completeExceptionally (e);
+		}
+		return future;
+	}//end supplyAsync
+
+	/**
+	 * Method to run executeQueryAndReturnResult without blocking the caller.
+	 *
+	 * @param query the input query string
+	 * @param params values bound to the '?' placeholders
+	 * @return a future of the rows
+	 */
+	public CompletableFuture<List<List<String>>> executeQueryAsync (String query, Object... params) {
+		return supplyAsync (() -> executeQueryAndReturnResult (query, params));
+	}
+
+	/**
+	 * Method to run executeUpdate without blocking the caller.
+	 *
+	 * @param sql the input SQL string
+	 * @param params values bound to the '?' placeholders
+	 * @return a future of the number of rows affected
+	 */
+	public CompletableFuture<Integer> executeUpdateAsync (String sql, Object... params) {
+		return supplyAsync (() -> executeUpdate (sql, params));
+	}
+
+	public CompletableFuture<SeatCache.Entry> getSeatAvailabilityAsync (int flight) {
+		return supplyAsync (() -> getSeatAvailability (flight));
+	}
+
+	public CompletableFuture<Integer> countPassengersWithStatusAsync (int flight, String status) {
+		return supplyAsync (() -> countPassengersWithStatus (flight, status));
+	}
+
+	/**
+	 * @return the plane ids of query 7, most repaired first
+	 */
+	public CompletableFuture<int[]> repairsPerPlaneAsync () {
+		return supplyAsync (() -> queryIntColumn (QUERY7));
+	}
+
+	/**
+	 * @return the {year, repairs} pairs of query 8, fewest repairs first
+	 */
+	public CompletableFuture<List<int[]>> repairsPerYearAsync () {
+		return supplyAsync (() -> queryList (QUERY8, rs -> new int[] { rs.getInt (1), rs.getInt (2) }));
+	}
+
 	/**
 	 * Method to fetch the last value from sequence. This
 	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * value of sequence used for autogenerated keys.  currval is session
+	 * local, so this only sees values drawn on the pooled connection it
+	 * happens to borrow; inserts should read their key with RETURNING
+	 * instead (see BOOK_FLIGHT), and bulk writers take keys from an
+	 * RnumAllocator.
 	 * 
 	 * @param sequence name of the DB sequence
 	 * @return current value of a sequence
@@ -188,24 +1196,73 @@ public class DBproject{
 	 */
 	
 	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+		try (ConnectionPool.PooledConnection pc = this._pool.borrow ()) {
+			PreparedStatement stmt = pc.prepare ("SELECT currval(CAST(? AS regclass))");
+			stmt.setString (1, sequence);
+			try (ResultSet rs = stmt.executeQuery ()) {
+				if (rs.next()) return rs.getInt(1);
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Method to report the connection pool metrics (size, borrows, waits,
+	 * statement cache hits and misses).
+	 *
+	 * @return a snapshot of the pool statistics
+	 */
+	public ConnectionPool.Stats getPoolStats() {
+		return this._pool.getStats ();
+	}
+
+	/**
+	 * Method to report where the reports were read and the replica's lag.
+	 *
+	 * @return a snapshot of the routing statistics, or null without a replica
+	 */
+	public ReplicaRouter.Stats getReplicaStats () {
+		return this._replica == null ? null : this._replica.getStats ();
+	}
+
+	//true when a report should read the replica rather than the primary
+	private boolean readsReplica (String query) {
+		return this._replica != null && REPLICA_QUERIES.contains (query) && this._replica.usable ();
+	}
+
+	public QueryMetrics getQueryMetrics () {
+		return this._metrics;
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to close the pooled physical connections if they are open, and
+	 * write the query metrics to -Ddbproject.metrics.file when it is set.
 	 */
 	public void cleanup(){
-		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
-		}catch (SQLException e){
-	         // ignored.
-		}//end try
+		//let async calls still running finish while the pool is open, so the metrics include them
+		this._async.shutdown ();
+		try {
+			this._async.awaitTermination (30, TimeUnit.SECONDS);
+		}catch (InterruptedException e){
+			Thread.currentThread ().interrupt ();
+		}
+		if (this._slowLog != null){
+			this._slowLog.close ();
+		}//end if
+		if (METRICS_FILE != null){
+			try (Writer out = new FileWriter (METRICS_FILE)) {
+				this._metrics.dump (out);
+			}catch (IOException e){
+				System.err.println ("Unable to write the query metrics to " + METRICS_FILE + ": " + e.getMessage ());
+			}
+		}//end if
+		this._metrics.unregister ();
+		if (this._replica != null){
+			this._replica.close ();
+		}//end if
+		if (this._pool != null){
+			this._pool.close ();
+		}//end if
 	}//end cleanup
 
 	/**
@@ -214,17 +1271,53 @@ public class DBproject{
 	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		if (args.length < 3) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port> <user> [--format=tsv|csv|jsonl|table]" +
+		            " [--import-bookings=<file.csv|file.jsonl> [--batch-size=N]] [<command> [--flag value]...]");
+			System.err.println ("Commands: " + CommandRunner.COMMANDS.keySet ());
 			return;
 		}//end if
 		
 		DBproject esql = null;
+		int exitCode = 0;
+		ResultPrinter.Format format = ResultPrinter.Format.TSV;
+		String importFile = null;
+		int batchSize = 1000;
+		List<String> command = new ArrayList<String>();
+		for (int i = 3; i < args.length; ++i) {
+			try {
+				//the first word that is not an option starts a non-interactive command
+				if (!args[i].startsWith("--")) {
+					command = java.util.Arrays.asList(args).subList(i, args.length);
+					break;
+				}
+				else if (args[i].startsWith("--format=")) {
+					format = ResultPrinter.Format.parse(args[i].substring("--format=".length()));
+				}
+				else if (args[i].startsWith("--import-bookings=")) {
+					importFile = args[i].substring("--import-bookings=".length());
+				}
+				else if (args[i].startsWith("--batch-size=")) {
+					batchSize = Integer.parseInt(args[i].substring("--batch-size=".length()));
+				}
+				else {
+					System.err.println("Unknown option: " + args[i]);
+					return;
+				}
+			}catch (IllegalArgumentException e) {
+				System.err.println("Invalid option " + args[i]);
+				return;
+			}
+		}
+		
+		if (!command.isEmpty()) {
+			log = System.err;
+		}
 		
 		try{
-			System.out.println("(1)");
+			log.println("(1)");
 			
 			try {
 				Class.forName("org.postgresql.Driver");
@@ -235,12 +1328,26 @@ public class DBproject{
 				return;
 			}
 			
-			System.out.println("(2)");
+			log.println("(2)");
 			String dbname = args[0];
 			String dbport = args[1];
 			String user = args[2];
 			
 			esql = new DBproject (dbname, dbport, user, "");
+			esql.setOutputFormat (format);
+
+			//bulk import runs instead of the menu
+			if (importFile != null) {
+				BookingImporter.Summary summary = new BookingImporter (esql, batchSize).importFile (importFile);
+				System.out.println (summary);
+				return;
+			}
+
+			//a command runs instead of the menu
+			if (!command.isEmpty()) {
+				exitCode = new CommandRunner (esql).run (command) ? 0 : 1;
+				return;
+			}
 			
 			boolean keepon = true;
 			while(keepon){
@@ -272,17 +1379,21 @@ public class DBproject{
 			}
 		}catch(Exception e){
 			System.err.println (e.getMessage ());
+			exitCode = 1;
 		}finally{
 			try{
 				if(esql != null) {
-					System.out.print("Disconnecting from database...");
+					log.print("Disconnecting from database...");
 					esql.cleanup ();
-					System.out.println("Done\n\nBye !");
+					log.println("Done\n\nBye !");
 				}//end if				
 			}catch(Exception e){
 				// ignored.
 			}
 		}
+		if (exitCode != 0) {
+			System.exit (exitCode);
+		}
 	}
 
 	public static int readChoice() {
@@ -316,7 +1427,6 @@ public class DBproject{
 	
 	public static boolean flag = true; 
 	public static void AddPlane(DBproject esql) {//1
-		String query = "INSERT INTO Plane (id, make, model, age, seats) VALUES(";  
 		String plane_ID, plane_make, plane_model = "";  
 		int plane_age = 0, plane_seats = 0;
 		String age, seats = "";
@@ -337,10 +1447,8 @@ public class DBproject{
 						flag = false;
 					}
 					else {
-						String check_planeID =  "SELECT EXISTS (SELECT 1 FROM Plane p WHERE p.id = " + plane_ID + ");";
-			            		List<List<String>> see_result = esql.executeQueryAndReturnResult(check_planeID); 
-						char exists = ((see_result.get(0)).get(0)).charAt(0);
-			            		if (exists == 't'){
+						//checked against the key set; the insert itself catches ids added since
+			            		if (esql.keyExists(PLANE_KEYS, Integer.parseInt(plane_ID))){
 				    			System.out.print("Error: The plane ID you entered already exists. Please try again\n");
 							flag = false; 
 				   		 }
@@ -410,12 +1518,11 @@ public class DBproject{
 					}
 				}
 			}while(!flag); 
-			query +=  plane_ID + ", \'" + plane_make + "\'" + ", \'" + plane_model + "\'" + "," + plane_age + "," + plane_seats + ")\n";
-
 		 	//System.out.print(query);
-		  	esql.executeUpdate(query);
-		
-		        System.out.print("\nWe have updated the database with your information.\n");  
+		  	if (!esql.addPlane(Integer.parseInt(plane_ID), plane_make, plane_model, plane_age, plane_seats)) {
+				System.out.print("\nError: The plane ID you entered was added by someone else in the meantime. Nothing was changed.\n");
+			}
+		        else { System.out.print("\nWe have updated the database with your information.\n"); }
 			Stream.generate(()->"*").limit(100).forEach(System.out::print); 
 			System.out.print("\n");   
   		}
@@ -426,7 +1533,6 @@ public class DBproject{
 	}
 
 	public static void AddPilot(DBproject esql) {//2
-		String query2 = "INSERT INTO Pilot (id, fullname, nationality) VALUES(";
 		String pilot_ID, pilot_name, pilot_nationality = ""; 
 		try {
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
@@ -445,10 +1551,7 @@ public class DBproject{
 						flag = false;
 					}
 	                   		else {
-						String check_pilotID = "SELECT EXISTS (SELECT 1 FROM Pilot p WHERE p.id = " + pilot_ID + ")";
-						List<List<String>> see_result = esql.executeQueryAndReturnResult(check_pilotID);
-						char exists = ((see_result.get(0)).get(0).charAt(0));
-						if (exists == 't') {
+						if (esql.keyExists(PILOT_KEYS, Integer.parseInt(pilot_ID))) {
 							System.out.print("Error: The pilot ID you entered already exists. Please try again\n");
 							flag = false;
 			    			} 
@@ -478,9 +1581,10 @@ public class DBproject{
 				}
 				else {flag = true;}
 		  	}while(!flag);
-		  	query2 +=  pilot_ID + ", \'" + pilot_name + "\'" + ", \'" + pilot_nationality + "\');\n";
-                  	esql.executeUpdate(query2);
-			System.out.print("\nWe have updated the database with your information.\n"); 
+                  	if (!esql.addPilot(Integer.parseInt(pilot_ID), pilot_name, pilot_nationality)) {
+				System.out.print("\nError: The pilot ID you entered was added by someone else in the meantime. Nothing was changed.\n");
+			}
+			else { System.out.print("\nWe have updated the database with your information.\n"); }
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
                 }
@@ -491,7 +1595,6 @@ public class DBproject{
 
 	public static void AddFlight(DBproject esql) {//3
 		// Given a pilot, plane and flight, adds a flight in the DB
-		String query3 = "INSERT INTO Flight (fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, arrival_airport, departure_airport) VALUES("; 
 		String flight_fnum, flight_cost, num_seats_sold, num_flight_stops, plane_dept_date, plane_arrival_date, airport_arrival, airport_depart = "";
 
 		try {
@@ -510,10 +1613,7 @@ public class DBproject{
 						flag = false;
 					}
 					else {
-						String find_flightfnum = "SELECT EXISTS (SELECT 1 FROM Flight f WHERE f.fnum = " + flight_fnum + ")";
-						List<List<String>> see_result = esql.executeQueryAndReturnResult(find_flightfnum);
-						char exists = ((see_result.get(0)).get(0)).charAt(0);  
-			        		if (exists == 't') {
+			        		if (esql.keyExists(FLIGHT_KEYS, Integer.parseInt(flight_fnum))) {
 				   			System.out.print("Error: The flight number you entered already exists. Please try again\n"); 
 				   			flag = false;
 						} 
@@ -623,10 +1723,11 @@ public class DBproject{
 				else {flag = true;}
 		  	}while(!flag); 	
 	
-	          	query3 +=  flight_fnum + ", " + flight_cost + ", " + num_seats_sold + "," + num_flight_stops + ", \'" + plane_dept_date + "\'" + ", \'" + plane_arrival_date + "\'" + ", \'" + airport_arrival + "\'" + ", \'" + airport_depart + "\')\n"; 
-		  
-		  	esql.executeUpdate(query3); 	
-			System.out.print("\nWe have updated the database with your information.\n");
+		  	if (!esql.addFlight(Integer.parseInt(flight_fnum), Integer.parseInt(flight_cost), Integer.parseInt(num_seats_sold),
+		  		Integer.parseInt(num_flight_stops), plane_dept_date, plane_arrival_date, airport_arrival, airport_depart)) {
+				System.out.print("\nError: The flight number you entered was added by someone else in the meantime. Nothing was changed.\n");
+			}
+			else { System.out.print("\nWe have updated the database with your information.\n"); }
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
 		}
@@ -639,7 +1740,6 @@ public class DBproject{
 
 		
 	public static void AddTechnician(DBproject esql) {//4
-                String query4 = "INSERT INTO Technician (id, full_name) VALUES(";
 		String tech_ID, tech_name = ""; 
 		try {
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
@@ -656,10 +1756,7 @@ public class DBproject{
 						flag = false;
 					}
 					else {
-						String check_techID = "SELECT EXISTS (SELECT 1 FROM Technician tech WHERE TECH.ID = " + tech_ID + ");";
-			   			List<List<String>> see_result = esql.executeQueryAndReturnResult(check_techID); 
-						char exists = ((see_result.get(0)).get(0)).charAt(0);
-			   			if ( exists == 't') {
+			   			if (esql.keyExists(TECHNICIAN_KEYS, Integer.parseInt(tech_ID))) {
 			  				System.out.print("Error: The technician's ID you entered already exists. Please Try Again\n"); 
 			 	 			flag = false; 
 			   			}   
@@ -679,9 +1776,10 @@ public class DBproject{
  				else {flag = true;} 
           	  	}while(!flag); 
 		
-                  	query4 +=  tech_ID + ", \'" + tech_name + "\');\n";
-                  	esql.executeUpdate(query4);
-			System.out.print("\nWe have updated the database with your information.\n"); 
+                  	if (!esql.addTechnician(Integer.parseInt(tech_ID), tech_name)) {
+				System.out.print("\nError: The technician's ID you entered was added by someone else in the meantime. Nothing was changed.\n");
+			}
+			else { System.out.print("\nWe have updated the database with your information.\n"); }
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
                 }
@@ -713,10 +1811,13 @@ public class DBproject{
 				}	
 			} while(!flag);
 
-			String check = "SELECT  (SELECT plane.seats FROM FlightInfo Info,Plane plane WHERE Info.plane_id = plane.id AND Info.flight_id = " + flight + ") - (SELECT flight.num_sold FROM Flight flight WHERE flight.fnum = " + flight + ") AS remainin_seats;\n";
-			
-			List<List<String>>  result = esql.executeQueryAndReturnResult(check);
-			int available_seats = Integer.parseInt((result.get(0)).get(0));
+			int flight_id = Integer.parseInt(flight);
+			SeatCache.Entry seats = esql.getSeatAvailability(flight_id);
+			if (seats == null || !seats.hasPlane()) {
+				System.out.print("Error: Flight " + flight + " does not exist or has no plane assigned.\n");
+				return;
+			}
+			int available_seats = seats.available();
 			
 			//if no more seats available prompt if customer would like to be added to the waitlist 
 			if (available_seats == 0) {
@@ -855,11 +1956,13 @@ public class DBproject{
 							}
 						}while(!flag);
 //terminate function---------------------------------------------------------------------------
-                        			String queryR = "INSERT INTO Reservation (rnum, cid, fid, status) VALUES ( NULL, " + cID + ", " + flight + ", \'W\');\n";
-                        			String queryC = "INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode) VALUES (" + cID + ", \'" + fname + "\', \'" + lname + "\', \'" + gtype + "\', \' " + dob + "\', \'" + address + "\', " + phone + ", " + zipcode + ");\n";
-						esql.executeUpdate(queryC);
-						esql.executeUpdate(queryR);
-						System.out.print("You have been added to the waitlist for flight " + flight + ".\n");
+						Booking booking = esql.bookFlight(flight_id, new Customer(Integer.parseInt(cID), fname, lname, gtype, dob, address, phone, zipcode));
+						if (booking.isReserved()) {
+							System.out.print("A seat became available, you have been booked on flight " + flight + ". Reservation number: " + booking.rnum + "\n");
+						}
+						else {
+							System.out.print("You have been added to the waitlist for flight " + flight + ". Reservation number: " + booking.rnum + "\n");
+						}
 						Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         			System.out.print("\n");
 						flag = true;
@@ -987,14 +2090,13 @@ public class DBproject{
 				}while(!flag);
 
 				//function terminates here
-				String queryR = "INSERT INTO Reservation (rnum, cid, fid, status) VALUES ( NULL, " + cID + ", " + flight + ",\'R\');\n" ;
-				String queryC = "INSERT INTO Customer (id, fname, lname, gtype, dob, address, phone, zipcode) VALUES (" + cID + ", \'" + fname + "\', \'" + lname + "\', \'" + gtype + "\', \'" + dob + "\', \'" + address + "\', " + phone + ", " + zipcode + ");\n"; 
-			  	List<List<String>>  my_query = esql.executeQueryAndReturnResult("SELECT f.num_sold FROM Flight f WHERE f.fnum = " + flight);
-                        	int num_sold = Integer.parseInt((my_query.get(0)).get(0));	
-				String queryF = "UPDATE Flight SET num_sold = num_sold + 1 WHERE fnum = " + flight + " AND num_sold = " + Integer.toString(num_sold) + ";\n";
-				esql.executeUpdate(queryC);
-				esql.executeUpdate(queryR);
-				esql.executeUpdate(queryF);
+				Booking booking = esql.bookFlight(flight_id, new Customer(Integer.parseInt(cID), fname, lname, gtype, dob, address, phone, zipcode));
+				if (booking.isReserved()) {
+					System.out.print("Your seat on flight " + flight + " is booked. Reservation number: " + booking.rnum + "\n");
+				}
+				else {
+					System.out.print("The last seat on flight " + flight + " was just taken, you have been added to the waitlist. Reservation number: " + booking.rnum + "\n");
+				}
 				Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         	System.out.print("\n");
 			}
@@ -1053,9 +2155,8 @@ public class DBproject{
 		   	}while(!flag);   
 		   
 		         
-		   	String find_available_seats = "SELECT (p.seats - f.num_sold) AS Seats_Available FROM Flight f INNER JOIN Schedule s ON s.flightNum = f.fnum INNER JOIN FlightInfo FI on FI.flight_id = f.fnum INNER JOIN Plane p ON p.id = FI.plane_id WHERE f.fnum = " + flight_num + " AND f.actual_departure_date = '" + dept_date + "'";                   
 		   	System.out.print("\n--------\nNumber of seats available for flight number " + flight_num + "\n"); 
-		   	esql.executeQueryAndPrintResult(find_available_seats); 
+		   	esql.printAvailableSeats(Integer.parseInt(flight_num), java.sql.Date.valueOf(dept_date).toLocalDate()); 
 	           	System.out.print("\n---------\n"); 
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
@@ -1070,8 +2171,7 @@ public class DBproject{
 		try {
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
        			System.out.print("\nYou are finding the total number of repairs per plane.\nGrabbing the information for you....\n"); 
-		  	String query7 = "SELECT repairs.plane_id AS plane_id FROM (  SELECT repair.plane_id, COUNT(repair.plane_id) AS total_repairs FROM  Repairs repair GROUP BY repair.plane_id ORDER BY total_repairs DESC, repair.plane_id DESC) AS repairs;" ; 
-		  	esql.executeQueryAndPrintResult(query7);
+		  	esql.printRepairsPerPlane();
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
 
@@ -1086,8 +2186,7 @@ public class DBproject{
 		try {
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
 			System.out.print("\nYou are finding the total number of repairs per year.\n Grabbing the information for you...\n"); 
-		  	String query8 = "SELECT years.year, COUNT(repair.repair_date) AS repairs_per_year FROM (  SELECT year FROM (SELECT DISTINCT EXTRACT (year FROM \"repair_date\") AS year FROM Repairs) AS distinct_years) AS years, Repairs repair WHERE years.year = (SELECT EXTRACT (year FROM \"repair_date\")) GROUP BY (years.year) ORDER BY repairs_per_year ASC;"; 
-		  	esql.executeQueryAndPrintResult(query8); 
+		  	esql.printRepairsPerYear(); 
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
 		}
@@ -1102,7 +2201,6 @@ public class DBproject{
 		String flight_num, status = ""; 
 		//int flight_num;
 		char convert_status;  
-		String query9; 
 		try {
 			Stream.generate(()->"*").limit(100).forEach(System.out::print);
 			System.out.print("\nYou are finding the number of passengers according to status. To start, please enter the flight number: ");
@@ -1118,10 +2216,7 @@ public class DBproject{
 						flag = false;
 					}
 					else {
-						String find_flightfnum = "SELECT EXISTS (SELECT 1 FROM Flight f WHERE f.fnum = " + flight_num + ")";
-						List<List<String>> see_result = esql.executeQueryAndReturnResult(find_flightfnum);
-						char exists = ((see_result.get(0)).get(0)).charAt(0);  
-			        		if (exists == 'f') {
+			        		if (!esql.queryBoolean(FLIGHT_EXISTS, Integer.parseInt(flight_num))) {
 				   			System.out.print("Error: The flight number you entered does not exists. Please try again\n"); 
 				   			flag = false;
 						} 
@@ -1157,8 +2252,7 @@ public class DBproject{
 		  	}while(!flag);  
 
 		 	System.out.print("......Pulling up number of Passengers with status " + status + " in flight number " + flight_num + "........\n"); 
-		 	query9 = "SELECT Count(r.cid) AS Number_of_Passengers From Flight f, Reservation r WHERE r.fid = " + flight_num + "AND r.fid = f.fnum AND r.status = \'" + status + "\'"; 
-		 	esql.executeQueryAndPrintResult(query9); 
+		 	esql.printPassengersWithStatus(Integer.parseInt(flight_num), status); 
 		  	Stream.generate(()->"*").limit(100).forEach(System.out::print);
                         System.out.print("\n");
 		}
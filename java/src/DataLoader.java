@@ -0,0 +1,321 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Client-side loader for the data/*.csv files.  Each file is streamed to the
+ * server with COPY ... FROM STDIN through pgjdbc's CopyManager, so the CSVs
+ * no longer have to be copied into $PGDATA first.  Tables without foreign
+ * keys load in parallel on separate pooled connections; the tables that
+ * reference them load afterwards, again in parallel with each other.
+ * Row triggers that maintain summary tables are disabled while their table
+ * is copied, and the summaries are rebuilt once at the end.
+ *
+ * Usage: java DataLoader <dbname> <port> <user> [--data=../data] [--truncate] [--rebuild-indexes]
+ *
+ */
+
+public class DataLoader {
+	/**
+	 * One table and the CSV file it is loaded from.
+	 */
+	static final class TableSpec {
+		final String table;
+		final String columns;
+		final String file;
+		//row trigger keeping a summary table current, disabled while the file is copied
+		final String summaryTrigger;
+
+		TableSpec(String table, String columns, String file) {
+			this(table, columns, file, null);
+		}
+
+		TableSpec(String table, String columns, String file, String summaryTrigger) {
+			this.table = table;
+			this.columns = columns;
+			this.file = file;
+			this.summaryTrigger = summaryTrigger;
+		}
+	}
+
+	//tables without foreign keys (Flight has none either)
+	static final TableSpec[] INDEPENDENT = {
+		new TableSpec("Customer", "id, fname, lname, gtype, dob, address, phone, zipcode", "customer.csv"),
+		new TableSpec("Pilot", "id, fullname, nationality", "pilots.csv"),
+		new TableSpec("Plane", "id, make, model, age, seats", "planes.csv"),
+		new TableSpec("Technician", "id, full_name", "technician.csv"),
+		new TableSpec("Flight", "fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, arrival_airport, departure_airport", "flights.csv"),
+	};
+
+	//tables referencing the ones above, independent of each other
+	static final TableSpec[] DEPENDENT = {
+		new TableSpec("Reservation", "rnum, cid, fid, status", "reservation.csv", "flight_status_count"),
+		new TableSpec("FlightInfo", "fiid, flight_id, pilot_id, plane_id", "flightinfo.csv"),
+		new TableSpec("Repairs", "rid, repair_date, repair_code, pilot_id, plane_id, technician_id", "repairs.csv", "repairs_summary"),
+		new TableSpec("Schedule", "id, flightNum, departure_time, arrival_time", "schedule.csv"),
+	};
+
+	//secondary indexes, i.e. those not backing a primary key or other constraint
+	static final String FIND_INDEXES =
+		"SELECT ic.relname, pg_get_indexdef(i.indexrelid) " +
+		"FROM pg_index i JOIN pg_class ic ON ic.oid = i.indexrelid JOIN pg_class t ON t.oid = i.indrelid " +
+		"WHERE t.relname = ANY (?) AND t.relnamespace = 'public'::regnamespace " +
+		"AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conindid = i.indexrelid)";
+
+	static final String TRUNCATE =
+		"TRUNCATE Customer, Pilot, Plane, Technician, Flight, Reservation, FlightInfo, Repairs, Schedule CASCADE";
+	//in create_partitioned.sql Reservation is a view over reservation_part and
+	//the other tables reference flight_numbers rather than Flight
+	static final String TRUNCATE_PARTITIONED =
+		"TRUNCATE Customer, Pilot, Plane, Technician, Flight, flight_numbers, reservation_part, FlightInfo, Repairs, Schedule CASCADE";
+
+	//the copied reservations bring their own rnum; start the sequence past them
+	static final String SYNC_RNUM_SEQ =
+		"SELECT setval('rnum_seq', GREATEST(COALESCE(MAX(rnum), 0) + 1, 10000), false) FROM Reservation";
+
+	private final DBproject _esql;
+	private final File _dataDir;
+	private final ExecutorService _workers;
+	//whether the database was created with create_partitioned.sql, set by load
+	private boolean _partitioned = false;
+
+	public DataLoader(DBproject esql, File dataDir, int threads) {
+		this._esql = esql;
+		this._dataDir = dataDir;
+		this._workers = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Method to load every table.
+	 *
+	 * @param truncate empty the tables first
+	 * @param rebuildIndexes drop the secondary indexes before loading and build them afterwards
+	 * @return rows loaded per table
+	 * @throws java.lang.Exception when a table failed to load
+	 */
+	public Map<String, Long> load(boolean truncate, boolean rebuildIndexes) throws Exception {
+		Map<String, Long> rows = new LinkedHashMap<String, Long>();
+		List<String> indexes = new ArrayList<String>();
+		try {
+			Exception failure = null;
+			try {
+				_partitioned = PartitionMaintenance.installed(_esql);
+				if (truncate) {
+					_esql.executeUpdate(_partitioned ? TRUNCATE_PARTITIONED : TRUNCATE);
+				}
+				if (rebuildIndexes) {
+					indexes.addAll(dropIndexes());
+				}
+
+				loadPhase(INDEPENDENT, rows);
+				loadPhase(DEPENDENT, rows);
+				//the copies skipped the summary triggers
+				_esql.executeQuery(DBproject.REBUILD_REPAIR_SUMMARIES);
+				_esql.repairPassengerCounts();
+			} catch (Exception e) {
+				failure = e;
+				throw e;
+			} finally {
+				//the drops are committed, so the indexes come back whether or not the load succeeded
+				if (!indexes.isEmpty()) {
+					try {
+						buildIndexes(indexes);
+					} catch (Exception e) {
+						if (failure == null) {
+							throw e;
+						}
+						failure.addSuppressed(e);
+					}
+				}
+			}
+			_esql.executeQuery(SYNC_RNUM_SEQ);
+			_esql.executeUpdate("ANALYZE");
+		} finally {
+			_workers.shutdown();
+		}
+		return rows;
+	}//end load
+
+	/**
+	 * Method to build the dropped indexes in parallel, one per connection.
+	 * The statements are printed to stderr first, so the indexes can be
+	 * created by hand should the build fail.
+	 *
+	 * @param indexes the CREATE INDEX statements of the dropped indexes
+	 */
+	private void buildIndexes(List<String> indexes) throws Exception {
+		System.err.println("Rebuilding " + indexes.size() + " secondary indexes; should this fail, run:");
+		for (String ddl : indexes) {
+			System.err.println(ddl + ";");
+		}
+		List<Future<Void>> builds = new ArrayList<Future<Void>>();
+		for (final String ddl : indexes) {
+			builds.add(_workers.submit(() -> {
+				_esql.executeUpdate(ddl);
+				return null;
+			}));
+		}
+		waitAll(builds);
+	}//end buildIndexes
+
+	private void loadPhase(TableSpec[] specs, Map<String, Long> rows) throws Exception {
+		List<Future<Long>> loads = new ArrayList<Future<Long>>();
+		for (final TableSpec spec : specs) {
+			loads.add(_workers.submit(() -> copy(spec)));
+		}
+		waitAll(loads);
+		for (int i = 0; i < specs.length; ++i) {
+			rows.put(specs[i].table, loads.get(i).get());
+		}
+	}
+
+	/**
+	 * Method to stream one CSV file into its table with COPY FROM STDIN.
+	 * The table's summary trigger is disabled for the copy and enabled
+	 * again before it commits, so other sessions never write without it;
+	 * the ALTER TABLE locks the table until then.
+	 *
+	 * @param spec the table and file
+	 * @return the number of rows copied
+	 */
+	long copy(final TableSpec spec) throws SQLException {
+		final File file = new File(_dataDir, spec.file);
+		long start = System.nanoTime();
+		long count = _esql.executeInTransaction(pc -> {
+			CopyManager copy = pc.getConnection().unwrap(PGConnection.class).getCopyAPI();
+			setSummaryTrigger(pc, spec, false);
+			long copied;
+			try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				copied = copy.copyIn("COPY " + spec.table + " (" + spec.columns + ") FROM STDIN WITH DELIMITER ','",
+					reader, 1 << 16);
+			} catch (IOException e) {
+				throw new SQLException("Unable to read " + file + ": " + e.getMessage(), e);
+			}
+			setSummaryTrigger(pc, spec, true);
+			return copied;
+		});
+		System.out.printf("%-12s %8d rows in %6.2f s%n", spec.table, count, (System.nanoTime() - start) / 1e9);
+		return count;
+	}//end copy
+
+	private void setSummaryTrigger(ConnectionPool.PooledConnection pc, TableSpec spec, boolean enabled)
+			throws SQLException {
+		if (spec.summaryTrigger == null) {
+			return;
+		}
+		//in create_partitioned.sql the Reservation triggers are on reservation_part, not the view
+		String table = _partitioned && spec.table.equals("Reservation") ? "reservation_part" : spec.table;
+		try (Statement stmt = pc.getConnection().createStatement()) {
+			stmt.execute("ALTER TABLE " + table + (enabled ? " ENABLE" : " DISABLE") + " TRIGGER "
+				+ spec.summaryTrigger);
+		}
+	}
+
+	private List<String> dropIndexes() throws SQLException {
+		final List<String> tables = new ArrayList<String>();
+		for (TableSpec spec : INDEPENDENT) {
+			tables.add(spec.table.toLowerCase());
+		}
+		for (TableSpec spec : DEPENDENT) {
+			tables.add(spec.table.toLowerCase());
+		}
+		return _esql.executeInTransaction(pc -> {
+			List<String> ddl = new ArrayList<String>();
+			List<String> names = new ArrayList<String>();
+			PreparedStatement find = pc.prepare(FIND_INDEXES);
+			find.setArray(1, pc.getConnection().createArrayOf("text", tables.toArray()));
+			try (ResultSet rs = find.executeQuery()) {
+				while (rs.next()) {
+					names.add(rs.getString(1));
+					ddl.add(rs.getString(2));
+				}
+			}
+			try (Statement stmt = pc.getConnection().createStatement()) {
+				for (String name : names) {
+					stmt.executeUpdate("DROP INDEX " + quoteIdent(name));
+				}
+			}
+			System.out.println("Dropped " + names.size() + " secondary indexes: " + names);
+			return ddl;
+		});
+	}//end dropIndexes
+
+	private static String quoteIdent(String name) {
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+
+	private static <T> void waitAll(List<Future<T>> futures) throws Exception {
+		for (Future<T> f : futures) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java [-classpath <classpath>] " + DataLoader.class.getName()
+				+ " <dbname> <port> <user> [--data=../data] [--truncate] [--rebuild-indexes]");
+			return;
+		}
+		String data = "../data";
+		boolean truncate = false;
+		boolean rebuildIndexes = false;
+		for (int i = 3; i < args.length; ++i) {
+			if (args[i].startsWith("--data=")) {
+				data = args[i].substring("--data=".length());
+			} else if (args[i].equals("--truncate")) {
+				truncate = true;
+			} else if (args[i].equals("--rebuild-indexes")) {
+				rebuildIndexes = true;
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		DBproject esql = null;
+		try {
+			Class.forName("org.postgresql.Driver");
+			int threads = Math.max(INDEPENDENT.length, DEPENDENT.length);
+			esql = new DBproject(args[0], args[1], args[2], "", 1, threads);
+			long start = System.nanoTime();
+			Map<String, Long> rows = new DataLoader(esql, new File(data), threads).load(truncate, rebuildIndexes);
+			long total = 0;
+			for (long n : rows.values()) {
+				total += n;
+			}
+			System.out.printf("Loaded %d rows into %d tables in %.2f s%n", total, rows.size(), (System.nanoTime() - start) / 1e9);
+		} catch (Exception e) {
+			System.err.println("Load failed: " + e.getMessage());
+			System.exit(1);
+		} finally {
+			if (esql != null) {
+				esql.cleanup();
+			}
+		}
+	}//end main
+}
@@ -0,0 +1,687 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Embedded, read-only answers to menu options 6 to 9 straight from the
+ * data/*.csv files, for offline what-if analysis without PostgreSQL.  The
+ * columns the four queries need are loaded into primitive arrays: ids as
+ * ints, dates as epoch days and the reservation statuses dictionary-encoded
+ * into bytes.  The files are parsed in parallel, one per
+ * thread.
+ *
+ * Joins are hash joins on open addressing int indexes (fnum and plane id
+ * to row), and aggregations split the rows into one chunk per core, count
+ * each chunk into its own array and add the arrays.  Seats per flight and
+ * passengers per flight and status are aggregated once after loading, so
+ * queries 6 and 9 are lookups; repairs per plane and per year are counted
+ * on every call.
+ *
+ * Query 6 also needs schedule.csv: a flight without a Schedule row has no
+ * seats listed, as in DBproject.availableSeats.  verify compares every
+ * answer with the JDBC path on a database loaded from the same files;
+ * memory reports the bytes held per table against the size of its CSV.
+ *
+ * Usage: java EmbeddedAnalytics [--data=../data] [--format=tsv]
+ *            seats FLIGHT YYYY-MM-DD | repairs-per-plane | repairs-per-year | passengers FLIGHT W|R|C
+ *            | memory | verify <dbname> <port> <user>
+ *
+ */
+
+public class EmbeddedAnalytics {
+	//rows below this are aggregated by a single thread
+	static final int MIN_CHUNK = 16 * 1024;
+
+	/**
+	 * Growable int array used while a file is parsed.
+	 */
+	static final class IntColumn {
+		private int[] _values = new int[1024];
+		private int _size = 0;
+
+		void add(int value) {
+			if (_size == _values.length) {
+				_values = Arrays.copyOf(_values, _size << 1);
+			}
+			_values[_size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(_values, _size);
+		}
+	}
+
+	/**
+	 * Growable byte array of dictionary codes.
+	 */
+	static final class ByteColumn {
+		private byte[] _values = new byte[1024];
+		private int _size = 0;
+
+		void add(byte value) {
+			if (_size == _values.length) {
+				_values = Arrays.copyOf(_values, _size << 1);
+			}
+			_values[_size++] = value;
+		}
+
+		byte[] toArray() {
+			return Arrays.copyOf(_values, _size);
+		}
+	}
+
+	/**
+	 * Dictionary of the distinct values of a short text column; a value is
+	 * stored as its byte code.  The empty string (NULL) is code -1.
+	 */
+	static final class Dictionary {
+		private final List<String> _values = new ArrayList<String>();
+		private final Map<String, Byte> _codes = new LinkedHashMap<String, Byte>();
+
+		synchronized byte encode(String value) {
+			if (value.isEmpty()) {
+				return -1;
+			}
+			Byte code = _codes.get(value);
+			if (code == null) {
+				if (_values.size() == Byte.MAX_VALUE) {
+					throw new IllegalStateException("More than " + Byte.MAX_VALUE + " distinct values");
+				}
+				code = (byte) _values.size();
+				_codes.put(value, code);
+				_values.add(value);
+			}
+			return code;
+		}
+
+		/**
+		 * @return the code of the value, or -1 when it never occurs
+		 */
+		synchronized int code(String value) {
+			Byte code = _codes.get(value);
+			return code == null ? -1 : code;
+		}
+
+		synchronized int size() {
+			return _values.size();
+		}
+	}
+
+	/**
+	 * Open addressing hash index from an int key to the row holding it, the
+	 * build side of the hash joins.  Only the first row of a key is kept.
+	 */
+	static final class IntIndex {
+		private int[] _keys;
+		//row + 1, 0 for a free slot
+		private int[] _rows;
+
+		IntIndex(int[] keys) {
+			int capacity = 16;
+			while (capacity < keys.length * 2) {
+				capacity <<= 1;
+			}
+			this._keys = new int[capacity];
+			this._rows = new int[capacity];
+			for (int row = 0; row < keys.length; ++row) {
+				put(keys[row], row);
+			}
+		}
+
+		private void put(int key, int row) {
+			int mask = _keys.length - 1;
+			for (int i = KeySet.mix(key) & mask; ; i = (i + 1) & mask) {
+				if (_rows[i] == 0) {
+					_keys[i] = key;
+					_rows[i] = row + 1;
+					return;
+				}
+				if (_keys[i] == key) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * @return the row of the key, or -1 when no row has it
+		 */
+		int get(int key) {
+			int mask = _keys.length - 1;
+			for (int i = KeySet.mix(key) & mask; ; i = (i + 1) & mask) {
+				if (_rows[i] == 0) {
+					return -1;
+				}
+				if (_keys[i] == key) {
+					return _rows[i] - 1;
+				}
+			}
+		}
+
+		long bytes() {
+			return 8L * _keys.length;
+		}
+	}
+
+	/**
+	 * Positions of the comma separated fields of one CSV line.
+	 */
+	static final class Fields {
+		private String _line;
+		private final int[] _start;
+		private final int[] _end;
+
+		Fields(int count) {
+			this._start = new int[count];
+			this._end = new int[count];
+		}
+
+		void split(String line) {
+			_line = line;
+			int from = 0;
+			for (int i = 0; i < _start.length; ++i) {
+				int comma = i == _start.length - 1 ? -1 : line.indexOf(',', from);
+				_start[i] = from;
+				_end[i] = comma < 0 ? line.length() : comma;
+				from = _end[i] + 1;
+			}
+		}
+
+		int getInt(int i) {
+			int n = 0;
+			int p = _start[i];
+			boolean negative = _line.charAt(p) == '-';
+			if (negative) {
+				p++;
+			}
+			for (; p < _end[i]; ++p) {
+				n = n * 10 + (_line.charAt(p) - '0');
+			}
+			return negative ? -n : n;
+		}
+
+		//YYYY-MM-DD, anything after the day (a time) is ignored as by a DATE column
+		int getEpochDay(int i) {
+			int p = _start[i];
+			return (int) LocalDate.of(digits(p, 4), digits(p + 5, 2), digits(p + 8, 2)).toEpochDay();
+		}
+
+		String get(int i) {
+			return _line.substring(_start[i], _end[i]);
+		}
+
+		private int digits(int from, int count) {
+			int n = 0;
+			for (int p = from; p < from + count; ++p) {
+				n = n * 10 + (_line.charAt(p) - '0');
+			}
+			return n;
+		}
+	}
+
+	interface LineHandler {
+		void accept(Fields fields);
+	}
+
+	private final File _dataDir;
+	private final Map<String, Long> _csvBytes = new LinkedHashMap<String, Long>();
+
+	//Flight
+	private int[] _fnum;
+	private int[] _numSold;
+	private int[] _departure;
+	//Plane
+	private int[] _planeId;
+	private int[] _planeSeats;
+	//FlightInfo
+	private int[] _infoFlight;
+	private int[] _infoPlane;
+	//Schedule
+	private int[] _scheduleFlight;
+	//Reservation
+	private int[] _reservationFlight;
+	private byte[] _reservationStatus;
+	private final Dictionary _statuses = new Dictionary();
+	//Repairs
+	private int[] _repairPlane;
+	private int[] _repairDate;
+
+	//joins and aggregates built after loading
+	private IntIndex _flightRows;
+	private IntIndex _planeRows;
+	//per flight row: max seats of its planes (-1 without one) and Schedule rows
+	private int[] _seats;
+	private int[] _schedules;
+	//per flight row and status code
+	private int[] _passengers;
+
+	public EmbeddedAnalytics(File dataDir) {
+		this._dataDir = dataDir;
+	}
+
+	/**
+	 * Method to load the six files in parallel and build the indexes and
+	 * per flight aggregates.
+	 *
+	 * @return this
+	 * @throws java.io.IOException when a file cannot be read
+	 */
+	public EmbeddedAnalytics load() throws IOException {
+		final IntColumn fnum = new IntColumn(), sold = new IntColumn(), departure = new IntColumn();
+		final IntColumn planeId = new IntColumn(), seats = new IntColumn();
+		final IntColumn infoFlight = new IntColumn(), infoPlane = new IntColumn();
+		final IntColumn scheduleFlight = new IntColumn();
+		final IntColumn resFlight = new IntColumn();
+		final ByteColumn resStatus = new ByteColumn();
+		final IntColumn repPlane = new IntColumn(), repDate = new IntColumn();
+		join(
+			read("flights.csv", 8, f -> {
+				fnum.add(f.getInt(0));
+				sold.add(f.getInt(2));
+				departure.add(f.getEpochDay(4));
+			}),
+			read("planes.csv", 5, f -> {
+				planeId.add(f.getInt(0));
+				seats.add(f.getInt(4));
+			}),
+			read("flightinfo.csv", 4, f -> {
+				infoFlight.add(f.getInt(1));
+				infoPlane.add(f.getInt(3));
+			}),
+			read("schedule.csv", 4, f -> scheduleFlight.add(f.getInt(1))),
+			read("reservation.csv", 4, f -> {
+				resFlight.add(f.getInt(2));
+				resStatus.add(_statuses.encode(f.get(3)));
+			}),
+			read("repairs.csv", 6, f -> {
+				repDate.add(f.getEpochDay(1));
+				repPlane.add(f.getInt(4));
+			}));
+		_fnum = fnum.toArray();
+		_numSold = sold.toArray();
+		_departure = departure.toArray();
+		_planeId = planeId.toArray();
+		_planeSeats = seats.toArray();
+		_infoFlight = infoFlight.toArray();
+		_infoPlane = infoPlane.toArray();
+		_scheduleFlight = scheduleFlight.toArray();
+		_reservationFlight = resFlight.toArray();
+		_reservationStatus = resStatus.toArray();
+		_repairPlane = repPlane.toArray();
+		_repairDate = repDate.toArray();
+
+		_flightRows = new IntIndex(_fnum);
+		_planeRows = new IntIndex(_planeId);
+		//FlightInfo joined to Plane, max seats per flight as in LOAD_SEATS
+		_seats = aggregate(_infoFlight.length, _fnum.length, r -> _flightRows.get(_infoFlight[r]), r -> {
+			int plane = _planeRows.get(_infoPlane[r]);
+			return plane < 0 ? -1 : _planeSeats[plane];
+		}, -1, Math::max);
+		_schedules = aggregate(_scheduleFlight.length, _fnum.length, r -> _flightRows.get(_scheduleFlight[r]),
+			r -> 1, 0, Integer::sum);
+		final int statuses = _statuses.size();
+		_passengers = aggregate(_reservationFlight.length, _fnum.length * statuses, r -> {
+			int flight = _flightRows.get(_reservationFlight[r]);
+			int status = _reservationStatus[r];
+			return flight < 0 || status < 0 ? -1 : flight * statuses + status;
+		}, r -> 1, 0, Integer::sum);
+		return this;
+	}//end load
+
+	private CompletableFuture<Void> read(final String name, final int columns, final LineHandler handler) {
+		final File file = new File(_dataDir, name);
+		_csvBytes.put(name, file.length());
+		return CompletableFuture.runAsync(() -> {
+			Fields fields = new Fields(columns);
+			try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				for (String line; (line = in.readLine()) != null; ) {
+					if (!line.isEmpty()) {
+						fields.split(line);
+						handler.accept(fields);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to read " + file + ": " + e.getMessage(), e);
+			}
+		});
+	}
+
+	private static void join(CompletableFuture<?>... loads) throws IOException {
+		try {
+			CompletableFuture.allOf(loads).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Method to aggregate rows into groups in parallel: each chunk of rows
+	 * folds into its own array, and the arrays are folded together.
+	 *
+	 * @param rows number of rows
+	 * @param groups number of groups
+	 * @param groupOf group of a row, negative to skip it
+	 * @param valueOf value of a row
+	 * @param identity initial value of a group
+	 * @param op associative fold, e.g. Integer::sum or Math::max
+	 * @return the value per group
+	 */
+	static int[] aggregate(final int rows, final int groups, final IntUnaryOperator groupOf,
+			final IntUnaryOperator valueOf, final int identity, final IntBinaryOperator op) {
+		final int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), rows / MIN_CHUNK));
+		return IntStream.range(0, chunks).parallel().mapToObj(c -> {
+			int[] values = new int[groups];
+			Arrays.fill(values, identity);
+			int end = (int) ((long) rows * (c + 1) / chunks);
+			for (int r = (int) ((long) rows * c / chunks); r < end; ++r) {
+				int g = groupOf.applyAsInt(r);
+				if (g >= 0) {
+					values[g] = op.applyAsInt(values[g], valueOf.applyAsInt(r));
+				}
+			}
+			return values;
+		}).reduce((a, b) -> {
+			for (int g = 0; g < groups; ++g) {
+				a[g] = op.applyAsInt(a[g], b[g]);
+			}
+			return a;
+		}).get();
+	}//end aggregate
+
+	/**
+	 * Method to answer query 6.
+	 *
+	 * @param flight the flight number
+	 * @param departureDate the departure date
+	 * @return the seats left, or null when the flight does not depart that
+	 *         day, has no plane or is not scheduled
+	 */
+	public Integer availableSeats(int flight, LocalDate departureDate) {
+		int row = _flightRows.get(flight);
+		if (row < 0 || _departure[row] != departureDate.toEpochDay() || _seats[row] < 0 || _schedules[row] == 0) {
+			return null;
+		}
+		return _seats[row] - _numSold[row];
+	}
+
+	/**
+	 * Method to answer query 7.
+	 *
+	 * @return the ids of the repaired planes, most repairs first, ties by
+	 *         descending id
+	 */
+	public List<Integer> repairsPerPlane() {
+		final int[] counts = aggregate(_repairPlane.length, _planeId.length, r -> _planeRows.get(_repairPlane[r]),
+			r -> 1, 0, Integer::sum);
+		List<Integer> rows = new ArrayList<Integer>();
+		for (int p = 0; p < counts.length; ++p) {
+			if (counts[p] > 0) {
+				rows.add(p);
+			}
+		}
+		rows.sort(Comparator.<Integer>comparingInt(p -> -counts[p]).thenComparingInt(p -> -_planeId[p]));
+		List<Integer> ids = new ArrayList<Integer>(rows.size());
+		for (int p : rows) {
+			ids.add(_planeId[p]);
+		}
+		return ids;
+	}//end repairsPerPlane
+
+	/**
+	 * Method to answer query 8.
+	 *
+	 * @return {year, repairs} pairs, fewest repairs first, ties by year
+	 */
+	public List<int[]> repairsPerYear() {
+		if (_repairDate.length == 0) {
+			return new ArrayList<int[]>();
+		}
+		int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE;
+		for (int day : _repairDate) {
+			first = Math.min(first, day);
+			last = Math.max(last, day);
+		}
+		final int firstYear = LocalDate.ofEpochDay(first).getYear();
+		int years = LocalDate.ofEpochDay(last).getYear() - firstYear + 1;
+		int[] counts = aggregate(_repairDate.length, years, r -> LocalDate.ofEpochDay(_repairDate[r]).getYear() - firstYear,
+			r -> 1, 0, Integer::sum);
+		List<int[]> rows = new ArrayList<int[]>();
+		for (int y = 0; y < years; ++y) {
+			if (counts[y] > 0) {
+				rows.add(new int[] { firstYear + y, counts[y] });
+			}
+		}
+		rows.sort(BY_COUNT_THEN_YEAR);
+		return rows;
+	}//end repairsPerYear
+
+	static final Comparator<int[]> BY_COUNT_THEN_YEAR =
+		Comparator.<int[]>comparingInt(r -> r[1]).thenComparingInt(r -> r[0]);
+
+	/**
+	 * Method to answer query 9.
+	 *
+	 * @param flight the flight number
+	 * @param status W, R or C
+	 * @return the number of the flight's reservations with that status
+	 */
+	public int countPassengersWithStatus(int flight, String status) {
+		int row = _flightRows.get(flight);
+		int code = _statuses.code(status);
+		return row < 0 || code < 0 ? 0 : _passengers[row * _statuses.size() + code];
+	}
+
+	/**
+	 * Method to list the bytes held per table next to its CSV size.
+	 *
+	 * @return {table, rows, bytes held, CSV bytes} per table, then the total
+	 */
+	public List<String[]> memory() {
+		List<String[]> rows = new ArrayList<String[]>();
+		long[] held = {
+			bytes(_fnum, _numSold, _departure) + _flightRows.bytes() + 4L * (_seats.length + _schedules.length + _passengers.length),
+			bytes(_planeId, _planeSeats) + _planeRows.bytes(),
+			bytes(_infoFlight, _infoPlane),
+			bytes(_scheduleFlight),
+			bytes(_reservationFlight) + _reservationStatus.length,
+			bytes(_repairPlane, _repairDate),
+		};
+		int[] count = { _fnum.length, _planeId.length, _infoFlight.length, _scheduleFlight.length,
+			_reservationFlight.length, _repairPlane.length };
+		long totalRows = 0, totalHeld = 0, totalCsv = 0;
+		int i = 0;
+		for (Map.Entry<String, Long> csv : _csvBytes.entrySet()) {
+			rows.add(new String[] { csv.getKey(), Integer.toString(count[i]), Long.toString(held[i]),
+				Long.toString(csv.getValue()), String.format(Locale.ROOT, "%.2f", (double) held[i] / csv.getValue()) });
+			totalRows += count[i];
+			totalHeld += held[i];
+			totalCsv += csv.getValue();
+			i++;
+		}
+		rows.add(new String[] { "total", Long.toString(totalRows), Long.toString(totalHeld), Long.toString(totalCsv),
+			String.format(Locale.ROOT, "%.2f", (double) totalHeld / totalCsv) });
+		return rows;
+	}//end memory
+
+	private static long bytes(int[]... columns) {
+		long bytes = 0;
+		for (int[] c : columns) {
+			bytes += 4L * c.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Method to compare every answer with the JDBC path.  Query 6 is asked
+	 * for every flight on its departure date, query 9 for every flight and
+	 * status; queries 7 and 8 are compared whole.
+	 *
+	 * @param esql a database loaded from the same files
+	 * @return the number of differences, each printed to standard error
+	 * @throws java.lang.Exception when a query failed
+	 */
+	public int verify(DBproject esql) throws Exception {
+		int differences = 0;
+		for (int row = 0; row < _fnum.length; ++row) {
+			LocalDate day = LocalDate.ofEpochDay(_departure[row]);
+			differences += differ("seats " + _fnum[row] + " " + day,
+				availableSeats(_fnum[row], day), esql.availableSeats(_fnum[row], day));
+		}
+
+		List<Integer> planes = esql.queryList(DBproject.QUERY7, rs -> rs.getInt(1));
+		differences += differ("repairs per plane", repairsPerPlane(), planes);
+
+		//the query orders by count only; ties are compared in year order
+		List<int[]> years = esql.repairsPerYearAsync().join();
+		years.sort(BY_COUNT_THEN_YEAR);
+		differences += differ("repairs per year", toLists(repairsPerYear()), toLists(years));
+
+		String[] statuses = { "W", "R", "C" };
+		List<CompletableFuture<Integer>> counts = new ArrayList<CompletableFuture<Integer>>();
+		for (int fnum : _fnum) {
+			for (String status : statuses) {
+				counts.add(esql.countPassengersWithStatusAsync(fnum, status));
+			}
+		}
+		int next = 0;
+		for (int fnum : _fnum) {
+			for (String status : statuses) {
+				differences += differ("passengers " + fnum + " " + status,
+					countPassengersWithStatus(fnum, status), counts.get(next++).join());
+			}
+		}
+		return differences;
+	}//end verify
+
+	private static List<List<Integer>> toLists(List<int[]> rows) {
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for (int[] r : rows) {
+			lists.add(Arrays.asList(r[0], r[1]));
+		}
+		return lists;
+	}
+
+	private static int differ(String what, Object embedded, Object jdbc) {
+		if (embedded == null ? jdbc == null : embedded.equals(jdbc)) {
+			return 0;
+		}
+		System.err.println("DIFFERS " + what + ": embedded " + embedded + ", jdbc " + jdbc);
+		return 1;
+	}
+
+	public static void main(String[] args) {
+		String data = "../data";
+		ResultPrinter.Format format = ResultPrinter.Format.TSV;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("--"); ++i) {
+			if (args[i].startsWith("--data=")) {
+				data = args[i].substring("--data=".length());
+			} else if (args[i].startsWith("--format=")) {
+				format = ResultPrinter.Format.parse(args[i].substring("--format=".length()));
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		if (i == args.length) {
+			System.err.println("Usage: java [-classpath <classpath>] " + EmbeddedAnalytics.class.getName()
+				+ " [--data=../data] [--format=tsv] seats FLIGHT YYYY-MM-DD | repairs-per-plane | repairs-per-year"
+				+ " | passengers FLIGHT W|R|C | memory | verify <dbname> <port> <user>");
+			return;
+		}
+		String command = args[i];
+		List<String> params = Arrays.asList(args).subList(i + 1, args.length);
+		int exitCode = 0;
+		try {
+			long start = System.nanoTime();
+			EmbeddedAnalytics analytics = new EmbeddedAnalytics(new File(data)).load();
+			System.err.printf("Loaded %s in %.2f s%n", data, (System.nanoTime() - start) / 1e9);
+			List<String[]> rows = new ArrayList<String[]>();
+			String[] names;
+			switch (command) {
+				case "seats": {
+					names = new String[] { "seats_available" };
+					Integer seats = analytics.availableSeats(Integer.parseInt(params.get(0)), LocalDate.parse(params.get(1)));
+					if (seats != null) {
+						rows.add(new String[] { seats.toString() });
+					}
+					break;
+				}
+				case "repairs-per-plane":
+					names = new String[] { "plane_id" };
+					for (int id : analytics.repairsPerPlane()) {
+						rows.add(new String[] { Integer.toString(id) });
+					}
+					break;
+				case "repairs-per-year":
+					names = new String[] { "year", "repairs_per_year" };
+					for (int[] r : analytics.repairsPerYear()) {
+						rows.add(new String[] { Integer.toString(r[0]), Integer.toString(r[1]) });
+					}
+					break;
+				case "passengers":
+					names = new String[] { "number_of_passengers" };
+					rows.add(new String[] { Integer.toString(
+						analytics.countPassengersWithStatus(Integer.parseInt(params.get(0)), params.get(1))) });
+					break;
+				case "memory":
+					names = new String[] { "file", "rows", "bytes_held", "csv_bytes", "ratio" };
+					rows = analytics.memory();
+					break;
+				case "verify": {
+					Class.forName("org.postgresql.Driver");
+					DBproject esql = new DBproject(params.get(0), params.get(1), params.get(2), "");
+					try {
+						int differences = analytics.verify(esql);
+						System.out.println(differences == 0 ? "OK: embedded answers match JDBC"
+							: "FAILED: " + differences + " differences");
+						exitCode = differences == 0 ? 0 : 1;
+					} finally {
+						esql.cleanup();
+					}
+					names = null;
+					break;
+				}
+				default:
+					System.err.println("Unknown command: " + command);
+					names = null;
+					exitCode = 1;
+			}
+			if (names != null) {
+				boolean[] numeric = new boolean[names.length];
+				Arrays.fill(numeric, true);
+				numeric[0] = !command.equals("memory");
+				ResultPrinter printer = new ResultPrinter(ResultPrinter.stdout(), format);
+				printer.start(names, numeric);
+				for (String[] row : rows) {
+					printer.writeRow(row);
+				}
+				printer.finish();
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			exitCode = 1;
+		}
+		if (exitCode != 0) {
+			System.exit(exitCode);
+		}
+	}//end main
+}
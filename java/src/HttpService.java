@@ -0,0 +1,368 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP/JSON front end on the JDK's built-in server.  Every request runs on
+ * its own virtual thread (a pool of platform threads before Java 21) and
+ * borrows a connection from the DBproject pool only while it talks to the
+ * database, so requests in flight are bounded by memory rather than by
+ * threads, and database work by the pool size.
+ *
+ *   POST /planes        {"id", "make", "model", "age", "seats"}
+ *   POST /pilots        {"id", "name", "nationality"}
+ *   POST /flights       {"fnum", "cost", "sold", "stops", "departure", "arrival",
+ *                        "arrival-airport", "departure-airport"}
+ *   POST /technicians   {"id", "name"}
+ *   POST /bookings      {"flight", "cid", "fname", "lname", "gender", "dob", "address",
+ *                        "phone", "zipcode"}
+ *   GET  /flights/{fnum}/seats?date=YYYY-MM-DD
+ *   GET  /flights/{fnum}/passengers?status=W|R|C
+ *   GET  /reports/repairs-per-plane[?format=jsonl|csv|tsv|table]
+ *   GET  /reports/repairs-per-year[?format=jsonl|csv|tsv|table]
+ *
+ * Request bodies are flat JSON objects named like the command mode flags
+ * and checked the same way.  Answers are JSON objects; the reports are
+ * read completely, then written one JSON line per row.
+ * Errors are {"error": message} with 400 for invalid input, 404 for an
+ * unknown path or flight, 409 when an id exists or a constraint rejects
+ * the row, and 500 otherwise.
+ *
+ */
+
+public class HttpService implements AutoCloseable {
+	static final int DEFAULT_PORT = 8080;
+	//connections the kernel queues before they are accepted
+	static final int BACKLOG = 1024;
+	//largest request body accepted
+	static final int MAX_BODY = 64 * 1024;
+	//seconds close waits for the requests in progress
+	static final int STOP_DELAY = 5;
+	//platform threads per pooled connection when virtual threads are missing
+	static final int THREADS_PER_CONNECTION = 4;
+
+	static final String JSON = "application/json; charset=utf-8";
+
+	/**
+	 * One endpoint, given the exchange and the match of its path.
+	 */
+	interface Endpoint {
+		void handle(HttpExchange exchange, Matcher path) throws Exception;
+	}
+
+	static final class Route {
+		final String method;
+		final Pattern path;
+		final Endpoint endpoint;
+
+		Route(String method, String path, Endpoint endpoint) {
+			this.method = method;
+			this.path = Pattern.compile(path);
+			this.endpoint = endpoint;
+		}
+	}
+
+	private final DBproject _esql;
+	private final HttpServer _server;
+	private final ExecutorService _executor;
+	private final List<Route> _routes = new ArrayList<Route>();
+	private final AtomicLong _requests = new AtomicLong();
+	private final AtomicLong _failures = new AtomicLong();
+	private final CountDownLatch _stopped = new CountDownLatch(1);
+	private boolean _closed = false;
+
+	/**
+	 * @param esql the database
+	 * @param address where to listen, port 0 for any free port
+	 * @throws java.io.IOException when the address cannot be bound
+	 */
+	public HttpService(DBproject esql, InetSocketAddress address) throws IOException {
+		this._esql = esql;
+		this._server = HttpServer.create(address, BACKLOG);
+		this._executor = VirtualThreads.newExecutor(true, DBproject.POOL_MAX * THREADS_PER_CONNECTION, "http");
+		this._server.setExecutor(_executor);
+		this._server.createContext("/", this::dispatch);
+
+		_routes.add(new Route("POST", "/planes", this::addPlane));
+		_routes.add(new Route("POST", "/pilots", this::addPilot));
+		_routes.add(new Route("POST", "/flights", this::addFlight));
+		_routes.add(new Route("POST", "/technicians", this::addTechnician));
+		_routes.add(new Route("POST", "/bookings", this::book));
+		_routes.add(new Route("GET", "/flights/(\\d{1,9})/seats", this::seats));
+		_routes.add(new Route("GET", "/flights/(\\d{1,9})/passengers", this::passengers));
+		_routes.add(new Route("GET", "/reports/repairs-per-plane", this::repairsPerPlane));
+		_routes.add(new Route("GET", "/reports/repairs-per-year", this::repairsPerYear));
+	}
+
+	public void start() {
+		_server.start();
+	}
+
+	public InetSocketAddress getAddress() {
+		return _server.getAddress();
+	}
+
+	public long getRequests() {
+		return _requests.get();
+	}
+
+	public long getFailures() {
+		return _failures.get();
+	}
+
+	/**
+	 * Method to block until the service is closed, closing it when the JVM
+	 * is shut down (e.g. by Ctrl-C).
+	 *
+	 * @throws java.lang.InterruptedException when the wait is interrupted
+	 */
+	public void awaitStop() throws InterruptedException {
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "http-stop"));
+		_stopped.await();
+	}
+
+	private void dispatch(HttpExchange exchange) throws IOException {
+		_requests.incrementAndGet();
+		try {
+			String path = exchange.getRequestURI().getPath();
+			List<String> allowed = new ArrayList<String>();
+			for (Route route : _routes) {
+				Matcher m = route.path.matcher(path);
+				if (!m.matches()) {
+					continue;
+				}
+				if (route.method.equals(exchange.getRequestMethod())) {
+					route.endpoint.handle(exchange, m);
+					return;
+				}
+				allowed.add(route.method);
+			}
+			if (allowed.isEmpty()) {
+				sendError(exchange, 404, "no such resource: " + path);
+			} else {
+				exchange.getResponseHeaders().set("Allow", String.join(", ", allowed));
+				sendError(exchange, 405, exchange.getRequestMethod() + " is not allowed on " + path);
+			}
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+		} catch (SQLException e) {
+			//class 23 is an integrity constraint violation, e.g. booking an unknown flight
+			String state = e.getSQLState();
+			sendError(exchange, state != null && state.startsWith("23") ? 409 : 500, e.getMessage());
+		} catch (Exception e) {
+			sendError(exchange, 500, e.getMessage());
+		} finally {
+			exchange.close();
+		}
+	}//end dispatch
+
+	private void addPlane(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = body(exchange, "add-plane");
+		int id = f.getInt("id");
+		created(exchange, _esql.addPlane(id, f.get("make", 32), f.get("model", 64), f.getInt("age"),
+			CommandRunner.seats(f)), "plane", "id", id);
+	}
+
+	private void addPilot(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = body(exchange, "add-pilot");
+		int id = f.getInt("id");
+		created(exchange, _esql.addPilot(id, f.get("name", 128), f.get("nationality", 24)), "pilot", "id", id);
+	}
+
+	private void addFlight(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = body(exchange, "add-flight");
+		int fnum = f.getInt("fnum");
+		created(exchange, _esql.addFlight(fnum, f.getInt("cost"), f.getInt("sold"), f.getInt("stops"),
+			f.getDate("departure").toString(), f.getDate("arrival").toString(),
+			f.get("arrival-airport", 5), f.get("departure-airport", 5)), "flight", "fnum", fnum);
+	}
+
+	private void addTechnician(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = body(exchange, "add-technician");
+		int id = f.getInt("id");
+		created(exchange, _esql.addTechnician(id, f.get("name", 128)), "technician", "id", id);
+	}
+
+	private void book(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = body(exchange, "book");
+		Booking booking = _esql.bookFlight(f.getInt("flight"), CommandRunner.customer(f));
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"rnum\":").append(booking.rnum).append(",\"cid\":").append(booking.cid)
+			.append(",\"flight\":").append(booking.fid).append(",\"status\":");
+		Json.quote(sb, String.valueOf(booking.status)).append('}');
+		send(exchange, 201, sb.toString());
+	}
+
+	private void seats(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = query(exchange, path.group(1), "seats");
+		int flight = f.getInt("flight");
+		LocalDate date = f.getDate("date");
+		Integer seats = _esql.availableSeats(flight, date);
+		if (seats == null) {
+			sendError(exchange, 404, "flight " + flight + " is not a scheduled flight with a plane departing on " + date);
+			return;
+		}
+		send(exchange, 200, "{\"flight\":" + flight + ",\"date\":\"" + date + "\",\"seats_available\":" + seats + "}");
+	}
+
+	private void passengers(HttpExchange exchange, Matcher path) throws Exception {
+		CommandRunner.Flags f = query(exchange, path.group(1), "passengers");
+		int flight = f.getInt("flight");
+		String status = CommandRunner.status(f);
+		int count = _esql.countPassengersWithStatus(flight, status);
+		send(exchange, 200, "{\"flight\":" + flight + ",\"status\":\"" + status + "\",\"passengers\":" + count + "}");
+	}
+
+	private void repairsPerPlane(HttpExchange exchange, Matcher path) throws Exception {
+		ResultPrinter.Format format = format(exchange);
+		List<int[]> rows = new ArrayList<int[]>();
+		for (int plane : _esql.queryIntColumn(DBproject.QUERY7)) {
+			rows.add(new int[] { plane });
+		}
+		report(exchange, format, new String[] { "plane_id" }, rows);
+	}
+
+	private void repairsPerYear(HttpExchange exchange, Matcher path) throws Exception {
+		ResultPrinter.Format format = format(exchange);
+		report(exchange, format, new String[] { "year", "repairs_per_year" },
+			_esql.queryList(DBproject.QUERY8, rs -> new int[] { rs.getInt(1), rs.getInt(2) }));
+	}
+
+	/**
+	 * Method to write a report that has been read completely, so no pooled
+	 * connection or transaction is held while a slow client reads it.  The
+	 * reports are a row per plane or year, small enough to buffer.
+	 */
+	private static void report(HttpExchange exchange, ResultPrinter.Format format, String[] names, List<int[]> rows)
+			throws IOException {
+		boolean[] numeric = new boolean[names.length];
+		Arrays.fill(numeric, true);
+		exchange.getResponseHeaders().set("Content-Type", contentType(format));
+		exchange.sendResponseHeaders(200, 0);
+		ResultPrinter printer = new ResultPrinter(new BufferedWriter(
+			new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)), format);
+		printer.start(names, numeric);
+		String[] values = new String[names.length];
+		for (int[] row : rows) {
+			for (int i = 0; i < values.length; ++i) {
+				values[i] = String.valueOf(row[i]);
+			}
+			printer.writeRow(values);
+		}
+		printer.finish();
+	}//end report
+
+	private static ResultPrinter.Format format(HttpExchange exchange) {
+		String name = params(exchange).get("format");
+		return name == null ? ResultPrinter.Format.JSONL : ResultPrinter.Format.parse(name);
+	}
+
+	private static String contentType(ResultPrinter.Format format) {
+		switch (format) {
+			case JSONL: return "application/x-ndjson; charset=utf-8";
+			case CSV: return "text/csv; charset=utf-8";
+			case TSV: return "text/tab-separated-values; charset=utf-8";
+			default: return "text/plain; charset=utf-8";
+		}
+	}
+
+	//the JSON body of a request, checked against the flags of a command
+	private static CommandRunner.Flags body(HttpExchange exchange, String command) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		try (InputStream in = exchange.getRequestBody()) {
+			int n;
+			while ((n = in.read(chunk)) > 0) {
+				if (buffer.size() + n > MAX_BODY) {
+					throw new IllegalArgumentException("request body is larger than " + MAX_BODY + " bytes");
+				}
+				buffer.write(chunk, 0, n);
+			}
+		}
+		return new CommandRunner.Flags(Json.parseObject(buffer.toString("UTF-8")), CommandRunner.COMMANDS.get(command));
+	}
+
+	//the query string of a request plus the flight number from its path
+	private static CommandRunner.Flags query(HttpExchange exchange, String flight, String command) {
+		Map<String, String> values = params(exchange);
+		values.put("flight", flight);
+		return new CommandRunner.Flags(values, CommandRunner.COMMANDS.get(command));
+	}
+
+	private static Map<String, String> params(HttpExchange exchange) {
+		Map<String, String> values = new HashMap<String, String>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if (raw == null) {
+			return values;
+		}
+		for (String pair : raw.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			String key = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return values;
+	}
+
+	private void created(HttpExchange exchange, boolean created, String what, String key, int id) throws IOException {
+		if (!created) {
+			sendError(exchange, 409, what + " " + id + " already exists");
+			return;
+		}
+		send(exchange, 201, "{\"" + key + "\":" + id + "}");
+	}
+
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		_failures.incrementAndGet();
+		if (exchange.getResponseCode() != -1) {
+			//the response has started; closing the exchange cuts it short
+			System.err.println("http: " + exchange.getRequestURI() + " failed after the response started: " + message);
+			return;
+		}
+		send(exchange, status, "{\"error\":" + Json.quote(message) + "}");
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", JSON);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (_closed) {
+			return;
+		}
+		_closed = true;
+		_server.stop(STOP_DELAY);
+		_executor.shutdown();
+		_stopped.countDown();
+	}
+}
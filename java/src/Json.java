@@ -0,0 +1,254 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON helpers shared by the printers and services.  Only what the
+ * project needs: quoting strings for output, reading flat objects such as
+ * one line of a JSON-lines file, and reading whole documents such as the
+ * output of EXPLAIN (FORMAT JSON).
+ *
+ */
+
+public final class Json {
+	private Json() {
+	}
+
+	/**
+	 * Method to append a value as a quoted JSON string, or null.
+	 *
+	 * @param out where the text is written
+	 * @param value the string to quote, may be null
+	 * @return the same builder
+	 */
+	public static StringBuilder quote(StringBuilder out, String value) {
+		if (value == null) {
+			return out.append("null");
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				case '\b': out.append("\\b"); break;
+				case '\f': out.append("\\f"); break;
+				default:
+					if (c < 0x20) {
+						out.append(String.format("\\u%04x", (int) c));
+					} else {
+						out.append(c);
+					}
+			}
+		}
+		return out.append('"');
+	}//end quote
+
+	public static String quote(String value) {
+		return quote(new StringBuilder(), value).toString();
+	}
+
+	/**
+	 * Method to parse a flat JSON object ({"key": value, ...}).  Strings,
+	 * numbers, booleans and null are accepted as values and returned as
+	 * their text (null as a Java null); nested objects and arrays are not.
+	 *
+	 * @param text the JSON text
+	 * @return the members in document order
+	 * @throws IllegalArgumentException when the text is not a flat object
+	 */
+	public static Map<String, String> parseObject(String text) {
+		Parser p = new Parser(text);
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		p.skipSpace();
+		p.expect('{');
+		p.skipSpace();
+		if (p.peek() == '}') {
+			p.pos++;
+		} else {
+			while (true) {
+				p.skipSpace();
+				String key = p.string();
+				p.skipSpace();
+				p.expect(':');
+				p.skipSpace();
+				result.put(key, p.value());
+				p.skipSpace();
+				char c = p.next();
+				if (c == '}') {
+					break;
+				}
+				if (c != ',') {
+					throw p.error("expected ',' or '}'");
+				}
+			}
+		}
+		p.skipSpace();
+		if (p.pos != text.length()) {
+			throw p.error("unexpected trailing text");
+		}
+		return result;
+	}//end parseObject
+
+	/**
+	 * Method to parse any JSON document.  Objects become a Map (in document
+	 * order), arrays a List, and scalars their text as in parseObject.
+	 *
+	 * @param text the JSON text
+	 * @return the parsed value
+	 * @throws IllegalArgumentException when the text is not valid JSON
+	 */
+	public static Object parse(String text) {
+		Parser p = new Parser(text);
+		p.skipSpace();
+		Object value = p.any();
+		p.skipSpace();
+		if (p.pos != text.length()) {
+			throw p.error("unexpected trailing text");
+		}
+		return value;
+	}//end parse
+
+	private static final class Parser {
+		private final String _text;
+		int pos = 0;
+
+		Parser(String text) {
+			this._text = text;
+		}
+
+		char peek() {
+			if (pos >= _text.length()) {
+				throw error("unexpected end of input");
+			}
+			return _text.charAt(pos);
+		}
+
+		char next() {
+			char c = peek();
+			pos++;
+			return c;
+		}
+
+		void expect(char c) {
+			if (next() != c) {
+				throw error("expected '" + c + "'");
+			}
+		}
+
+		void skipSpace() {
+			while (pos < _text.length() && Character.isWhitespace(_text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		Object any() {
+			char c = peek();
+			if (c == '{') {
+				pos++;
+				Map<String, Object> obj = new LinkedHashMap<String, Object>();
+				skipSpace();
+				if (peek() == '}') {
+					pos++;
+					return obj;
+				}
+				while (true) {
+					skipSpace();
+					String key = string();
+					skipSpace();
+					expect(':');
+					skipSpace();
+					obj.put(key, any());
+					skipSpace();
+					char n = next();
+					if (n == '}') {
+						return obj;
+					}
+					if (n != ',') {
+						throw error("expected ',' or '}'");
+					}
+				}
+			}
+			if (c == '[') {
+				pos++;
+				List<Object> list = new ArrayList<Object>();
+				skipSpace();
+				if (peek() == ']') {
+					pos++;
+					return list;
+				}
+				while (true) {
+					skipSpace();
+					list.add(any());
+					skipSpace();
+					char n = next();
+					if (n == ']') {
+						return list;
+					}
+					if (n != ',') {
+						throw error("expected ',' or ']'");
+					}
+				}
+			}
+			return value();
+		}//end any
+
+		String value() {
+			char c = peek();
+			if (c == '"') {
+				return string();
+			}
+			if (c == '{' || c == '[') {
+				throw error("nested values are not supported");
+			}
+			int start = pos;
+			while (pos < _text.length() && ",}] \t\r\n".indexOf(_text.charAt(pos)) < 0) {
+				pos++;
+			}
+			String literal = _text.substring(start, pos);
+			if (literal.isEmpty()) {
+				throw error("missing value");
+			}
+			return literal.equals("null") ? null : literal;
+		}
+
+		String string() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return sb.toString();
+				}
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				char e = next();
+				switch (e) {
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					case 't': sb.append('\t'); break;
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'u':
+						if (pos + 4 > _text.length()) {
+							throw error("bad unicode escape");
+						}
+						sb.append((char) Integer.parseInt(_text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default: sb.append(e);
+				}
+			}
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException("Invalid JSON at offset " + pos + ": " + message);
+		}
+	}//end Parser
+}
@@ -0,0 +1,123 @@
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * In-memory set of the integer primary keys of one table, used to turn
+ * away duplicate ids before asking the database.  Keys live in an open
+ * addressing table of ints (about 8 bytes a key, no boxing), so even the
+ * x100 synthetic data sets fit in a few megabytes.
+ *
+ * The set is exact for keys it has seen: contains() is true only for ids
+ * that were loaded or added.  It is a snapshot, though, so it cannot know
+ * about rows other sessions insert later; callers still rely on the
+ * INSERT ... ON CONFLICT result and add() the keys it reports.
+ *
+ */
+
+public class KeySet {
+	//marks a free slot; the key with this value is kept in a flag instead
+	private static final int EMPTY = Integer.MIN_VALUE;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private int[] _slots;
+	private int _size = 0;
+	private boolean _hasEmptyKey = false;
+
+	public KeySet(int expected) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		this._slots = new int[capacity];
+		Arrays.fill(_slots, EMPTY);
+	}
+
+	/**
+	 * Method to read every key returned by a query.
+	 *
+	 * @param esql the database
+	 * @param query a SELECT returning the keys in its first column
+	 * @return the loaded set
+	 * @throws java.sql.SQLException when the query failed
+	 */
+	public static KeySet load(DBproject esql, String query) throws SQLException {
+		final KeySet keys = new KeySet(1024);
+		esql.executeQueryAndStreamResult(query, rs -> keys.add(rs.getInt(1)));
+		return keys;
+	}
+
+	/**
+	 * @param key the id
+	 * @return true when the id was loaded or added
+	 */
+	public synchronized boolean contains(int key) {
+		if (key == EMPTY) {
+			return _hasEmptyKey;
+		}
+		int mask = _slots.length - 1;
+		for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+			int k = _slots[i];
+			if (k == key) {
+				return true;
+			}
+			if (k == EMPTY) {
+				return false;
+			}
+		}
+	}//end contains
+
+	/**
+	 * @param key the id
+	 * @return true when the id was not in the set yet
+	 */
+	public synchronized boolean add(int key) {
+		if (key == EMPTY) {
+			boolean added = !_hasEmptyKey;
+			_hasEmptyKey = true;
+			_size += added ? 1 : 0;
+			return added;
+		}
+		if (_size + 1 > _slots.length * LOAD_FACTOR) {
+			resize(_slots.length << 1);
+		}
+		if (!insert(_slots, key)) {
+			return false;
+		}
+		_size++;
+		return true;
+	}//end add
+
+	public synchronized int size() {
+		return _size;
+	}
+
+	private static boolean insert(int[] slots, int key) {
+		int mask = slots.length - 1;
+		for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+			if (slots[i] == key) {
+				return false;
+			}
+			if (slots[i] == EMPTY) {
+				slots[i] = key;
+				return true;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		int[] slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		for (int k : _slots) {
+			if (k != EMPTY) {
+				insert(slots, k);
+			}
+		}
+		_slots = slots;
+	}
+
+	//sequential ids would otherwise fill runs of neighbouring slots
+	static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
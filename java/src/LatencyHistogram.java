@@ -0,0 +1,113 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.  Values are counted in
+ * log-linear buckets: every power of two is split into 64 sub-buckets, so a
+ * reported percentile is within about 1.6% of the true value while the
+ * histogram stays a fixed ~3.8k counters whatever the number of samples.
+ * record() may be called from any number of threads.
+ *
+ */
+
+public class LatencyHistogram {
+	static final int SUB_BITS = 6;
+	static final int SUB_COUNT = 1 << SUB_BITS;
+	//values below SUB_COUNT are exact, every higher power of two gets SUB_COUNT buckets
+	static final int BUCKETS = SUB_COUNT * (64 - SUB_BITS + 1);
+
+	private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder _total = new LongAdder();
+	private final LongAdder _sum = new LongAdder();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * Method to count one latency.
+	 *
+	 * @param nanos the latency, negative values count as 0
+	 */
+	public void record(long nanos) {
+		long v = Math.max(0, nanos);
+		_counts.incrementAndGet(bucketOf(v));
+		_total.increment();
+		_sum.add(v);
+		if (v > _max.get()) {
+			_max.accumulateAndGet(v, Math::max);
+		}
+	}//end record
+
+	static int bucketOf(long v) {
+		if (v < SUB_COUNT) {
+			return (int) v;
+		}
+		//keep the top SUB_BITS + 1 bits: v >>> exp is in [SUB_COUNT, 2 * SUB_COUNT)
+		int exp = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+		return exp * SUB_COUNT + (int) (v >>> exp);
+	}
+
+	//upper bound of the values counted in a bucket
+	static long valueOf(int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int exp = bucket / SUB_COUNT - 1;
+		long sub = bucket % SUB_COUNT + SUB_COUNT;
+		return ((sub + 1) << exp) - 1;
+	}
+
+	public long count() {
+		return _total.sum();
+	}
+
+	public long max() {
+		return _max.get();
+	}
+
+	public double mean() {
+		long n = _total.sum();
+		return n == 0 ? 0.0 : (double) _sum.sum() / n;
+	}
+
+	/**
+	 * Method to get a percentile.
+	 *
+	 * @param q the quantile, e.g. 0.99
+	 * @return the latency at or below which a fraction q of the samples lie
+	 */
+	public long percentile(double q) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			n += _counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(q * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += _counts.get(i);
+			if (seen >= rank) {
+				return Math.min(valueOf(i), _max.get());
+			}
+		}
+		return _max.get();
+	}//end percentile
+
+	/**
+	 * Method to add every sample of another histogram to this one.
+	 *
+	 * @param other the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			long c = other._counts.get(i);
+			if (c != 0) {
+				_counts.addAndGet(i, c);
+			}
+		}
+		_total.add(other._total.sum());
+		_sum.add(other._sum.sum());
+		_max.accumulateAndGet(other._max.get(), Math::max);
+	}//end add
+}
@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for the booking system.  N simulated agents, on platform
+ * or virtual threads, loop over a weighted mix of operations until the run
+ * time is up: booking a seat, checking seat availability (query 6) and
+ * counting the passengers of a flight (query 9).  Flights are chosen with a
+ * Zipf distribution so a few popular flights take most of the traffic,
+ * which is where contention on Flight.num_sold and on the connection pool
+ * shows up.  Latency (p50/p99/p999) and throughput are recorded per
+ * operation and written to a JSON report so runs can be compared.
+ *
+ * Bookings are made for new customers with ids above the existing ones; at
+ * the end they are removed again and num_sold restored, unless --keep.
+ *
+ * Usage: java LoadGenerator <dbname> <port> <user> [--agents=64] [--virtual] [--pool=8]
+ *                           [--duration=30] [--warmup=5] [--mix=book:20,seats:60,passengers:20]
+ *                           [--skew=1.0] [--flights=N] [--think=0] [--report=load.json] [--keep]
+ *
+ */
+
+public class LoadGenerator {
+	static final String[] OPERATIONS = { "book", "seats", "passengers" };
+	static final String[] STATUSES = { "R", "W", "C" };
+
+	/**
+	 * Zipf-distributed ranks 0..n-1; rank 0 is the most popular.  With skew
+	 * 0 every rank is equally likely.
+	 */
+	static final class Zipf {
+		private final double[] _cdf;
+
+		Zipf(int n, double skew) {
+			_cdf = new double[n];
+			double sum = 0;
+			for (int k = 0; k < n; ++k) {
+				sum += 1.0 / Math.pow(k + 1, skew);
+				_cdf[k] = sum;
+			}
+			for (int k = 0; k < n; ++k) {
+				_cdf[k] /= sum;
+			}
+		}
+
+		int next(Random random) {
+			double u = random.nextDouble();
+			int lo = 0, hi = _cdf.length - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (_cdf[mid] < u) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}//end Zipf
+
+	/**
+	 * Counters of one operation.
+	 */
+	static final class OpStats {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LongAdder errors = new LongAdder();
+	}
+
+	private final DBproject _esql;
+	private final int[] _flights;
+	private final Zipf _zipf;
+	private final int[] _mix;
+	private final int _mixTotal;
+	private final long _thinkMillis;
+	private final int _firstCustomer;
+	private final AtomicInteger _nextCustomer = new AtomicInteger();
+	private final Map<String, OpStats> _stats = new LinkedHashMap<String, OpStats>();
+	private volatile boolean _recording = false;
+	private volatile boolean _running = true;
+
+	/**
+	 * @param flights bookable flights, most popular first
+	 * @param skew Zipf exponent over the flights
+	 * @param mix relative weight of each of OPERATIONS
+	 * @param firstCustomer first unused customer id
+	 */
+	public LoadGenerator(DBproject esql, int[] flights, double skew, int[] mix, long thinkMillis, int firstCustomer) {
+		this._esql = esql;
+		this._flights = flights;
+		this._zipf = new Zipf(flights.length, skew);
+		this._mix = mix;
+		int total = 0;
+		for (int w : mix) {
+			total += w;
+		}
+		this._mixTotal = total;
+		this._thinkMillis = thinkMillis;
+		this._firstCustomer = firstCustomer;
+		for (String op : OPERATIONS) {
+			_stats.put(op, new OpStats());
+		}
+	}
+
+	/**
+	 * Method to run the agents.
+	 *
+	 * @param agents number of concurrent agents
+	 * @param virtual run the agents on virtual threads when available
+	 * @param warmupSeconds time before recording starts
+	 * @param seconds recorded run time
+	 * @return the measured run time in seconds
+	 * @throws java.lang.InterruptedException when interrupted while waiting
+	 */
+	public double run(int agents, boolean virtual, int warmupSeconds, int seconds) throws InterruptedException {
+		ExecutorService executor = VirtualThreads.newExecutor(virtual, agents, "agent");
+		for (int i = 0; i < agents; ++i) {
+			executor.execute(this::agent);
+		}
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		_recording = true;
+		long start = System.nanoTime();
+		TimeUnit.SECONDS.sleep(seconds);
+		_recording = false;
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		_running = false;
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		return elapsed;
+	}//end run
+
+	private void agent() {
+		Random random = ThreadLocalRandom.current();
+		while (_running) {
+			String op = pickOperation(random);
+			int flight = _flights[_zipf.next(random)];
+			boolean recording = _recording;
+			long t0 = System.nanoTime();
+			try {
+				switch (op) {
+					case "book": {
+						int n = _nextCustomer.getAndIncrement();
+						_esql.bookFlight(flight, new Customer(_firstCustomer + n, "Load", "Agent", "M",
+							"1980-01-01", "1 Load Street", "5555555555", "92507"));
+						break;
+					}
+					case "seats":
+						_esql.getSeatAvailability(flight);
+						break;
+					case "passengers":
+						_esql.countPassengersWithStatus(flight, STATUSES[random.nextInt(STATUSES.length)]);
+						break;
+				}
+				if (recording && _recording) {
+					_stats.get(op).latency.record(System.nanoTime() - t0);
+				}
+			} catch (SQLException e) {
+				if (recording) {
+					_stats.get(op).errors.increment();
+				}
+			}
+			if (_thinkMillis > 0) {
+				try {
+					Thread.sleep(_thinkMillis);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}//end while
+	}//end agent
+
+	private String pickOperation(Random random) {
+		int r = random.nextInt(_mixTotal);
+		for (int i = 0; i < _mix.length; ++i) {
+			r -= _mix[i];
+			if (r < 0) {
+				return OPERATIONS[i];
+			}
+		}
+		return OPERATIONS[OPERATIONS.length - 1];
+	}
+
+	/**
+	 * Method to remove the customers and reservations made by the run and
+	 * give back the seats they took.
+	 *
+	 * @throws java.sql.SQLException when the cleanup failed
+	 */
+	public void cleanup() throws SQLException {
+		final int first = _firstCustomer;
+		final int end = _firstCustomer + _nextCustomer.get();
+		_esql.executeInTransaction(pc -> {
+			PreparedStatement sold = pc.prepare(
+				"UPDATE Flight f SET num_sold = f.num_sold - r.n FROM (SELECT fid, COUNT(*) AS n FROM Reservation "
+				+ "WHERE cid >= ? AND cid < ? AND status = 'R' GROUP BY fid) r WHERE f.fnum = r.fid");
+			DBproject.bind(sold, new Object[] { first, end });
+			sold.executeUpdate();
+			PreparedStatement reservations = pc.prepare("DELETE FROM Reservation WHERE cid >= ? AND cid < ?");
+			DBproject.bind(reservations, new Object[] { first, end });
+			reservations.executeUpdate();
+			PreparedStatement customers = pc.prepare("DELETE FROM Customer WHERE id >= ? AND id < ?");
+			DBproject.bind(customers, new Object[] { first, end });
+			customers.executeUpdate();
+			return null;
+		});
+	}//end cleanup
+
+	/**
+	 * Method to write the results as a JSON object.
+	 *
+	 * @param out where to write
+	 * @param config the run settings, written as the "config" object
+	 * @param seconds the measured run time
+	 * @throws java.io.IOException when the report cannot be written
+	 */
+	public void writeReport(Writer out, Map<String, String> config, double seconds) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"time\":");
+		Json.quote(sb, Instant.now().toString());
+		sb.append(",\"config\":{");
+		boolean first = true;
+		for (Map.Entry<String, String> e : config.entrySet()) {
+			sb.append(first ? "" : ",");
+			Json.quote(sb, e.getKey()).append(':');
+			Json.quote(sb, e.getValue());
+			first = false;
+		}
+		sb.append(String.format(Locale.ROOT, "},\"seconds\":%.3f,\"operations\":{", seconds));
+		long total = 0;
+		first = true;
+		for (Map.Entry<String, OpStats> e : _stats.entrySet()) {
+			LatencyHistogram h = e.getValue().latency;
+			total += h.count();
+			sb.append(first ? "\n" : ",\n");
+			Json.quote(sb, e.getKey());
+			sb.append(String.format(Locale.ROOT, ":{\"count\":%d,\"errors\":%d,\"ops_per_sec\":%.1f,"
+				+ "\"mean_ms\":%.3f,\"p50_ms\":%.3f,\"p99_ms\":%.3f,\"p999_ms\":%.3f,\"max_ms\":%.3f}",
+				h.count(), e.getValue().errors.sum(), h.count() / seconds, h.mean() / 1e6,
+				h.percentile(0.50) / 1e6, h.percentile(0.99) / 1e6, h.percentile(0.999) / 1e6, h.max() / 1e6));
+			first = false;
+		}
+		sb.append(String.format(Locale.ROOT, "},\n\"total_ops_per_sec\":%.1f}\n", total / seconds));
+		out.write(sb.toString());
+		out.flush();
+	}//end writeReport
+
+	/**
+	 * Method to print the results as a table.
+	 */
+	public void printSummary(double seconds) {
+		System.out.printf("%-12s %10s %8s %10s %10s %10s %10s %10s%n", "operation", "count", "errors", "ops/s",
+			"p50 ms", "p99 ms", "p999 ms", "max ms");
+		for (Map.Entry<String, OpStats> e : _stats.entrySet()) {
+			LatencyHistogram h = e.getValue().latency;
+			System.out.printf("%-12s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", e.getKey(), h.count(),
+				e.getValue().errors.sum(), h.count() / seconds, h.percentile(0.50) / 1e6,
+				h.percentile(0.99) / 1e6, h.percentile(0.999) / 1e6, h.max() / 1e6);
+		}
+	}
+
+	static int[] parseMix(String spec) {
+		int[] mix = new int[OPERATIONS.length];
+		for (String part : spec.split(",")) {
+			String[] kv = part.split(":");
+			int i = Arrays.asList(OPERATIONS).indexOf(kv[0].trim());
+			if (kv.length != 2 || i < 0) {
+				throw new IllegalArgumentException("--mix takes op:weight pairs of " + String.join(", ", OPERATIONS));
+			}
+			mix[i] = Integer.parseInt(kv[1].trim());
+		}
+		int total = 0;
+		for (int w : mix) {
+			total += Math.max(0, w);
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("--mix needs a positive weight");
+		}
+		return mix;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java [-classpath <classpath>] " + LoadGenerator.class.getName()
+				+ " <dbname> <port> <user> [--agents=64] [--virtual] [--pool=8] [--duration=30] [--warmup=5]"
+				+ " [--mix=book:20,seats:60,passengers:20] [--skew=1.0] [--flights=N] [--think=0]"
+				+ " [--report=load.json] [--keep]");
+			return;
+		}
+		Map<String, String> config = new LinkedHashMap<String, String>();
+		config.put("agents", "64");
+		config.put("threads", "platform");
+		config.put("pool", String.valueOf(DBproject.POOL_MAX));
+		config.put("duration", "30");
+		config.put("warmup", "5");
+		config.put("mix", "book:20,seats:60,passengers:20");
+		config.put("skew", "1.0");
+		config.put("flights", "0");
+		config.put("think", "0");
+		String report = null;
+		boolean keep = false;
+		for (int i = 3; i < args.length; ++i) {
+			String a = args[i];
+			int eq = a.indexOf('=');
+			String name = a.startsWith("--") ? a.substring(2, eq < 0 ? a.length() : eq) : "";
+			if (a.equals("--virtual")) {
+				config.put("threads", "virtual");
+			} else if (a.equals("--keep")) {
+				keep = true;
+			} else if (name.equals("report") && eq > 0) {
+				report = a.substring(eq + 1);
+			} else if (config.containsKey(name) && eq > 0 && !name.equals("threads")) {
+				config.put(name, a.substring(eq + 1));
+			} else {
+				System.err.println("Unknown option: " + a);
+				return;
+			}
+		}
+		int agents = Integer.parseInt(config.get("agents"));
+		boolean virtual = config.get("threads").equals("virtual");
+		if (virtual && !VirtualThreads.available()) {
+			System.err.println("Virtual threads need Java 21 or later; using platform threads");
+			config.put("threads", "platform");
+			virtual = false;
+		}
+		int[] mix = parseMix(config.get("mix"));
+
+		Class.forName("org.postgresql.Driver");
+		DBproject esql = new DBproject(args[0], args[1], args[2], "", 1, Integer.parseInt(config.get("pool")));
+		LoadGenerator load = null;
+		try {
+			//only flights with a plane can be booked
+			List<Integer> ids = esql.queryList(
+				"SELECT DISTINCT fi.flight_id FROM FlightInfo fi ORDER BY fi.flight_id", rs -> rs.getInt(1));
+			if (ids.isEmpty()) {
+				System.err.println("No flights with a plane; load data/ first");
+				System.exit(1);
+			}
+			//popularity rank is unrelated to the flight number
+			Collections.shuffle(ids, new Random(7));
+			int limit = Integer.parseInt(config.get("flights"));
+			if (limit > 0 && limit < ids.size()) {
+				ids = ids.subList(0, limit);
+			}
+			int[] flights = new int[ids.size()];
+			for (int i = 0; i < flights.length; ++i) {
+				flights[i] = ids.get(i);
+			}
+			config.put("flights", String.valueOf(flights.length));
+			int firstCustomer = esql.queryInt("SELECT COALESCE(MAX(id), 0) + 1 FROM Customer");
+
+			load = new LoadGenerator(esql, flights, Double.parseDouble(config.get("skew")), mix,
+				Long.parseLong(config.get("think")), firstCustomer);
+			System.out.printf("%d %s agents over %d flights (skew %s), pool of %s connections, %ss warmup + %ss%n",
+				agents, config.get("threads"), flights.length, config.get("skew"), config.get("pool"),
+				config.get("warmup"), config.get("duration"));
+			double seconds = load.run(agents, virtual, Integer.parseInt(config.get("warmup")),
+				Integer.parseInt(config.get("duration")));
+			load.printSummary(seconds);
+			System.out.println(esql.getPoolStats());
+			System.out.println(esql.getSeatCacheStats());
+			if (report != null) {
+				try (Writer w = Files.newBufferedWriter(Paths.get(report), StandardCharsets.UTF_8)) {
+					load.writeReport(w, config, seconds);
+				}
+				System.out.println("Report written to " + report);
+			}
+		} finally {
+			if (load != null && !keep) {
+				load.cleanup();
+			}
+			esql.cleanup();
+		}
+	}//end main
+}
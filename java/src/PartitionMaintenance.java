@@ -0,0 +1,164 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maintenance job for the partitioned schema (create_partitioned.sql).
+ * Every pass creates the month partitions of Flight, Schedule and
+ * reservation_part up to monthsAhead months from now, so new flights never
+ * land in the DEFAULT partitions, and detaches the months that ended more
+ * than keepMonths months before the current one.  Detached months are moved
+ * to schema archive, where they can still be queried or dumped, or dropped.
+ *
+ * Queries by flight or reservation number probe every attached partition,
+ * so archiving is what keeps the hot paths on a few recent months.
+ * Detaching briefly locks the parent tables; run the job off-peak.
+ *
+ */
+
+public class PartitionMaintenance implements AutoCloseable {
+	//keepMonths that leaves every month attached
+	static final int KEEP_ALL = -1;
+
+	static final String IS_INSTALLED = "SELECT to_regclass('reservation_part') IS NOT NULL";
+	static final String CREATE_PARTITIONS = "SELECT create_month_partitions(CAST(? AS DATE), CAST(? AS DATE))";
+	static final String ARCHIVE_PARTITIONS = "SELECT archive_month_partitions(CAST(? AS DATE), ?)";
+
+	private final DBproject _esql;
+	private final int _monthsAhead;
+	private final int _keepMonths;
+	private final boolean _drop;
+	private final AtomicLong _created = new AtomicLong();
+	private final AtomicLong _archived = new AtomicLong();
+	private ScheduledExecutorService _scheduler = null;
+
+	/**
+	 * @param esql the database
+	 * @param monthsAhead months after the current one that get their partitions
+	 * @param keepMonths full months before the current one that stay attached,
+	 *        or KEEP_ALL
+	 * @param drop drop old months instead of moving them to schema archive
+	 */
+	public PartitionMaintenance(DBproject esql, int monthsAhead, int keepMonths, boolean drop) {
+		if (monthsAhead < 0 || (keepMonths < 0 && keepMonths != KEEP_ALL)) {
+			throw new IllegalArgumentException("Month counts cannot be negative: " + monthsAhead + ", " + keepMonths);
+		}
+		this._esql = esql;
+		this._monthsAhead = monthsAhead;
+		this._keepMonths = keepMonths;
+		this._drop = drop;
+	}
+
+	/**
+	 * @param esql the database
+	 * @return true when the database was created with create_partitioned.sql
+	 * @throws java.sql.SQLException when the catalog cannot be read
+	 */
+	static boolean installed(DBproject esql) throws SQLException {
+		return esql.queryBoolean(IS_INSTALLED);
+	}
+
+	/**
+	 * Method to create the missing month partitions of a date range.
+	 *
+	 * @param first a day of the first month
+	 * @param last a day of the last month
+	 * @return the names of the partitions created
+	 * @throws java.sql.SQLException when a partition cannot be created
+	 */
+	public List<String> createPartitions(LocalDate first, LocalDate last) throws SQLException {
+		return _esql.queryList(CREATE_PARTITIONS, rs -> rs.getString(1), first.toString(), last.toString());
+	}
+
+	/**
+	 * Method to detach the month partitions ending on or before a date.
+	 *
+	 * @param cutoff the first day that stays attached
+	 * @return the names of the partitions archived or dropped
+	 * @throws java.sql.SQLException when a partition cannot be detached
+	 */
+	public List<String> archivePartitions(LocalDate cutoff) throws SQLException {
+		return _esql.queryList(ARCHIVE_PARTITIONS, rs -> rs.getString(1), cutoff.toString(), _drop);
+	}
+
+	/**
+	 * Method to run one pass: create the coming months and archive the old
+	 * ones.
+	 *
+	 * @return the number of partitions created and archived
+	 * @throws java.sql.SQLException when the schema is not partitioned or a
+	 *         partition cannot be created or detached
+	 */
+	public int pass() throws SQLException {
+		if (!installed(_esql)) {
+			throw new SQLException("The database was created with create.sql; partitions need create_partitioned.sql");
+		}
+		LocalDate today = LocalDate.now();
+		List<String> created = createPartitions(today, today.plusMonths(_monthsAhead));
+		List<String> archived = _keepMonths == KEEP_ALL ? new ArrayList<String>()
+			: archivePartitions(today.withDayOfMonth(1).minusMonths(_keepMonths));
+		for (String name : created) {
+			DBproject.log.println("Created partition " + name);
+		}
+		for (String name : archived) {
+			DBproject.log.println((_drop ? "Dropped partition " : "Archived partition ") + name);
+		}
+		_created.addAndGet(created.size());
+		_archived.addAndGet(archived.size());
+		return created.size() + archived.size();
+	}//end pass
+
+	/**
+	 * Method to run a pass now and then every interval on a daemon thread.
+	 *
+	 * @param intervalMillis pause between the passes
+	 */
+	public synchronized void start(long intervalMillis) {
+		if (intervalMillis < 1) {
+			throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+		}
+		if (_scheduler != null) {
+			return;
+		}
+		_scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "partition-maintenance");
+			t.setDaemon(true);
+			return t;
+		});
+		_scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				pass();
+			} catch (SQLException e) {
+				//retried on the next pass
+				System.err.println("Partition maintenance failed: " + e.getMessage());
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}//end start
+
+	public long getCreated() {
+		return _created.get();
+	}
+
+	public long getArchived() {
+		return _archived.get();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (_scheduler == null) {
+			return;
+		}
+		_scheduler.shutdown();
+		try {
+			_scheduler.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_scheduler = null;
+	}
+}
@@ -0,0 +1,427 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Online migration of a database created with create.sql to the partitioned
+ * schema of create_partitioned.sql.  The application keeps running on the
+ * old tables until the cutover:
+ *
+ *   prepare  builds the partitioned schema next to public, in schema
+ *            "partitioned", with a partition per month of the existing data,
+ *            and installs triggers logging the key of every row changed in
+ *            the old tables to public.partition_migration_log
+ *   copy     copies the old tables in key order, chunk by chunk, each chunk
+ *            in its own short transaction.  All chunks read one snapshot,
+ *            taken after the triggers were installed, so the copy is
+ *            consistent and every later change is in the log
+ *   catchup  replays the logged keys: the rows are deleted from the new
+ *            tables and copied again from the old ones, whole source
+ *            transactions at a time.  It can be run repeatedly
+ *   cutover  blocks writes to the old tables, replays the rest of the log,
+ *            moves the sequence past the old one and swaps the schemas: the
+ *            old tables become schema classic and the new ones public.  Writes
+ *            still aimed at the old tables then fail; statements prepared
+ *            before are planned again against the new tables
+ *   migrate  all of the above
+ *   abort    drops schema partitioned, the log and its triggers
+ *
+ * Writers pay one log insert per changed row while the migration runs.
+ * The copy holds its snapshot open until the last chunk, which holds back
+ * vacuum on the whole database.  TRUNCATE of the old tables is not logged
+ * and must not be used before the cutover.  The cutover renames schema
+ * public, so the user needs to own it.
+ *
+ * Usage: java PartitionMigrator <dbname> <port> <user> prepare|copy|catchup|cutover|migrate|abort
+ *            [--schema=../sql/create_partitioned.sql] [--chunk=10000] [--months-ahead=3]
+ *
+ */
+
+public class PartitionMigrator {
+	static final String TARGET = "partitioned";
+	static final String CLASSIC = "classic";
+
+	/**
+	 * One table and how its rows are copied to the partitioned schema.
+	 */
+	static final class Table {
+		final String name;
+		final String key;
+		final String columns;
+		//the partitioned table written, and its values computed from the old row s
+		final String target;
+		final String targetColumns;
+		final String values;
+		final String join;
+
+		Table(DataLoader.TableSpec spec) {
+			this(spec, spec.table, spec.columns, "s." + spec.columns.replace(", ", ", s."), "");
+		}
+
+		Table(DataLoader.TableSpec spec, String target, String targetColumns, String values, String join) {
+			this.name = spec.table.toLowerCase();
+			this.key = spec.columns.substring(0, spec.columns.indexOf(','));
+			this.columns = spec.columns;
+			this.target = target;
+			this.targetColumns = targetColumns;
+			this.values = values;
+			this.join = join;
+		}
+	}
+
+	//in foreign key order; every table's key is its first column
+	static final List<Table> TABLES = new ArrayList<Table>();
+	static {
+		for (DataLoader.TableSpec spec : DataLoader.INDEPENDENT) {
+			TABLES.add(new Table(spec));
+		}
+		for (DataLoader.TableSpec spec : DataLoader.DEPENDENT) {
+			if (spec.table.equals("Reservation")) {
+				//the reservations are stored with the departure date of their flight
+				TABLES.add(new Table(spec, "reservation_part", spec.columns + ", departure_date",
+					"s.rnum, s.cid, s.fid, s.status, d.departure_date", " JOIN " + TARGET + ".flight_numbers d ON d.fnum = s.fid"));
+			} else {
+				TABLES.add(new Table(spec));
+			}
+		}
+	}
+
+	static final String CREATE_LOG =
+		"CREATE TABLE public.partition_migration_log (" +
+		"  id BIGSERIAL PRIMARY KEY, xid BIGINT NOT NULL DEFAULT txid_current(), tbl TEXT NOT NULL, key INTEGER NOT NULL); " +
+		"CREATE INDEX partition_migration_log_xid ON public.partition_migration_log (xid); " +
+		"CREATE FUNCTION public.partition_migration_capture() RETURNS TRIGGER AS $capture$ " +
+		"BEGIN " +
+		"  IF TG_OP IN ('UPDATE', 'DELETE') THEN " +
+		"    INSERT INTO public.partition_migration_log (tbl, key) VALUES (TG_TABLE_NAME, (to_jsonb(OLD) ->> TG_ARGV[0])::INTEGER); " +
+		"  END IF; " +
+		"  IF TG_OP IN ('INSERT', 'UPDATE') THEN " +
+		"    INSERT INTO public.partition_migration_log (tbl, key) VALUES (TG_TABLE_NAME, (to_jsonb(NEW) ->> TG_ARGV[0])::INTEGER); " +
+		"  END IF; " +
+		"  RETURN NULL; " +
+		"END; $capture$ LANGUAGE plpgsql";
+	static final String DROP_LOG =
+		"DROP TABLE IF EXISTS public.partition_migration_log; " +
+		"DROP FUNCTION IF EXISTS public.partition_migration_capture() CASCADE";
+	//refuses writes that still reach the old tables after the cutover
+	static final String CREATE_MOVED =
+		"CREATE FUNCTION public.partition_migration_moved() RETURNS TRIGGER AS $moved$ " +
+		"BEGIN " +
+		"  RAISE EXCEPTION '% moved to the partitioned schema; reconnect to write to it', TG_TABLE_NAME; " +
+		"END; $moved$ LANGUAGE plpgsql";
+	//the month partitions covering the old data and the coming months
+	static final String CREATE_PARTITIONS =
+		"SELECT " + TARGET + ".create_month_partitions(" +
+		"  LEAST((SELECT MIN(actual_departure_date) FROM public.flight), (SELECT MIN(departure_time) FROM public.schedule), CURRENT_DATE), " +
+		"  GREATEST((SELECT MAX(actual_departure_date) FROM public.flight), (SELECT MAX(departure_time) FROM public.schedule), " +
+		"    (CURRENT_DATE + CAST(? AS INTEGER) * INTERVAL '1 month')::DATE))";
+	//the triggers of the new tables name their tables unqualified
+	static final String SEARCH_PATH = "SET LOCAL search_path = " + TARGET + ", public";
+	//takes the log entries of the transactions that wrote the oldest entries
+	static final String TAKE_LOG =
+		"WITH d AS (DELETE FROM public.partition_migration_log WHERE xid IN " +
+		"  (SELECT xid FROM public.partition_migration_log ORDER BY id LIMIT ?) RETURNING tbl, key) " +
+		"SELECT DISTINCT tbl, key FROM d";
+
+	private final DBproject _esql;
+	private final int _chunk;
+
+	public PartitionMigrator(DBproject esql, int chunk) {
+		if (chunk < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunk);
+		}
+		this._esql = esql;
+		this._chunk = chunk;
+	}
+
+	/**
+	 * Method to create the partitioned schema and start logging changes.
+	 *
+	 * @param script create_partitioned.sql
+	 * @param monthsAhead months after the current one that get a partition
+	 * @throws java.lang.Exception when the script cannot be read or run
+	 */
+	public void prepare(File script, final int monthsAhead) throws Exception {
+		final String ddl = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+		_esql.executeInTransaction(pc -> {
+			try (Statement stmt = pc.getConnection().createStatement()) {
+				stmt.execute("CREATE SCHEMA " + TARGET);
+				//only the new schema is visible, so the script's DROPs cannot reach public
+				stmt.execute("SET LOCAL search_path = " + TARGET);
+				stmt.execute(ddl);
+			}
+			int created = 0;
+			try (PreparedStatement partitions = pc.getConnection().prepareStatement(CREATE_PARTITIONS)) {
+				partitions.setInt(1, monthsAhead);
+				try (ResultSet rs = partitions.executeQuery()) {
+					while (rs.next()) {
+						created++;
+					}
+				}
+			}
+			try (Statement stmt = pc.getConnection().createStatement()) {
+				stmt.execute(CREATE_LOG);
+				for (Table t : TABLES) {
+					stmt.execute("CREATE TRIGGER partition_migration_capture AFTER INSERT OR UPDATE OR DELETE ON public."
+						+ t.name + " FOR EACH ROW EXECUTE PROCEDURE public.partition_migration_capture('" + t.key + "')");
+				}
+			}
+			System.out.println("Created schema " + TARGET + " with " + created + " month partitions; logging changes");
+			return null;
+		});
+	}//end prepare
+
+	/**
+	 * Method to copy every table in chunks from one snapshot.
+	 *
+	 * @return rows copied per table
+	 * @throws java.sql.SQLException when a chunk failed; the copy can be run
+	 *         again, rows already copied are skipped
+	 */
+	public Map<String, Long> copy() throws SQLException {
+		//the snapshot stays valid while the transaction exporting it is open
+		return _esql.executeInTransaction(pc -> {
+			String snapshot;
+			try (Statement stmt = pc.getConnection().createStatement()) {
+				stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+				try (ResultSet rs = stmt.executeQuery("SELECT pg_export_snapshot()")) {
+					rs.next();
+					snapshot = rs.getString(1);
+				}
+			}
+			Map<String, Long> rows = new LinkedHashMap<String, Long>();
+			for (Table t : TABLES) {
+				long start = System.nanoTime();
+				rows.put(t.name, copyTable(t, snapshot));
+				System.out.printf("%-12s %8d rows in %6.2f s%n", t.name, rows.get(t.name), (System.nanoTime() - start) / 1e9);
+			}
+			return rows;
+		});
+	}//end copy
+
+	private long copyTable(final Table t, final String snapshot) throws SQLException {
+		//ON CONFLICT DO NOTHING lets an interrupted copy start over
+		final String sql =
+			"WITH s AS (SELECT " + t.columns + " FROM public." + t.name + " WHERE " + t.key + " > ? ORDER BY " + t.key + " LIMIT ?), " +
+			"c AS (INSERT INTO " + TARGET + "." + t.target + " (" + t.targetColumns + ") SELECT " + t.values + " FROM s" + t.join +
+			"  ON CONFLICT DO NOTHING) " +
+			"SELECT COUNT(*), MAX(" + t.key + ") FROM s";
+		long total = 0;
+		int last = Integer.MIN_VALUE;
+		while (true) {
+			final int after = last;
+			long[] chunk = _esql.executeInTransaction(pc -> {
+				try (Statement stmt = pc.getConnection().createStatement()) {
+					stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+					stmt.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+					stmt.execute(SEARCH_PATH);
+				}
+				PreparedStatement copy = pc.prepare(sql);
+				copy.setInt(1, after);
+				copy.setInt(2, _chunk);
+				try (ResultSet rs = copy.executeQuery()) {
+					rs.next();
+					return new long[] { rs.getLong(1), rs.getLong(2) };
+				}
+			});
+			if (chunk[0] == 0) {
+				return total;
+			}
+			total += chunk[0];
+			last = (int) chunk[1];
+		}
+	}//end copyTable
+
+	/**
+	 * Method to replay the change log until it is empty.
+	 *
+	 * @return the number of keys copied again
+	 * @throws java.sql.SQLException when a replay failed; its log entries are kept
+	 */
+	public long catchup() throws SQLException {
+		long total = 0;
+		while (true) {
+			int keys = _esql.executeInTransaction(pc -> replay(pc.getConnection()));
+			if (keys == 0) {
+				return total;
+			}
+			total += keys;
+		}
+	}
+
+	/**
+	 * Method to replay one window of the log in the caller's transaction:
+	 * the logged rows are deleted from the new tables, children first, and
+	 * copied again from the old ones, parents first.  Foreign keys are only
+	 * checked at commit, when both sides are back.
+	 *
+	 * @return the number of keys replayed, 0 when the log is empty
+	 */
+	int replay(Connection conn) throws SQLException {
+		Map<String, List<Integer>> keys = new LinkedHashMap<String, List<Integer>>();
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute(SEARCH_PATH);
+			stmt.execute("SET CONSTRAINTS ALL DEFERRED");
+		}
+		int count = 0;
+		try (PreparedStatement take = conn.prepareStatement(TAKE_LOG)) {
+			take.setInt(1, _chunk);
+			try (ResultSet rs = take.executeQuery()) {
+				while (rs.next()) {
+					keys.computeIfAbsent(rs.getString(1), k -> new ArrayList<Integer>()).add(rs.getInt(2));
+					count++;
+				}
+			}
+		}
+		for (int i = TABLES.size() - 1; i >= 0; --i) {
+			Table t = TABLES.get(i);
+			if (keys.containsKey(t.name)) {
+				execute(conn, "DELETE FROM " + TARGET + "." + t.target + " WHERE " + t.key + " = ANY (?)", keys.get(t.name));
+			}
+		}
+		for (Table t : TABLES) {
+			if (keys.containsKey(t.name)) {
+				execute(conn, "INSERT INTO " + TARGET + "." + t.target + " (" + t.targetColumns + ") SELECT " + t.values
+					+ " FROM public." + t.name + " s" + t.join + " WHERE s." + t.key + " = ANY (?)", keys.get(t.name));
+			}
+		}
+		return count;
+	}//end replay
+
+	private static void execute(Connection conn, String sql, List<Integer> keys) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setArray(1, conn.createArrayOf("int4", keys.toArray()));
+			stmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * Method to switch the application over to the partitioned tables.
+	 *
+	 * @throws java.sql.SQLException when the cutover failed; nothing is changed then
+	 */
+	public void cutover() throws SQLException {
+		_esql.executeInTransaction(pc -> {
+			Connection conn = pc.getConnection();
+			StringBuilder tables = new StringBuilder();
+			for (Table t : TABLES) {
+				tables.append(tables.length() == 0 ? "" : ", ").append("public.").append(t.name);
+			}
+			try (Statement stmt = conn.createStatement()) {
+				//readers go on, writers wait for the swap
+				stmt.execute("LOCK TABLE " + tables + " IN EXCLUSIVE MODE");
+			}
+			long replayed = 0;
+			for (int keys; (keys = replay(conn)) != 0; ) {
+				replayed += keys;
+			}
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute("SELECT setval('" + TARGET + ".rnum_seq', GREATEST(nextval('public.rnum_seq'), "
+					+ "(SELECT COALESCE(MAX(rnum), 0) + 1 FROM " + TARGET + ".reservation_part)), false)");
+				stmt.execute(DROP_LOG);
+				stmt.execute(CREATE_MOVED);
+				for (Table t : TABLES) {
+					//also invalidates the plans of statements prepared on the old table
+					stmt.execute("CREATE TRIGGER partition_migration_moved BEFORE INSERT OR UPDATE OR DELETE ON public."
+						+ t.name + " FOR EACH STATEMENT EXECUTE PROCEDURE public.partition_migration_moved()");
+				}
+				stmt.execute("ALTER SCHEMA public RENAME TO " + CLASSIC);
+				stmt.execute("ALTER SCHEMA " + TARGET + " RENAME TO public");
+			}
+			System.out.println("Replayed " + replayed + " keys; the old tables are in schema " + CLASSIC);
+			return null;
+		});
+	}//end cutover
+
+	/**
+	 * Method to undo prepare, copy and catchup before the cutover.
+	 */
+	public void abort() throws SQLException {
+		_esql.executeInTransaction(pc -> {
+			try (Statement stmt = pc.getConnection().createStatement()) {
+				stmt.execute(DROP_LOG);
+				stmt.execute("DROP SCHEMA IF EXISTS " + TARGET + " CASCADE");
+			}
+			return null;
+		});
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 4) {
+			System.err.println("Usage: java [-classpath <classpath>] " + PartitionMigrator.class.getName()
+				+ " <dbname> <port> <user> prepare|copy|catchup|cutover|migrate|abort"
+				+ " [--schema=../sql/create_partitioned.sql] [--chunk=10000] [--months-ahead=3]");
+			return;
+		}
+		String step = args[3];
+		File script = new File("../sql/create_partitioned.sql");
+		int chunk = 10000;
+		int monthsAhead = 3;
+		for (int i = 4; i < args.length; ++i) {
+			if (args[i].startsWith("--schema=")) {
+				script = new File(args[i].substring("--schema=".length()));
+			} else if (args[i].startsWith("--chunk=")) {
+				chunk = Integer.parseInt(args[i].substring("--chunk=".length()));
+			} else if (args[i].startsWith("--months-ahead=")) {
+				monthsAhead = Integer.parseInt(args[i].substring("--months-ahead=".length()));
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		DBproject esql = null;
+		int exitCode = 0;
+		try {
+			Class.forName("org.postgresql.Driver");
+			//copy holds one connection for its snapshot and copies on another
+			esql = new DBproject(args[0], args[1], args[2], "", 2, 2);
+			PartitionMigrator migrator = new PartitionMigrator(esql, chunk);
+			switch (step) {
+				case "prepare":
+					migrator.prepare(script, monthsAhead);
+					break;
+				case "copy":
+					migrator.copy();
+					break;
+				case "catchup":
+					System.out.println("Replayed " + migrator.catchup() + " keys");
+					break;
+				case "cutover":
+					migrator.cutover();
+					break;
+				case "migrate":
+					migrator.prepare(script, monthsAhead);
+					migrator.copy();
+					System.out.println("Replayed " + migrator.catchup() + " keys");
+					migrator.cutover();
+					break;
+				case "abort":
+					migrator.abort();
+					break;
+				default:
+					System.err.println("Unknown step: " + step);
+					exitCode = 1;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			exitCode = 1;
+		} finally {
+			if (esql != null) {
+				esql.cleanup();
+			}
+		}
+		if (exitCode != 0) {
+			System.exit(exitCode);
+		}
+	}//end main
+}
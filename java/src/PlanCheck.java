@@ -0,0 +1,304 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plan regression check for the indexes in create.sql.  For each data set
+ * (the shipped data/ and SyntheticData sets at the given scale factors) it
+ * loads the data, runs ANALYZE and then EXPLAIN (FORMAT JSON) on every menu
+ * query, and asserts the access paths the indexes were created for: an
+ * expected index must appear as an Index, Index Only or Bitmap Index scan,
+ * and some relations must not be read at all (reports 7 and 8 must use
+ * the repair aggregates, not Repairs, and query 9 its counters).
+ *
+ * It then lists secondary indexes that no menu query used at any scale,
+ * and indexes made redundant by another index on a prefix-equal key (e.g.
+ * a plain index duplicating a primary key), which only add write cost.
+ * Failed assertions and redundant indexes make it exit with status 1;
+ * unused indexes are reported but only fail the run with --strict.
+ *
+ * WARNING: every data set is loaded with TRUNCATE; the shipped data is
+ * loaded again at the end.
+ *
+ * Usage: java PlanCheck <dbname> <port> <user> [--scales=1,10] [--data=../data] [--strict]
+ *
+ */
+
+public class PlanCheck {
+	/**
+	 * One menu query and the plan it must have.
+	 */
+	static final class Expectation {
+		final String name;
+		final String sql;
+		final Object[] params;
+		final String[] indexes;
+		final String[] forbiddenRelations;
+
+		Expectation(String name, String sql, Object[] params, String[] indexes, String[] forbiddenRelations) {
+			this.name = name;
+			this.sql = sql;
+			this.params = params;
+			this.indexes = indexes;
+			this.forbiddenRelations = forbiddenRelations;
+		}
+	}
+
+	static final String[] NONE = {};
+
+	//the tables created by create.sql
+	static final String[] TABLES = { "customer", "pilot", "flight", "plane", "technician", "reservation",
+		"flightinfo", "repairs", "schedule", "repairs_per_plane", "repairs_per_year", "flight_status_counts" };
+
+	static final String FIND_INDEXES =
+		"SELECT t.relname, ic.relname, i.indkey::text, i.indisunique, " +
+		"  i.indexprs IS NULL AND i.indpred IS NULL AND am.amname = 'btree', " +
+		"  EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conindid = i.indexrelid), " +
+		"  COALESCE(s.idx_scan, 0) " +
+		"FROM pg_index i JOIN pg_class ic ON ic.oid = i.indexrelid JOIN pg_class t ON t.oid = i.indrelid " +
+		"JOIN pg_am am ON am.oid = ic.relam LEFT JOIN pg_stat_user_indexes s ON s.indexrelid = i.indexrelid " +
+		"WHERE t.relname = ANY (?) AND t.relnamespace = 'public'::regnamespace ORDER BY t.relname, ic.relname";
+
+	private final DBproject _esql;
+	//index name -> expectations whose plans used it, over every data set
+	private final Map<String, Set<String>> _usedBy = new LinkedHashMap<String, Set<String>>();
+	private int _failures = 0;
+
+	public PlanCheck(DBproject esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to build the expectations with parameters taken from the
+	 * loaded data, so lookups hit existing rows.
+	 */
+	List<Expectation> expectations() throws SQLException {
+		int flight = _esql.queryInt("SELECT MIN(flight_id) FROM FlightInfo");
+		List<Expectation> list = new ArrayList<Expectation>();
+		list.add(new Expectation("seats (query 6)", DBproject.LOAD_SEATS, new Object[] { flight },
+			new String[] { "flight_pkey", "flightinfo_id", "flight_frm_schedule" }, NONE));
+		list.add(new Expectation("book flight", DBproject.BOOK_FLIGHT, new Object[] { -1, "F", "L", "M",
+				"1990-01-01", "A", "5555555555", "92507", flight, -1, flight },
+			new String[] { "flight_pkey", "flightinfo_id" }, NONE));
+		list.add(new Expectation("repairs per plane (query 7)", DBproject.QUERY7, new Object[0],
+			NONE, new String[] { "repairs" }));
+		list.add(new Expectation("repairs per year (query 8)", DBproject.QUERY8, new Object[0],
+			NONE, new String[] { "repairs" }));
+		list.add(new Expectation("passengers (query 9)", DBproject.QUERY9, new Object[] { flight, "R" },
+			new String[] { "flight_status_counts_pkey" }, new String[] { "reservation" }));
+		list.add(new Expectation("waitlist promotion", DBproject.PROMOTE_WAITLIST, new Object[] { flight },
+			new String[] { "flight_pkey", "reservation_waitlist" }, NONE));
+		list.add(new Expectation("import lock", BookingImporter.LOCK_FLIGHTS, new Object[] { new Integer[] { flight } },
+			new String[] { "flight_pkey", "flightinfo_id" }, NONE));
+		return list;
+	}//end expectations
+
+	/**
+	 * Method to explain every menu query on the loaded data set and check
+	 * its plan.
+	 *
+	 * @param label the data set, for the report
+	 * @throws java.sql.SQLException when a query cannot be explained
+	 */
+	void checkPlans(String label) throws SQLException {
+		_esql.executeUpdate("ANALYZE");
+		for (Expectation e : expectations()) {
+			Set<String> indexes = new LinkedHashSet<String>();
+			Set<String> relations = new LinkedHashSet<String>();
+			collect(explain(e), indexes, relations);
+			for (String index : indexes) {
+				_usedBy.computeIfAbsent(index, k -> new LinkedHashSet<String>()).add(e.name);
+			}
+			List<String> problems = new ArrayList<String>();
+			for (String index : e.indexes) {
+				if (!indexes.contains(index)) {
+					problems.add("does not use " + index);
+				}
+			}
+			for (String relation : e.forbiddenRelations) {
+				if (relations.contains(relation)) {
+					problems.add("reads " + relation);
+				}
+			}
+			System.out.printf("[%s] %-28s %s  indexes %s%n", label, e.name,
+				problems.isEmpty() ? "OK  " : "FAIL", indexes);
+			for (String p : problems) {
+				System.out.println("        " + p);
+				_failures++;
+			}
+		}
+	}//end checkPlans
+
+	//EXPLAIN without ANALYZE plans the statement but does not run it
+	private Object explain(final Expectation e) throws SQLException {
+		return _esql.executeInTransaction(pc -> {
+			Connection conn = pc.getConnection();
+			Object[] params = e.params.clone();
+			for (int i = 0; i < params.length; ++i) {
+				if (params[i] instanceof Integer[]) {
+					params[i] = conn.createArrayOf("int4", (Object[]) params[i]);
+				}
+			}
+			try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN (FORMAT JSON) " + e.sql)) {
+				DBproject.bind(stmt, params);
+				try (ResultSet rs = stmt.executeQuery()) {
+					rs.next();
+					return Json.parse(rs.getString(1));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Method to walk a JSON plan and gather the indexes scanned and the
+	 * relations read by any node, including subplans and CTEs.
+	 */
+	@SuppressWarnings("unchecked")
+	static void collect(Object node, Set<String> indexes, Set<String> relations) {
+		if (node instanceof List) {
+			for (Object child : (List<Object>) node) {
+				collect(child, indexes, relations);
+			}
+			return;
+		}
+		if (!(node instanceof Map)) {
+			return;
+		}
+		Map<String, Object> map = (Map<String, Object>) node;
+		Object index = map.get("Index Name");
+		if (index != null) {
+			indexes.add((String) index);
+		}
+		Object relation = map.get("Relation Name");
+		if (relation != null) {
+			relations.add(((String) relation).toLowerCase());
+		}
+		for (Object value : map.values()) {
+			if (value instanceof List || value instanceof Map) {
+				collect(value, indexes, relations);
+			}
+		}
+	}//end collect
+
+	/**
+	 * Method to report secondary indexes no menu query used and indexes
+	 * whose key is a prefix of (or equal to) another index's key.
+	 *
+	 * @param strict count unused indexes as failures
+	 */
+	void checkIndexes(boolean strict) throws SQLException {
+		final List<String[]> rows = new ArrayList<String[]>();
+		_esql.executeInTransaction(pc -> {
+			PreparedStatement find = pc.prepare(FIND_INDEXES);
+			find.setArray(1, pc.getConnection().createArrayOf("text", TABLES));
+			try (ResultSet rs = find.executeQuery()) {
+				while (rs.next()) {
+					rows.add(new String[] { rs.getString(1), rs.getString(2), rs.getString(3),
+						String.valueOf(rs.getBoolean(4)), String.valueOf(rs.getBoolean(5)),
+						String.valueOf(rs.getBoolean(6)), rs.getString(7) });
+				}
+			}
+			return null;
+		});
+
+		System.out.println("\nIndex usage by the menu queries:");
+		for (String[] r : rows) {
+			Set<String> users = _usedBy.get(r[1]);
+			boolean constraint = Boolean.parseBoolean(r[5]);
+			String note;
+			if (users != null) {
+				note = "used by " + users;
+			} else if (constraint) {
+				note = "not used by menu queries (backs a constraint)";
+			} else {
+				note = "UNUSED by every menu query";
+				if (strict) {
+					_failures++;
+				}
+			}
+			System.out.printf("  %-14s %-26s idx_scan %-8s %s%n", r[0], r[1], r[6], note);
+		}
+
+		//an index is redundant when a plain btree on the same table starts with the same key
+		for (String[] a : rows) {
+			if (!Boolean.parseBoolean(a[4]) || Boolean.parseBoolean(a[5])) {
+				continue;
+			}
+			for (String[] b : rows) {
+				if (a == b || !a[0].equals(b[0]) || !Boolean.parseBoolean(b[4])) {
+					continue;
+				}
+				List<String> ka = Arrays.asList(a[2].split(" "));
+				List<String> kb = Arrays.asList(b[2].split(" "));
+				boolean prefix = kb.size() >= ka.size() && kb.subList(0, ka.size()).equals(ka);
+				boolean aUnique = Boolean.parseBoolean(a[3]);
+				//a unique index is only covered by an index that is unique on the same key
+				if (prefix && (!aUnique || (Boolean.parseBoolean(b[3]) && kb.size() == ka.size()))) {
+					System.out.printf("REDUNDANT: %s on %s is covered by %s%n", a[1], a[0], b[1]);
+					_failures++;
+					break;
+				}
+			}
+		}
+	}//end checkIndexes
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java [-classpath <classpath>] " + PlanCheck.class.getName()
+				+ " <dbname> <port> <user> [--scales=1,10] [--data=../data] [--strict]");
+			return;
+		}
+		String data = "../data";
+		String[] scales = { "1", "10" };
+		boolean strict = false;
+		for (int i = 3; i < args.length; ++i) {
+			if (args[i].startsWith("--scales=")) {
+				scales = args[i].substring("--scales=".length()).split(",");
+			} else if (args[i].startsWith("--data=")) {
+				data = args[i].substring("--data=".length());
+			} else if (args[i].equals("--strict")) {
+				strict = true;
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		Class.forName("org.postgresql.Driver");
+		int threads = Math.max(DataLoader.INDEPENDENT.length, DataLoader.DEPENDENT.length);
+		DBproject esql = new DBproject(args[0], args[1], args[2], "", 1, threads);
+		PlanCheck check = new PlanCheck(esql);
+		try {
+			for (String scale : scales) {
+				int factor = Integer.parseInt(scale.trim());
+				File dir = new File(data);
+				if (factor > 1) {
+					dir = new File(System.getProperty("java.io.tmpdir"), "plancheck-x" + factor);
+					if (!dir.isDirectory() && !dir.mkdirs()) {
+						throw new IllegalStateException("Cannot create " + dir);
+					}
+					new SyntheticData(dir, factor, 1).generate();
+				}
+				new DataLoader(esql, dir, threads).load(true, false);
+				check.checkPlans("x" + factor);
+			}
+			check.checkIndexes(strict);
+		} finally {
+			new DataLoader(esql, new File(data), threads).load(true, false);
+			esql.cleanup();
+		}
+		System.out.println(check._failures == 0 ? "\nOK: plans use their indexes" : "\nFAILED: " + check._failures + " problems");
+		if (check._failures != 0) {
+			System.exit(1);
+		}
+	}//end main
+}
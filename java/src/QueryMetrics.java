@@ -0,0 +1,284 @@
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per query shape counters for the DBproject execute methods: calls,
+ * errors, rows returned and affected, and a latency histogram.  A shape is
+ * the SQL text with literals replaced by '?', so parameterised statements
+ * and the same statement written with different literal values are counted
+ * together.
+ *
+ * The hot path is one map lookup on the SQL string (String caches its hash)
+ * plus a few LongAdder and histogram increments; the literal stripping runs
+ * only the first time a SQL string is seen.  The counters are published
+ * over JMX and can be written to a file with dump().
+ *
+ */
+
+public class QueryMetrics implements QueryMetricsMXBean {
+	//distinct SQL strings remembered before new ones are normalised on every call
+	static final int MAX_SQL_STRINGS = 10000;
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	/**
+	 * Counters of one query shape.
+	 */
+	public static final class Shape {
+		final String sql;
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LongAdder errors = new LongAdder();
+		final LongAdder rowsReturned = new LongAdder();
+		final LongAdder rowsAffected = new LongAdder();
+
+		Shape(String sql) {
+			this.sql = sql;
+		}
+
+		/**
+		 * Method to count a query that returned rows.
+		 *
+		 * @param startNanos System.nanoTime() when the call started
+		 * @param rows the number of rows returned
+		 */
+		public void returned(long startNanos, long rows) {
+			latency.record(System.nanoTime() - startNanos);
+			rowsReturned.add(rows);
+		}
+
+		/**
+		 * Method to count a statement that changed rows.
+		 *
+		 * @param startNanos System.nanoTime() when the call started
+		 * @param rows the number of rows affected
+		 */
+		public void affected(long startNanos, long rows) {
+			latency.record(System.nanoTime() - startNanos);
+			rowsAffected.add(rows);
+		}
+
+		/**
+		 * Method to count a failed call; its time goes into the histogram too.
+		 *
+		 * @param startNanos System.nanoTime() when the call started
+		 */
+		public void failed(long startNanos) {
+			latency.record(System.nanoTime() - startNanos);
+			errors.increment();
+		}
+	}//end Shape
+
+	/**
+	 * Read-only copy of one shape's counters, in milliseconds.
+	 */
+	public static final class Snapshot {
+		private final String _sql;
+		private final long _calls;
+		private final long _errors;
+		private final long _rowsReturned;
+		private final long _rowsAffected;
+		private final double _totalMillis;
+		private final double _meanMillis;
+		private final double _p50Millis;
+		private final double _p99Millis;
+		private final double _maxMillis;
+
+		@ConstructorProperties({ "sql", "calls", "errors", "rowsReturned", "rowsAffected", "totalMillis",
+			"meanMillis", "p50Millis", "p99Millis", "maxMillis" })
+		public Snapshot(String sql, long calls, long errors, long rowsReturned, long rowsAffected,
+				double totalMillis, double meanMillis, double p50Millis, double p99Millis, double maxMillis) {
+			this._sql = sql;
+			this._calls = calls;
+			this._errors = errors;
+			this._rowsReturned = rowsReturned;
+			this._rowsAffected = rowsAffected;
+			this._totalMillis = totalMillis;
+			this._meanMillis = meanMillis;
+			this._p50Millis = p50Millis;
+			this._p99Millis = p99Millis;
+			this._maxMillis = maxMillis;
+		}
+
+		public String getSql() { return _sql; }
+		public long getCalls() { return _calls; }
+		public long getErrors() { return _errors; }
+		public long getRowsReturned() { return _rowsReturned; }
+		public long getRowsAffected() { return _rowsAffected; }
+		public double getTotalMillis() { return _totalMillis; }
+		public double getMeanMillis() { return _meanMillis; }
+		public double getP50Millis() { return _p50Millis; }
+		public double getP99Millis() { return _p99Millis; }
+		public double getMaxMillis() { return _maxMillis; }
+	}//end Snapshot
+
+	private final ConcurrentHashMap<String, Shape> _bySql = new ConcurrentHashMap<String, Shape>();
+	private final ConcurrentHashMap<String, Shape> _byShape = new ConcurrentHashMap<String, Shape>();
+	private ObjectName _name = null;
+
+	/**
+	 * Method to get the counters for a SQL string.
+	 *
+	 * @param sql the statement as passed to the execute method
+	 * @return the counters of its shape
+	 */
+	public Shape shape(String sql) {
+		Shape s = _bySql.get(sql);
+		if (s != null) {
+			return s;
+		}
+		s = _byShape.computeIfAbsent(normalize(sql), Shape::new);
+		//literal SQL could make the raw map grow without bound
+		if (_bySql.size() < MAX_SQL_STRINGS) {
+			_bySql.putIfAbsent(sql, s);
+		}
+		return s;
+	}//end shape
+
+	/**
+	 * Method to reduce a statement to its shape: string and numeric literals
+	 * become '?' and runs of whitespace a single space.
+	 *
+	 * @param sql the statement
+	 * @return the shape
+	 */
+	static String normalize(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+		int n = sql.length();
+		for (int i = 0; i < n; ++i) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				//skip to the closing quote; '' is an escaped quote
+				for (++i; i < n; ++i) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+							++i;
+						} else {
+							break;
+						}
+					}
+				}
+				sb.append('?');
+			} else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierChar(sb.charAt(sb.length() - 1)))) {
+				while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+					++i;
+				}
+				sb.append('?');
+			} else if (Character.isWhitespace(c)) {
+				if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+					sb.append(' ');
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+		int end = sb.length();
+		while (end > 0 && sb.charAt(end - 1) == ' ') {
+			--end;
+		}
+		sb.setLength(end);
+		return sb.toString();
+	}//end normalize
+
+	private static boolean isIdentifierChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	@Override
+	public long getTotalCalls() {
+		long n = 0;
+		for (Shape s : _byShape.values()) {
+			n += s.latency.count();
+		}
+		return n;
+	}
+
+	@Override
+	public long getTotalErrors() {
+		long n = 0;
+		for (Shape s : _byShape.values()) {
+			n += s.errors.sum();
+		}
+		return n;
+	}
+
+	@Override
+	public int getShapeCount() {
+		return _byShape.size();
+	}
+
+	@Override
+	public List<Snapshot> getShapes() {
+		List<Snapshot> list = new ArrayList<Snapshot>();
+		for (Shape s : _byShape.values()) {
+			LatencyHistogram h = s.latency;
+			long calls = h.count();
+			list.add(new Snapshot(s.sql, calls, s.errors.sum(), s.rowsReturned.sum(), s.rowsAffected.sum(),
+				h.mean() * calls / 1e6, h.mean() / 1e6, h.percentile(0.50) / 1e6, h.percentile(0.99) / 1e6,
+				h.max() / 1e6));
+		}
+		Collections.sort(list, (a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+		return list;
+	}//end getShapes
+
+	@Override
+	public void reset() {
+		_bySql.clear();
+		_byShape.clear();
+	}
+
+	/**
+	 * Method to publish the metrics on the platform MBean server.  Every
+	 * DBproject gets its own name so several can run in one JVM.
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			_name = new ObjectName("DBproject:type=QueryMetrics,name=db" + INSTANCES.incrementAndGet());
+			server.registerMBean(this, _name);
+		} catch (JMException e) {
+			System.err.println("Unable to register the query metrics MBean: " + e.getMessage());
+			_name = null;
+		}
+	}//end register
+
+	public void unregister() {
+		if (_name == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(_name);
+		} catch (JMException e) {
+			//already gone
+		}
+		_name = null;
+	}
+
+	/**
+	 * Method to write every shape as one line of tab separated figures,
+	 * highest total time first.
+	 *
+	 * @param out where to write
+	 * @throws java.io.IOException when the output cannot be written
+	 */
+	public void dump(Writer out) throws IOException {
+		out.write("calls\terrors\trows_returned\trows_affected\ttotal_ms\tmean_ms\tp50_ms\tp99_ms\tmax_ms\tsql\n");
+		for (Snapshot s : getShapes()) {
+			out.write(String.format(Locale.ROOT, "%d\t%d\t%d\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%s%n",
+				s.getCalls(), s.getErrors(), s.getRowsReturned(), s.getRowsAffected(), s.getTotalMillis(),
+				s.getMeanMillis(), s.getP50Millis(), s.getP99Millis(), s.getMaxMillis(), s.getSql()));
+		}
+		out.flush();
+	}//end dump
+}
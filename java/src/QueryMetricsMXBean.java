@@ -0,0 +1,25 @@
+import java.util.List;
+
+/**
+ * JMX view of QueryMetrics, registered as DBproject:type=QueryMetrics.
+ * Shows up in jconsole / VisualVM under the MBeans tab.
+ *
+ */
+
+public interface QueryMetricsMXBean {
+	long getTotalCalls();
+
+	long getTotalErrors();
+
+	int getShapeCount();
+
+	/**
+	 * @return one entry per query shape, highest total time first
+	 */
+	List<QueryMetrics.Snapshot> getShapes();
+
+	/**
+	 * Method to clear every counter, e.g. before a measurement.
+	 */
+	void reset();
+}
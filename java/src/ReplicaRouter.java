@@ -0,0 +1,259 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class holds the connection pool of a read replica and decides, per
+ * report query, whether the replica may answer it.  The replica's lag is
+ * measured at most once per check interval; while it is above the
+ * staleness bound, or the replica cannot be reached, reports go to the
+ * primary instead.  Reports read through the replica can therefore be up
+ * to maxLagMillis plus one check interval behind the primary.
+ *
+ * Lag is only measurable on a streaming standby (pg_is_in_recovery()).
+ * A standby whose WAL receiver is not streaming, e.g. because it lost its
+ * connection to the primary, stops falling visibly behind, so it is
+ * skipped; the database user needs pg_read_all_stats (or superuser) to see
+ * the receiver's status.  Any other instance, e.g. a second server
+ * refreshed by a dump, is only used when the bound is disabled with a
+ * negative maxLagMillis.
+ *
+ */
+
+public class ReplicaRouter implements AutoCloseable {
+	//whether the standby's WAL receiver is streaming, and the milliseconds its
+	//replay is behind; 0 when it has replayed all it received, which only
+	//means it is current while the receiver is streaming
+	static final String CHECK_LAG =
+		"SELECT pg_is_in_recovery(), EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming'), " +
+		"  CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+		"  WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+		"  ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 AS BIGINT) END";
+
+	//replica settings, read by fromProperties
+	static final String REPLICA_PORT = System.getProperty("dbproject.replica.port");
+	static final String REPLICA_HOST = System.getProperty("dbproject.replica.host", "localhost");
+	static final String REPLICA_DBNAME = System.getProperty("dbproject.replica.dbname");
+	static final int REPLICA_POOL_MAX = Integer.getInteger("dbproject.replica.pool.max", DBproject.POOL_MAX);
+	static final long REPLICA_MAX_LAG_MS = Long.getLong("dbproject.replica.maxLagMs", 5000L);
+	static final long REPLICA_CHECK_MS = Long.getLong("dbproject.replica.checkMs", 1000L);
+	//seconds, as pgjdbc takes them; a replica that stops answering fails rather than hangs
+	static final int REPLICA_CONNECT_TIMEOUT_S = Integer.getInteger("dbproject.replica.connectTimeout", 2);
+	static final int REPLICA_SOCKET_TIMEOUT_S = Integer.getInteger("dbproject.replica.socketTimeout", 30);
+
+	private final ConnectionPool _pool;
+	private final String _url;
+	private final long _maxLagMillis;
+	private final long _checkNanos;
+
+	//held by the one caller measuring the lag
+	private final ReentrantLock _checkLock = new ReentrantLock();
+	//result of the last check; _usable is only written under this
+	private volatile boolean _usable = false;
+	private volatile long _lagMillis = -1;
+	private volatile long _checkedAt;
+	private volatile String _reason = "not checked yet";
+
+	private final LongAdder _reads = new LongAdder();
+	private final LongAdder _fallbacks = new LongAdder();
+	private final LongAdder _failures = new LongAdder();
+	//only written under _checkLock
+	private volatile long _checks = 0;
+	//whether the route has been reported yet, guarded by this
+	private boolean _announced = false;
+
+	/**
+	 * Creates the replica pool.  No connection is opened until the first
+	 * check, so a replica that is down does not stop the application.
+	 *
+	 * @param url the JDBC connection URL of the replica
+	 * @param user the database user
+	 * @param passwd the database password
+	 * @param poolMax upper bound on open replica connections
+	 * @param maxLagMillis staleness bound, negative to use the replica whatever its lag
+	 * @param checkMillis how long a lag measurement is trusted
+	 * @throws java.sql.SQLException when the pool cannot be created
+	 */
+	public ReplicaRouter(String url, String user, String passwd, int poolMax, long maxLagMillis, long checkMillis)
+			throws SQLException {
+		if (checkMillis < 1) {
+			throw new IllegalArgumentException("Check interval must be positive: " + checkMillis);
+		}
+		this._url = url;
+		this._pool = new ConnectionPool(url, user, passwd, 0, poolMax, DBproject.POOL_IDLE_TIMEOUT_MS,
+			DBproject.POOL_MAX_WAIT_MS, DBproject.STATEMENT_CACHE_SIZE);
+		this._maxLagMillis = maxLagMillis;
+		this._checkNanos = TimeUnit.MILLISECONDS.toNanos(checkMillis);
+		this._checkedAt = System.nanoTime() - _checkNanos;
+	}
+
+	/**
+	 * Method to create the router configured with -Ddbproject.replica.port
+	 * (and optionally .host, .dbname, .pool.max, .maxLagMs, .checkMs,
+	 * .connectTimeout and .socketTimeout).
+	 *
+	 * @param dbname the primary's database name, used when the replica's is not set
+	 * @return the router, or null when no replica is configured
+	 * @throws java.sql.SQLException when the pool cannot be created
+	 */
+	static ReplicaRouter fromProperties(String dbname, String user, String passwd) throws SQLException {
+		if (REPLICA_PORT == null) {
+			return null;
+		}
+		String url = "jdbc:postgresql://" + REPLICA_HOST + ":" + REPLICA_PORT + "/"
+			+ (REPLICA_DBNAME == null ? dbname : REPLICA_DBNAME)
+			+ "?connectTimeout=" + REPLICA_CONNECT_TIMEOUT_S + "&socketTimeout=" + REPLICA_SOCKET_TIMEOUT_S;
+		return new ReplicaRouter(url, user, passwd, REPLICA_POOL_MAX, REPLICA_MAX_LAG_MS, REPLICA_CHECK_MS);
+	}
+
+	/**
+	 * Method to tell whether a report may read the replica now, measuring
+	 * the lag again when the last measurement is older than the interval.
+	 * Only one caller measures; the others meanwhile go by the last result
+	 * instead of waiting for a replica that may not answer.
+	 *
+	 * @return true when the replica is reachable and within the bound
+	 */
+	public boolean usable() {
+		if (System.nanoTime() - _checkedAt >= _checkNanos && _checkLock.tryLock()) {
+			try {
+				//another caller may have checked just before
+				if (System.nanoTime() - _checkedAt >= _checkNanos) {
+					check();
+				}
+			} finally {
+				_checkLock.unlock();
+			}
+		}
+		if (!_usable) {
+			_fallbacks.increment();
+		}
+		return _usable;
+	}//end usable
+
+	//called under _checkLock; the query runs without holding this
+	private void check() {
+		boolean usable;
+		String reason;
+		_checks++;
+		try (ConnectionPool.PooledConnection pc = _pool.borrow()) {
+			PreparedStatement stmt = pc.prepare(CHECK_LAG);
+			try (ResultSet rs = stmt.executeQuery()) {
+				rs.next();
+				boolean standby = rs.getBoolean(1);
+				boolean streaming = rs.getBoolean(2);
+				long lag = rs.getLong(3);
+				//nothing replayed yet while WAL is pending, or no WAL arriving, leaves the lag unknown
+				_lagMillis = rs.wasNull() || (standby && !streaming) ? Long.MAX_VALUE : lag;
+				if (_maxLagMillis < 0) {
+					usable = true;
+					reason = null;
+				} else if (!standby) {
+					usable = false;
+					reason = "it is not a standby, so its lag cannot be measured";
+				} else if (!streaming) {
+					usable = false;
+					reason = "its WAL receiver is not streaming (or the user lacks pg_read_all_stats), so its lag is unknown";
+				} else {
+					usable = _lagMillis <= _maxLagMillis;
+					reason = usable ? null : "its lag of " + (_lagMillis == Long.MAX_VALUE ? "unknown" : _lagMillis + " ms")
+						+ " exceeds " + _maxLagMillis + " ms";
+				}
+			}
+		} catch (SQLException e) {
+			usable = false;
+			reason = "it cannot be reached: " + e.getMessage();
+		}
+		synchronized (this) {
+			setUsable(usable, reason);
+			_checkedAt = System.nanoTime();
+		}
+	}//end check
+
+	//reports a change of route once instead of on every query; guarded by this
+	private void setUsable(boolean usable, String reason) {
+		if (usable != _usable || !_announced) {
+			System.err.println(usable ? "Reports read the replica " + _url
+				: "Reports read the primary: replica " + _url + " is skipped because " + reason);
+		}
+		_announced = true;
+		_usable = usable;
+		_reason = reason;
+	}
+
+	/**
+	 * Method to take a replica connection for a report usable() allowed.
+	 *
+	 * @return a pooled replica connection, to be closed by the caller
+	 * @throws java.sql.SQLException when no connection became available
+	 */
+	public ConnectionPool.PooledConnection borrow() throws SQLException {
+		_reads.increment();
+		return _pool.borrow();
+	}
+
+	/**
+	 * Method to record that a report failed on the replica before it
+	 * returned anything, e.g. the replica went down or cancelled the query
+	 * on a recovery conflict.  Reports go to the primary until the next
+	 * check finds the replica usable again.
+	 *
+	 * @param e the error the replica raised
+	 */
+	public synchronized void failed(SQLException e) {
+		_failures.increment();
+		setUsable(false, "a report failed on it: " + e.getMessage());
+		_checkedAt = System.nanoTime();
+	}
+
+	public synchronized Stats getStats() {
+		return new Stats(_url, _usable, _lagMillis, _maxLagMillis, _checks, _reads.sum(), _fallbacks.sum(),
+			_failures.sum(), _reason);
+	}
+
+	@Override
+	public void close() {
+		_pool.close();
+	}
+
+	/**
+	 * A snapshot of the routing counters.
+	 */
+	public static final class Stats {
+		public final String url;
+		public final boolean usable;
+		//-1 before the first successful check, Long.MAX_VALUE when unknown
+		public final long lagMillis;
+		public final long maxLagMillis;
+		public final long checks;
+		public final long reads;
+		public final long fallbacks;
+		public final long failures;
+		public final String reason;
+
+		Stats(String url, boolean usable, long lagMillis, long maxLagMillis, long checks, long reads,
+				long fallbacks, long failures, String reason) {
+			this.url = url;
+			this.usable = usable;
+			this.lagMillis = lagMillis;
+			this.maxLagMillis = maxLagMillis;
+			this.checks = checks;
+			this.reads = reads;
+			this.fallbacks = fallbacks;
+			this.failures = failures;
+			this.reason = reason;
+		}
+
+		@Override
+		public String toString() {
+			String lag = lagMillis < 0 ? "unmeasured" : lagMillis == Long.MAX_VALUE ? "unknown" : lagMillis + " ms";
+			return String.format("replica %s %s, lag %s (bound %s), checks %d, reports read %d, "
+				+ "sent to the primary %d, failed on the replica %d%s",
+				url, usable ? "in use" : "skipped", lag, maxLagMillis < 0 ? "none" : maxLagMillis + " ms",
+				checks, reads, fallbacks, failures, reason == null ? "" : " (" + reason + ")");
+		}
+	}//end Stats
+}
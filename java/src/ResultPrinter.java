@@ -0,0 +1,306 @@
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * This class writes query results to a buffered writer in one of several
+ * formats.  Rows are appended to a large buffer and flushed once per result
+ * (once per batch for the aligned table), instead of going through the
+ * synchronized System.out for every cell.
+ *
+ */
+
+public class ResultPrinter implements RowHandler {
+	/**
+	 * Supported output formats.
+	 */
+	public enum Format {
+		TSV, CSV, JSONL, TABLE;
+
+		/**
+		 * Method to parse a format name as given on the command line.
+		 *
+		 * @param name tsv, csv, jsonl (or json) or table, in any case
+		 * @return the matching format
+		 */
+		public static Format parse(String name) {
+			String n = name.trim().toUpperCase();
+			if (n.equals("JSON")) {
+				return JSONL;
+			}
+			return Format.valueOf(n);
+		}
+	}//end Format
+
+	static final int BUFFER_SIZE = 1 << 16;
+	//rows measured together when aligning the table format
+	static final int TABLE_BATCH = 1000;
+	//a JSON number literal; anything else in a numeric column (empty, NaN, Infinity) is quoted
+	static final Pattern JSON_NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+	private static Writer stdout = null;
+
+	private final Writer _out;
+	private final Format _format;
+	private int _numCol;
+	private String[] _names;
+	private boolean[] _numeric;
+	private boolean _headerDone = false;
+	private int[] _widths = null;
+	private final List<String[]> _pending = new ArrayList<String[]>();
+	private final StringBuilder _line = new StringBuilder(256);
+
+	public ResultPrinter(Writer out, Format format) {
+		this._out = out;
+		this._format = format;
+	}
+
+	/**
+	 * Method to get the process-wide buffered writer on standard out.  It
+	 * writes to the file descriptor directly and is flushed by the printers.
+	 *
+	 * @return the shared standard out writer
+	 */
+	public static synchronized Writer stdout() {
+		if (stdout == null) {
+			stdout = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), BUFFER_SIZE);
+		}
+		return stdout;
+	}
+
+	@Override
+	public void start(ResultSetMetaData rsmd) throws SQLException {
+		//anything already printed through System.out must come first
+		System.out.flush();
+		_numCol = rsmd.getColumnCount();
+		_names = new String[_numCol];
+		_numeric = new boolean[_numCol];
+		for (int i = 1; i <= _numCol; ++i) {
+			_names[i - 1] = rsmd.getColumnName(i);
+			_numeric[i - 1] = isNumeric(rsmd.getColumnType(i));
+		}
+	}//end start
+
+	/**
+	 * Method to start a result that was computed in memory rather than read
+	 * from a ResultSet.
+	 *
+	 * @param names the column names
+	 * @param numeric which columns hold numbers
+	 */
+	public void start(String[] names, boolean[] numeric) {
+		System.out.flush();
+		_numCol = names.length;
+		_names = names.clone();
+		_numeric = numeric.clone();
+	}
+
+	@Override
+	public void row(ResultSet rs) throws SQLException {
+		String[] values = new String[_numCol];
+		for (int i = 1; i <= _numCol; ++i) {
+			values[i - 1] = rs.getString(i);
+		}
+		try {
+			writeRow(values);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}//end row
+
+	/**
+	 * Method to write one row of already extracted values.
+	 *
+	 * @param values the column values, null for SQL NULL
+	 * @throws java.io.IOException when the output cannot be written
+	 */
+	public void writeRow(String[] values) throws IOException {
+		switch (_format) {
+			case TSV:
+				if (!_headerDone) {
+					writeDelimited(_names, '\t', false);
+					_headerDone = true;
+				}
+				writeDelimited(values, '\t', false);
+				break;
+			case CSV:
+				if (!_headerDone) {
+					writeDelimited(_names, ',', true);
+					_headerDone = true;
+				}
+				writeDelimited(values, ',', true);
+				break;
+			case JSONL:
+				writeJson(values);
+				break;
+			case TABLE:
+				_pending.add(values);
+				if (_pending.size() >= TABLE_BATCH) {
+					flushTable();
+					_out.flush();
+				}
+				break;
+		}
+	}//end writeRow
+
+	/**
+	 * Method to write out anything still buffered.  Called once at the end of
+	 * every result.
+	 *
+	 * @throws java.io.IOException when the output cannot be written
+	 */
+	public void finish() throws IOException {
+		if (_format == Format.TABLE) {
+			flushTable();
+		}
+		_out.flush();
+	}//end finish
+
+	private void writeDelimited(String[] values, char delimiter, boolean quote) throws IOException {
+		_line.setLength(0);
+		for (int i = 0; i < values.length; ++i) {
+			if (quote) {
+				if (i > 0) {
+					_line.append(delimiter);
+				}
+				appendCsv(values[i]);
+			} else {
+				//the historic tab format ends every cell with a tab
+				_line.append(values[i]).append(delimiter);
+			}
+		}
+		_line.append('\n');
+		_out.append(_line);
+	}
+
+	private void appendCsv(String value) {
+		if (value == null) {
+			return;
+		}
+		boolean needsQuotes = false;
+		for (int i = 0; i < value.length() && !needsQuotes; ++i) {
+			char c = value.charAt(i);
+			needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!needsQuotes) {
+			_line.append(value);
+			return;
+		}
+		_line.append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				_line.append('"');
+			}
+			_line.append(c);
+		}
+		_line.append('"');
+	}
+
+	private void writeJson(String[] values) throws IOException {
+		_line.setLength(0);
+		_line.append('{');
+		for (int i = 0; i < values.length; ++i) {
+			if (i > 0) {
+				_line.append(',');
+			}
+			Json.quote(_line, _names[i]).append(':');
+			if (values[i] != null && _numeric[i] && JSON_NUMBER.matcher(values[i]).matches()) {
+				_line.append(values[i]);
+			} else {
+				Json.quote(_line, values[i]);
+			}
+		}
+		_line.append("}\n");
+		_out.append(_line);
+	}
+
+	private void flushTable() throws IOException {
+		if (_pending.isEmpty()) {
+			return;
+		}
+		//column widths are fixed by the first batch so later batches line up
+		if (_widths == null) {
+			_widths = new int[_numCol];
+			for (int i = 0; i < _numCol; ++i) {
+				_widths[i] = _names[i].length();
+			}
+			for (String[] values : _pending) {
+				for (int i = 0; i < _numCol; ++i) {
+					_widths[i] = Math.max(_widths[i], String.valueOf(values[i]).length());
+				}
+			}
+			writeAligned(_names);
+			_line.setLength(0);
+			for (int i = 0; i < _numCol; ++i) {
+				_line.append(i == 0 ? "" : "-+-");
+				for (int j = 0; j < _widths[i]; ++j) {
+					_line.append('-');
+				}
+			}
+			_line.append('\n');
+			_out.append(_line);
+		}
+		for (String[] values : _pending) {
+			writeAligned(values);
+		}
+		_pending.clear();
+	}
+
+	private void writeAligned(String[] values) throws IOException {
+		_line.setLength(0);
+		for (int i = 0; i < _numCol; ++i) {
+			String v = String.valueOf(values[i]);
+			if (i > 0) {
+				_line.append(" | ");
+			}
+			if (_numeric[i] && values != _names) {
+				pad(_widths[i] - v.length());
+				_line.append(v);
+			} else {
+				_line.append(v);
+				if (i < _numCol - 1) {
+					pad(_widths[i] - v.length());
+				}
+			}
+		}
+		_line.append('\n');
+		_out.append(_line);
+	}
+
+	private void pad(int n) {
+		for (int j = 0; j < n; ++j) {
+			_line.append(' ');
+		}
+	}
+
+	private static boolean isNumeric(int sqlType) {
+		switch (sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+			case Types.NUMERIC:
+			case Types.DECIMAL:
+				return true;
+			default:
+				return false;
+		}
+	}
+}
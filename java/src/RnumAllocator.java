@@ -0,0 +1,74 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Client-side allocator of Reservation.rnum values for bulk writers.  A
+ * block of rnum_seq values is reserved with one round trip and handed out
+ * from memory, so a batch of N reservations costs N / blockSize sequence
+ * calls instead of a nextval per row.  Values of a block are unique but not
+ * necessarily contiguous when other sessions draw from the sequence at the
+ * same time; values left over when the allocator is dropped are simply
+ * never used, like those of a rolled back insert.
+ *
+ * The allocator is thread safe; the block is fetched on the connection the
+ * caller already holds, so it never borrows a second one from the pool.
+ *
+ */
+
+public class RnumAllocator {
+	static final String RESERVE_BLOCK = "SELECT nextval('rnum_seq') FROM generate_series(1, ?)";
+
+	private final int _blockSize;
+	private final int[] _block;
+	private int _next = 0;
+	private int _size = 0;
+	private long _roundTrips = 0;
+
+	/**
+	 * @param blockSize number of values reserved per round trip
+	 */
+	public RnumAllocator(int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+		}
+		this._blockSize = blockSize;
+		this._block = new int[blockSize];
+	}
+
+	/**
+	 * Method to take the next rnum, reserving a new block first when the
+	 * current one is used up.
+	 *
+	 * @param pc a connection of the pool, used only to reserve a block
+	 * @return an rnum no other session will be given
+	 * @throws java.sql.SQLException when the block cannot be reserved
+	 */
+	public synchronized int next(ConnectionPool.PooledConnection pc) throws SQLException {
+		if (_next == _size) {
+			reserve(pc);
+		}
+		return _block[_next++];
+	}//end next
+
+	private void reserve(ConnectionPool.PooledConnection pc) throws SQLException {
+		PreparedStatement stmt = pc.prepare(RESERVE_BLOCK);
+		stmt.setInt(1, _blockSize);
+		int n = 0;
+		try (ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				_block[n++] = rs.getInt(1);
+			}
+		}
+		_next = 0;
+		_size = n;
+		_roundTrips++;
+	}//end reserve
+
+	/**
+	 * @return the number of blocks reserved so far
+	 */
+	public synchronized long getRoundTrips() {
+		return _roundTrips;
+	}
+}
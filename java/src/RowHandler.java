@@ -0,0 +1,29 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Callback used by DBproject.executeQueryAndStreamResult.  Rows are pushed to
+ * the handler one at a time while the server-side cursor is open, so the
+ * handler must copy out whatever it needs before returning.
+ *
+ */
+
+public interface RowHandler {
+	/**
+	 * Called once, before the first row, with the result set metadata.
+	 *
+	 * @param rsmd metadata describing the returned columns
+	 * @throws java.sql.SQLException when the metadata cannot be read
+	 */
+	default void start (ResultSetMetaData rsmd) throws SQLException {
+	}
+
+	/**
+	 * Called for every row, with the cursor positioned on it.
+	 *
+	 * @param rs the result set, positioned on the current row
+	 * @throws java.sql.SQLException when a column cannot be read
+	 */
+	void row (ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,21 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback used by DBproject.queryList and queryOne to turn the current row
+ * into a typed value.  It should read the columns with the typed getters
+ * (getInt, getDate, getBoolean ...) rather than getString, so results are
+ * not converted to text and parsed back.
+ *
+ */
+
+public interface RowMapper<T> {
+	/**
+	 * Called for every row, with the cursor positioned on it.
+	 *
+	 * @param rs the result set, positioned on the current row
+	 * @return the value built from the row
+	 * @throws java.sql.SQLException when a column cannot be read
+	 */
+	T map (ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,92 @@
+import java.sql.SQLException;
+
+/**
+ * A throw-away plane, pilot and flight (linked through FlightInfo) used by
+ * the stress, benchmark and load tools.  Ids are taken above everything
+ * already in the database, as is a block of customer ids for the bookings
+ * the tool makes.  drop() removes the fixture and every reservation and
+ * customer created for it.
+ *
+ */
+
+public class ScratchFlight {
+	public final int flight;
+	public final int plane;
+	public final int pilot;
+	public final int fiid;
+	//first id of the customer block reserved for this fixture
+	public final int firstCustomer;
+	public final int customers;
+
+	private final DBproject _esql;
+
+	private ScratchFlight(DBproject esql, int flight, int plane, int pilot, int fiid, int firstCustomer, int customers) {
+		this._esql = esql;
+		this.flight = flight;
+		this.plane = plane;
+		this.pilot = pilot;
+		this.fiid = fiid;
+		this.firstCustomer = firstCustomer;
+		this.customers = customers;
+	}
+
+	/**
+	 * Method to create the fixture.
+	 *
+	 * @param esql the database
+	 * @param seats capacity of the scratch plane (1 to 499)
+	 * @param customers number of customer ids to set aside for bookings
+	 * @return the new fixture
+	 * @throws java.sql.SQLException when the rows could not be inserted
+	 */
+	public static ScratchFlight create(DBproject esql, int seats, int customers) throws SQLException {
+		int plane = esql.queryInt("SELECT COALESCE(MAX(id), 0) + 1 FROM Plane");
+		int pilot = esql.queryInt("SELECT COALESCE(MAX(id), 0) + 1 FROM Pilot");
+		int flight = esql.queryInt("SELECT COALESCE(MAX(fnum), 0) + 1 FROM Flight");
+		int fiid = esql.queryInt("SELECT COALESCE(MAX(fiid), 0) + 1 FROM FlightInfo");
+		int firstCustomer = esql.queryInt("SELECT COALESCE(MAX(id), 0) + 1 FROM Customer");
+		esql.executeUpdate("INSERT INTO Plane (id, make, model, age, seats) VALUES (?, 'Scratch', 'Scratch', 1, ?)", plane, seats);
+		esql.executeUpdate("INSERT INTO Pilot (id, fullname, nationality) VALUES (?, 'Scratch Pilot', 'None')", pilot);
+		esql.executeUpdate("INSERT INTO Flight (fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, arrival_airport, departure_airport) "
+			+ "VALUES (?, 100, 0, 0, CURRENT_DATE, CURRENT_DATE, 'AAAAA', 'BBBBB')", flight);
+		esql.executeUpdate("INSERT INTO FlightInfo (fiid, flight_id, pilot_id, plane_id) VALUES (?, ?, ?, ?)", fiid, flight, pilot, plane);
+		return new ScratchFlight(esql, flight, plane, pilot, fiid, firstCustomer, customers);
+	}//end create
+
+	/**
+	 * Method to get a customer for the n-th booking of the fixture.
+	 *
+	 * @param n 0 to customers - 1
+	 * @return a valid customer with id firstCustomer + n
+	 */
+	public Customer customer(int n) {
+		if (n < 0 || n >= customers) {
+			throw new IndexOutOfBoundsException("customer " + n + " of " + customers);
+		}
+		return new Customer(firstCustomer + n, "Scratch", "Booker", "F",
+			"1990-01-01", "1 Test Street", "5555555555", "92507");
+	}
+
+	/**
+	 * Method to put the flight back to no seats sold, removing its
+	 * reservations and customers.
+	 *
+	 * @throws java.sql.SQLException when the rows could not be deleted
+	 */
+	public void reset() throws SQLException {
+		_esql.executeUpdate("DELETE FROM Reservation WHERE fid = ?", flight);
+		_esql.executeUpdate("DELETE FROM Customer WHERE id >= ? AND id < ?", firstCustomer, firstCustomer + customers);
+		_esql.executeUpdate("UPDATE Flight SET num_sold = 0 WHERE fnum = ?", flight);
+		_esql.invalidateSeatCache(flight);
+	}
+
+	public void drop() throws SQLException {
+		_esql.executeUpdate("DELETE FROM Reservation WHERE fid = ?", flight);
+		_esql.executeUpdate("DELETE FROM Customer WHERE id >= ? AND id < ?", firstCustomer, firstCustomer + customers);
+		_esql.executeUpdate("DELETE FROM FlightInfo WHERE fiid = ?", fiid);
+		_esql.executeUpdate("DELETE FROM Flight WHERE fnum = ?", flight);
+		_esql.executeUpdate("DELETE FROM Pilot WHERE id = ?", pilot);
+		_esql.executeUpdate("DELETE FROM Plane WHERE id = ?", plane);
+		_esql.invalidateSeatCache(flight);
+	}
+}
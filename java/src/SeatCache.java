@@ -0,0 +1,241 @@
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class caches, per flight number, the plane capacity and the number of
+ * seats sold so seat-availability checks do not need the four-table join.
+ * The cache is a size-bounded LRU map; entries expire after a time-to-live
+ * so bookings made by other processes are picked up, and bookings made
+ * through this process are written through immediately.
+ *
+ */
+
+public class SeatCache {
+	/**
+	 * Cached seat information of one flight.
+	 */
+	public static final class Entry {
+		public final int fnum;
+		//capacity of the plane assigned in FlightInfo, -1 when there is none
+		public final int seats;
+		public final int numSold;
+		public final LocalDate departureDate;
+		//whether the flight has a Schedule row (query 6 only lists scheduled flights)
+		public final boolean scheduled;
+		//when the row was read (the time-to-live counts from it) and when numSold was last written
+		//through, in System.nanoTime so the two order strictly even within one millisecond
+		final long loadedAt;
+		final long updatedAt;
+
+		public Entry(int fnum, int seats, int numSold, LocalDate departureDate, boolean scheduled) {
+			this(fnum, seats, numSold, departureDate, scheduled, System.nanoTime());
+		}
+
+		/**
+		 * @param loadedAt System.nanoTime() taken before the row was read
+		 */
+		public Entry(int fnum, int seats, int numSold, LocalDate departureDate, boolean scheduled, long loadedAt) {
+			this(fnum, seats, numSold, departureDate, scheduled, loadedAt, loadedAt);
+		}
+
+		private Entry(int fnum, int seats, int numSold, LocalDate departureDate, boolean scheduled, long loadedAt,
+				long updatedAt) {
+			this.fnum = fnum;
+			this.seats = seats;
+			this.numSold = numSold;
+			this.departureDate = departureDate;
+			this.scheduled = scheduled;
+			this.loadedAt = loadedAt;
+			this.updatedAt = updatedAt;
+		}
+
+		public boolean hasPlane() {
+			return seats >= 0;
+		}
+
+		public int available() {
+			return hasPlane() ? seats - numSold : 0;
+		}
+
+		//num_sold as committed by a booking just now
+		Entry withNumSold(int sold) {
+			return new Entry(fnum, seats, sold, departureDate, scheduled, loadedAt, System.nanoTime());
+		}
+	}//end Entry
+
+	private final int _capacity;
+	private final long _ttlMillis;
+	private final LinkedHashMap<Integer, Entry> _entries;
+
+	//statistics, guarded by this
+	private long _hits = 0;
+	private long _misses = 0;
+	private long _expired = 0;
+	private long _evictions = 0;
+	private long _writeThroughs = 0;
+	private long _invalidations = 0;
+	private long _ageOnHitMillis = 0;
+	private long _maxAgeOnHitMillis = 0;
+
+	/**
+	 * @param capacity maximum number of flights kept, least recently used are evicted first
+	 * @param ttlMillis how long an entry is served before it is reloaded
+	 */
+	public SeatCache(final int capacity, long ttlMillis) {
+		this._capacity = capacity;
+		this._ttlMillis = ttlMillis;
+		this._entries = new LinkedHashMap<Integer, Entry>(256, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+				if (size() <= _capacity) {
+					return false;
+				}
+				_evictions++;
+				return true;
+			}
+		};
+	}//end SeatCache
+
+	/**
+	 * Method to look up a flight.  Returns null on a miss or when the entry
+	 * is older than the time-to-live; the caller then loads it and put()s it.
+	 *
+	 * @param fnum the flight number
+	 * @return the cached entry or null
+	 */
+	public synchronized Entry get(int fnum) {
+		Entry e = _entries.get(fnum);
+		if (e == null) {
+			_misses++;
+			return null;
+		}
+		long age = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - e.loadedAt);
+		if (age > _ttlMillis) {
+			_entries.remove(fnum);
+			_expired++;
+			_misses++;
+			return null;
+		}
+		_hits++;
+		_ageOnHitMillis += age;
+		_maxAgeOnHitMillis = Math.max(_maxAgeOnHitMillis, age);
+		return e;
+	}//end get
+
+	/**
+	 * Method to store a loaded entry.  An entry written through by a
+	 * booking after the load started is newer and kept instead.
+	 *
+	 * @param e the entry read from the database
+	 */
+	public synchronized void put(Entry e) {
+		Entry current = _entries.get(e.fnum);
+		if (current == null || current.updatedAt < e.loadedAt) {
+			_entries.put(e.fnum, e);
+		}
+	}
+
+	/**
+	 * Method to write a booking through to the cache.  A reserved booking
+	 * stores the num_sold its UPDATE committed, so concurrent loads and
+	 * bookings cannot count a seat twice; a waitlisted one proves the
+	 * flight is full.  Bookings only raise num_sold (cancellations and
+	 * promotions invalidate the entry), so the higher of the cached and
+	 * the committed value is kept when two bookings report out of order.
+	 *
+	 * @param fnum the flight number
+	 * @param reserved true for an 'R' booking, false for 'W'
+	 * @param numSold num_sold after a reserved booking
+	 */
+	public synchronized void recordBooking(int fnum, boolean reserved, int numSold) {
+		Entry e = _entries.get(fnum);
+		if (e == null) {
+			return;
+		}
+		_writeThroughs++;
+		if (reserved) {
+			_entries.put(fnum, e.withNumSold(Math.max(e.numSold, numSold)));
+		} else if (e.hasPlane()) {
+			_entries.put(fnum, e.withNumSold(Math.max(e.numSold, e.seats)));
+		}
+	}//end recordBooking
+
+	/**
+	 * Method to drop a flight whose num_sold or plane changed by other means.
+	 *
+	 * @param fnum the flight number
+	 */
+	public synchronized void invalidate(int fnum) {
+		if (_entries.remove(fnum) != null) {
+			_invalidations++;
+		}
+	}
+
+	public synchronized void clear() {
+		_invalidations += _entries.size();
+		_entries.clear();
+	}
+
+	public synchronized Stats getStats() {
+		long oldest = 0;
+		long now = System.currentTimeMillis();
+		for (Entry e : _entries.values()) {
+			oldest = Math.max(oldest, now - e.loadedAt);
+		}
+		return new Stats(_entries.size(), _capacity, _ttlMillis, _hits, _misses, _expired, _evictions,
+			_writeThroughs, _invalidations, _hits == 0 ? 0.0 : (double) _ageOnHitMillis / _hits,
+			_maxAgeOnHitMillis, oldest);
+	}
+
+	/**
+	 * Immutable snapshot of the cache statistics.  The age figures measure
+	 * staleness: how old the data behind a cache hit was.
+	 */
+	public static final class Stats {
+		public final int size;
+		public final int capacity;
+		public final long ttlMillis;
+		public final long hits;
+		public final long misses;
+		public final long expired;
+		public final long evictions;
+		public final long writeThroughs;
+		public final long invalidations;
+		public final double meanAgeOnHitMillis;
+		public final long maxAgeOnHitMillis;
+		public final long oldestEntryMillis;
+
+		Stats(int size, int capacity, long ttlMillis, long hits, long misses, long expired, long evictions,
+				long writeThroughs, long invalidations, double meanAgeOnHitMillis, long maxAgeOnHitMillis,
+				long oldestEntryMillis) {
+			this.size = size;
+			this.capacity = capacity;
+			this.ttlMillis = ttlMillis;
+			this.hits = hits;
+			this.misses = misses;
+			this.expired = expired;
+			this.evictions = evictions;
+			this.writeThroughs = writeThroughs;
+			this.invalidations = invalidations;
+			this.meanAgeOnHitMillis = meanAgeOnHitMillis;
+			this.maxAgeOnHitMillis = maxAgeOnHitMillis;
+			this.oldestEntryMillis = oldestEntryMillis;
+		}
+
+		public double hitRate() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0.0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("seat cache %d/%d flights (ttl %d ms), hits %d, misses %d, hit rate %.1f%%, "
+				+ "expired %d, evictions %d, write-throughs %d, invalidations %d, "
+				+ "age on hit mean %.1f ms max %d ms, oldest entry %d ms",
+				size, capacity, ttlMillis, hits, misses, 100.0 * hitRate(), expired, evictions,
+				writeThroughs, invalidations, meanAgeOnHitMillis, maxAgeOnHitMillis, oldestEntryMillis);
+		}
+	}//end Stats
+}
@@ -0,0 +1,199 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log of statements slower than a threshold.  When a statement crosses it
+ * it is explained on a background thread and the plan is appended to the
+ * log with the SQL, its parameters and the original timing.  SELECTs are
+ * run again as EXPLAIN (ANALYZE, BUFFERS) in a read-only transaction;
+ * writes only get a plain EXPLAIN, since re-running them would take their
+ * row locks and sequence values again just when they are contended.
+ * Utility statements (ANALYZE, CREATE INDEX ...) have no plan and are not
+ * logged.  The log file is rotated when it grows past a size
+ * limit, keeping a fixed number of old files (slow.log.1, slow.log.2, ...).
+ *
+ * A statement shape is explained at most once per minute, and slow
+ * statements arriving while the explain queue is full are only counted, so
+ * a database that is slow everywhere is not loaded twice over.
+ *
+ */
+
+public class SlowQueryLog {
+	/**
+	 * Runs EXPLAIN for a statement and returns the plan lines.
+	 */
+	public interface Explainer {
+		List<String> explain(String sql, Object[] params) throws SQLException;
+	}
+
+	static final long REEXPLAIN_INTERVAL_MS = 60000L;
+	static final int QUEUE_SIZE = 16;
+
+	private final File _file;
+	private final long _thresholdNanos;
+	private final long _maxBytes;
+	private final int _keep;
+	private final Explainer _explainer;
+	private final ThreadPoolExecutor _worker;
+	//last time each statement shape was explained
+	private final ConcurrentHashMap<String, Long> _lastExplained = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong _dropped = new AtomicLong();
+
+	/**
+	 * @param file the log file
+	 * @param thresholdMillis statements taking longer are logged
+	 * @param maxBytes size at which the file is rotated
+	 * @param keep number of rotated files kept
+	 * @param explainer runs the EXPLAIN for a statement
+	 */
+	public SlowQueryLog(File file, long thresholdMillis, long maxBytes, int keep, Explainer explainer) {
+		this._file = file;
+		this._thresholdNanos = thresholdMillis * 1000000L;
+		this._maxBytes = maxBytes;
+		this._keep = keep;
+		this._explainer = explainer;
+		this._worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), r -> {
+				Thread t = new Thread(r, "slow-query-log");
+				t.setDaemon(true);
+				return t;
+			});
+	}
+
+	/**
+	 * Method to check a finished statement against the threshold.  Cheap
+	 * when the statement was fast; otherwise the EXPLAIN is queued.
+	 *
+	 * @param sql the statement
+	 * @param params its parameters
+	 * @param startNanos System.nanoTime() when it started
+	 * @param rows rows returned or affected
+	 */
+	public void check(final String sql, final Object[] params, long startNanos, final long rows) {
+		final long elapsed = System.nanoTime() - startNanos;
+		if (elapsed < this._thresholdNanos || !explainable(sql)) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		String shape = QueryMetrics.normalize(sql);
+		Long last = this._lastExplained.get(shape);
+		if (last != null && now - last < REEXPLAIN_INTERVAL_MS) {
+			return;
+		}
+		this._lastExplained.put(shape, now);
+		final Object[] copy = params.clone();
+		final Instant at = Instant.now();
+		try {
+			this._worker.execute(() -> explainAndLog(sql, copy, elapsed, rows, at));
+		} catch (RejectedExecutionException e) {
+			this._dropped.incrementAndGet();
+		}
+	}//end check
+
+	/**
+	 * @return true for the statements EXPLAIN accepts
+	 */
+	static boolean explainable(String sql) {
+		String verb = firstWord(sql);
+		return verb.equals("SELECT") || verb.equals("WITH") || verb.equals("INSERT") || verb.equals("UPDATE")
+			|| verb.equals("DELETE") || verb.equals("VALUES");
+	}
+
+	/**
+	 * @return the statement's first keyword in upper case
+	 */
+	static String firstWord(String sql) {
+		String s = sql.trim();
+		int end = 0;
+		while (end < s.length() && Character.isLetter(s.charAt(end))) {
+			++end;
+		}
+		return s.substring(0, end).toUpperCase();
+	}
+
+	private void explainAndLog(String sql, Object[] params, long elapsed, long rows, Instant at) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("=== ").append(at).append(String.format(" %.1f ms, %d rows", elapsed / 1e6, rows));
+		long dropped = this._dropped.getAndSet(0);
+		if (dropped > 0) {
+			sb.append(String.format(" (%d slow statements not explained, queue full)", dropped));
+		}
+		sb.append("\nsql: ").append(sql.replaceAll("\\s+", " ").trim());
+		sb.append("\nparams: ").append(Arrays.toString(params)).append('\n');
+		try {
+			long start = System.nanoTime();
+			List<String> plan = this._explainer.explain(sql, params);
+			sb.append(String.format("plan (explained in %.1f ms):%n", (System.nanoTime() - start) / 1e6));
+			for (String line : plan) {
+				sb.append("  ").append(line).append('\n');
+			}
+		} catch (SQLException e) {
+			sb.append("plan: unavailable: ").append(e.getMessage()).append('\n');
+		}
+		sb.append('\n');
+		append(sb.toString());
+	}//end explainAndLog
+
+	/**
+	 * Method to add an entry to the log file, rotating it first when it
+	 * has grown past the size limit.
+	 *
+	 * @param entry the text to append
+	 */
+	synchronized void append(String entry) {
+		try {
+			if (this._file.length() > this._maxBytes) {
+				rotate();
+			}
+			try (Writer out = Files.newBufferedWriter(this._file.toPath(), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				out.write(entry);
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to write the slow query log " + this._file + ": " + e.getMessage());
+		}
+	}//end append
+
+	private void rotate() throws IOException {
+		String base = this._file.getPath();
+		Files.deleteIfExists(new File(base + "." + this._keep).toPath());
+		for (int i = this._keep - 1; i >= 1; --i) {
+			File f = new File(base + "." + i);
+			if (f.exists()) {
+				Files.move(f.toPath(), new File(base + "." + (i + 1)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		if (this._keep > 0) {
+			Files.move(this._file.toPath(), new File(base + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			Files.delete(this._file.toPath());
+		}
+	}//end rotate
+
+	/**
+	 * Method to let queued EXPLAINs finish before the pool closes.
+	 */
+	public void close() {
+		this._worker.shutdown();
+		try {
+			this._worker.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
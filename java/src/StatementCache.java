@@ -0,0 +1,87 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps the most recently used PreparedStatements of one physical
+ * connection, keyed by SQL text.  Re-using the same PreparedStatement lets
+ * pgjdbc switch to a named server-side statement, so Postgres parses and
+ * plans a query once instead of on every call.
+ *
+ */
+
+public class StatementCache {
+	private final Connection _connection;
+	private final LinkedHashMap<String, PreparedStatement> _statements;
+	private final LongAdder _hits;
+	private final LongAdder _misses;
+
+	/**
+	 * @param connection the physical connection the statements belong to
+	 * @param capacity maximum number of cached statements, least recently used are closed first
+	 * @param hits counter shared by every cache of the pool
+	 * @param misses counter shared by every cache of the pool
+	 */
+	public StatementCache(Connection connection, final int capacity, LongAdder hits, LongAdder misses) {
+		this._connection = connection;
+		this._hits = hits;
+		this._misses = misses;
+		this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= capacity) {
+					return false;
+				}
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}//end StatementCache
+
+	/**
+	 * Method to fetch the cached PreparedStatement for the given SQL text,
+	 * preparing and caching it on a miss.  The returned statement must not
+	 * be closed by the caller.
+	 *
+	 * @param sql the parameterized SQL text
+	 * @return a prepared statement bound to this cache's connection
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement ps = _statements.get(sql);
+		if (ps != null && !ps.isClosed()) {
+			_hits.increment();
+			ps.clearParameters();
+			return ps;
+		}
+		_misses.increment();
+		ps = _connection.prepareStatement(sql);
+		_statements.put(sql, ps);
+		return ps;
+	}//end prepare
+
+	public int size() {
+		return _statements.size();
+	}
+
+	/**
+	 * Method to close every cached statement.
+	 */
+	public void clear() {
+		for (PreparedStatement ps : _statements.values()) {
+			closeQuietly(ps);
+		}
+		_statements.clear();
+	}//end clear
+
+	private static void closeQuietly(PreparedStatement ps) {
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// ignored.
+		}
+	}
+}
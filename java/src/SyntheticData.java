@@ -0,0 +1,178 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generator of larger data sets in the layout of data/*.csv, for benchmarks
+ * and load tests.  Row counts are the shipped ones times --scale; every
+ * foreign key points at a generated row, each flight has one FlightInfo and
+ * one Schedule row, and num_sold equals the flight's 'R' reservations so
+ * the booking code starts from a consistent state.  The same seed always
+ * produces the same files.
+ *
+ * Usage: java SyntheticData <output dir> [--scale=10] [--seed=1]
+ * then:  java DataLoader <dbname> <port> <user> --data=<output dir> --truncate
+ *
+ */
+
+public class SyntheticData {
+	//row counts of the shipped data set
+	static final int CUSTOMERS = 250;
+	static final int PILOTS = 250;
+	static final int PLANES = 67;
+	static final int TECHNICIANS = 250;
+	static final int FLIGHTS = 2000;
+	static final int RESERVATIONS = 9999;
+	static final int REPAIRS = 549;
+
+	static final String[] FIRST = { "Armand", "Alberto", "Wyatt", "Maria", "Li", "Priya", "Omar", "Sofia", "Kenji", "Ada" };
+	static final String[] LAST = { "Enderle", "Scarlett", "Ruoff", "Garcia", "Chen", "Patel", "Haddad", "Rossi", "Sato", "Okafor" };
+	static final String[] STREETS = { "Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Main Street", "Oak Lane" };
+	static final String[] COUNTRIES = { "Australia", "Morocco", "India", "Brazil", "Japan", "Canada", "France" };
+	static final String[] MAKES = { "Airbus", "Boeing", "Bombadier", "Embraer" };
+	static final String[] CODES = { "MJ", "MN", "SV" };
+
+	private final File _dir;
+	private final int _scale;
+	private final Random _random;
+
+	public SyntheticData(File dir, int scale, long seed) {
+		this._dir = dir;
+		this._scale = scale;
+		this._random = new Random(seed);
+	}
+
+	/**
+	 * Method to write every CSV file.
+	 *
+	 * @throws java.io.IOException when a file cannot be written
+	 */
+	public void generate() throws IOException {
+		int customers = CUSTOMERS * _scale, pilots = PILOTS * _scale, planes = PLANES * _scale;
+		int technicians = TECHNICIANS * _scale, flights = FLIGHTS * _scale;
+		int reservations = RESERVATIONS * _scale, repairs = REPAIRS * _scale;
+
+		try (PrintWriter w = open("customer.csv")) {
+			for (int i = 0; i < customers; ++i) {
+				w.printf("%d,%s,%s,%s,%d/%d/%d,%d %s,%010d,%05d%n", i, pick(FIRST), pick(LAST),
+					_random.nextBoolean() ? "F" : "M", 1 + _random.nextInt(12), 1 + _random.nextInt(28),
+					1940 + _random.nextInt(60), 1 + _random.nextInt(9999), pick(STREETS),
+					(long) (_random.nextDouble() * 1e10), _random.nextInt(100000));
+			}
+		}
+		try (PrintWriter w = open("pilots.csv")) {
+			for (int i = 0; i < pilots; ++i) {
+				w.printf("%d,%s %s,%s%n", i, pick(FIRST), pick(LAST), pick(COUNTRIES));
+			}
+		}
+		int[] seats = new int[planes];
+		try (PrintWriter w = open("planes.csv")) {
+			for (int i = 0; i < planes; ++i) {
+				seats[i] = 50 + _random.nextInt(450);
+				String make = pick(MAKES);
+				w.printf("%d,%s,%s%d,%d,%d%n", i, make, make, 100 + _random.nextInt(900), _random.nextInt(30), seats[i]);
+			}
+		}
+		try (PrintWriter w = open("technician.csv")) {
+			for (int i = 0; i < technicians; ++i) {
+				w.printf("%d,%s %s%n", i, pick(FIRST), pick(LAST));
+			}
+		}
+
+		//reservations first, so each flight's num_sold matches its reserved seats
+		int[] planeOf = new int[flights];
+		int[] sold = new int[flights];
+		for (int f = 0; f < flights; ++f) {
+			planeOf[f] = _random.nextInt(planes);
+		}
+		try (PrintWriter w = open("reservation.csv")) {
+			for (int i = 0; i < reservations; ++i) {
+				int f = _random.nextInt(flights);
+				String status;
+				if (_random.nextInt(10) == 0) {
+					status = "C";
+				} else if (sold[f] < seats[planeOf[f]] && _random.nextInt(4) != 0) {
+					status = "R";
+					sold[f]++;
+				} else {
+					status = "W";
+				}
+				w.printf("%d,%d,%d,%s%n", i, _random.nextInt(customers), f, status);
+			}
+		}
+		try (PrintWriter flightsOut = open("flights.csv");
+				PrintWriter info = open("flightinfo.csv");
+				PrintWriter schedule = open("schedule.csv")) {
+			for (int f = 0; f < flights; ++f) {
+				String day = date();
+				String dep = String.format("%s %02d:%02d", day, _random.nextInt(14), _random.nextInt(60));
+				String arr = String.format("%s %02d:%02d", day, 14 + _random.nextInt(10), _random.nextInt(60));
+				flightsOut.printf("%d,%d,%d,%d,%s,%s,%s,%s%n", f, 100 + _random.nextInt(900), sold[f],
+					_random.nextInt(4), dep, arr, airport(), airport());
+				info.printf("%d,%d,%d,%d%n", f, f, _random.nextInt(pilots), planeOf[f]);
+				schedule.printf("%d,%d,%s,%s%n", f, f, dep, arr);
+			}
+		}
+		try (PrintWriter w = open("repairs.csv")) {
+			for (int i = 0; i < repairs; ++i) {
+				w.printf("%d,%s,%s,%d,%d,%d%n", i, date(), pick(CODES), _random.nextInt(pilots),
+					_random.nextInt(planes), _random.nextInt(technicians));
+			}
+		}
+	}//end generate
+
+	private PrintWriter open(String name) throws IOException {
+		return new PrintWriter(Files.newBufferedWriter(new File(_dir, name).toPath(), StandardCharsets.UTF_8));
+	}
+
+	private String pick(String[] values) {
+		return values[_random.nextInt(values.length)];
+	}
+
+	private String date() {
+		return String.format("%d-%02d-%02d", 2010 + _random.nextInt(8), 1 + _random.nextInt(12), 1 + _random.nextInt(28));
+	}
+
+	private String airport() {
+		char[] code = new char[5];
+		for (int i = 0; i < code.length; ++i) {
+			code[i] = (char) ('A' + _random.nextInt(26));
+		}
+		return new String(code);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java [-classpath <classpath>] " + SyntheticData.class.getName()
+				+ " <output dir> [--scale=10] [--seed=1]");
+			return;
+		}
+		int scale = 10;
+		long seed = 1;
+		for (int i = 1; i < args.length; ++i) {
+			if (args[i].startsWith("--scale=")) {
+				scale = Integer.parseInt(args[i].substring("--scale=".length()));
+			} else if (args[i].startsWith("--seed=")) {
+				seed = Long.parseLong(args[i].substring("--seed=".length()));
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+		if (scale < 1) {
+			System.err.println("--scale must be at least 1");
+			return;
+		}
+		File dir = new File(args[0]);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			System.err.println("Cannot create " + dir);
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		new SyntheticData(dir, scale, seed).generate();
+		System.out.printf("Wrote data set x%d to %s in %.2f s%n", scale, dir, (System.nanoTime() - start) / 1e9);
+	}//end main
+}
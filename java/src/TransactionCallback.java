@@ -0,0 +1,11 @@
+import java.sql.SQLException;
+
+/**
+ * Work run by DBproject.executeInTransaction on a single pooled connection.
+ * Statements should be taken from the connection's cache with prepare().
+ *
+ */
+
+public interface TransactionCallback<T> {
+	T run (ConnectionPool.PooledConnection pc) throws SQLException;
+}
@@ -0,0 +1,59 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors that run every task on its own virtual thread when the JVM has
+ * them (Java 21+).  They are looked up reflectively so the project still
+ * compiles and runs on older JDKs, where platform threads are used instead.
+ *
+ */
+
+public final class VirtualThreads {
+	private static final Method NEW_PER_TASK_EXECUTOR = lookup();
+
+	private VirtualThreads() {
+	}
+
+	private static Method lookup() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true when this JVM supports virtual threads
+	 */
+	public static boolean available() {
+		return NEW_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * Method to get an executor for many mostly blocked tasks.
+	 *
+	 * @param virtual prefer virtual threads
+	 * @param platformThreads size of the platform thread pool used otherwise
+	 * @param name prefix of the platform thread names
+	 * @return a virtual-thread-per-task executor, or a fixed pool of platform threads
+	 */
+	public static ExecutorService newExecutor(boolean virtual, int platformThreads, final String name) {
+		if (virtual && NEW_PER_TASK_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				//fall through to platform threads
+			}
+		}
+		final AtomicInteger n = new AtomicInteger();
+		ThreadFactory factory = r -> {
+			Thread t = new Thread(r, name + "-" + n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		return Executors.newFixedThreadPool(platformThreads, factory);
+	}//end newExecutor
+}
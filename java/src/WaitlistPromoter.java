@@ -0,0 +1,122 @@
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background worker promoting waitlisted ('W') reservations when seats
+ * free up.  Every interval each worker thread lists the flights that have
+ * a waitlist and a free seat and runs DBproject.promoteWaitlist on them,
+ * oldest reservation first.  Cancellations already promote inline; the
+ * worker picks up seats freed any other way (a larger plane, a num_sold
+ * correction, a crash between the two).
+ *
+ * Several workers, in one JVM or several, can run at once: the promotion
+ * locks a flight with FOR UPDATE SKIP LOCKED, so a flight being promoted,
+ * booked or cancelled elsewhere is skipped and retried on the next pass.
+ * Workers shuffle the flight list so they do not all start on the same one.
+ *
+ */
+
+public class WaitlistPromoter implements AutoCloseable {
+	//flights looked at per pass and worker
+	static final int FLIGHTS_PER_PASS = 1000;
+
+	private final DBproject _esql;
+	private final int _workers;
+	private final long _intervalMillis;
+	private final AtomicLong _promoted = new AtomicLong();
+	private final AtomicLong _passes = new AtomicLong();
+	private ScheduledExecutorService _scheduler = null;
+
+	/**
+	 * @param esql the database
+	 * @param workers number of worker threads
+	 * @param intervalMillis pause between the passes of a worker
+	 */
+	public WaitlistPromoter(DBproject esql, int workers, long intervalMillis) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Need at least one worker: " + workers);
+		}
+		if (intervalMillis < 1) {
+			throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+		}
+		this._esql = esql;
+		this._workers = workers;
+		this._intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Method to start the worker threads.  They are daemon threads; close()
+	 * stops them after their current pass.
+	 */
+	public synchronized void start() {
+		if (_scheduler != null) {
+			return;
+		}
+		final AtomicInteger n = new AtomicInteger();
+		_scheduler = Executors.newScheduledThreadPool(_workers, r -> {
+			Thread t = new Thread(r, "waitlist-promoter-" + n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		for (int i = 0; i < _workers; ++i) {
+			_scheduler.scheduleWithFixedDelay(() -> {
+				try {
+					pass();
+				} catch (SQLException e) {
+					//a failed pass is retried on the next one
+					System.err.println("Waitlist promotion failed: " + e.getMessage());
+				}
+			}, 0, _intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}//end start
+
+	/**
+	 * Method to run one pass: promote every flight that has a waitlist and
+	 * a free seat.
+	 *
+	 * @return the number of reservations promoted
+	 * @throws java.sql.SQLException when the flights cannot be listed or promoted
+	 */
+	public int pass() throws SQLException {
+		List<Integer> flights = _esql.flightsToPromote(FLIGHTS_PER_PASS);
+		Collections.shuffle(flights);
+		int promoted = 0;
+		for (int flight : flights) {
+			for (Booking b : _esql.promoteWaitlist(flight)) {
+				DBproject.log.println("Promoted " + b);
+				promoted++;
+			}
+		}
+		_promoted.addAndGet(promoted);
+		_passes.incrementAndGet();
+		return promoted;
+	}//end pass
+
+	public long getPromoted() {
+		return _promoted.get();
+	}
+
+	public long getPasses() {
+		return _passes.get();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (_scheduler == null) {
+			return;
+		}
+		_scheduler.shutdown();
+		try {
+			_scheduler.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_scheduler = null;
+	}
+}
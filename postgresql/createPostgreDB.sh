@@ -1,12 +1,23 @@
 #! /bin/bash
+# Usage: source ./createPostgreDB.sh [--client-load]
+#   --client-load  stream data/*.csv from the java DataLoader (COPY FROM STDIN)
+#                  instead of copying them into $PGDATA for a server-side COPY
 echo "creating db named ... "$USER"_DB"
 createdb -h localhost -p $PGPORT $USER"_DB"
 pg_ctl status
 
-echo "Copying csv files ... "
-sleep 1
-cp ../data/*.csv /tmp/$USER/myDB/data/.
-
 echo "Initializing tables .. "
 sleep 1
-psql -h localhost -p $PGPORT $USER"_DB" < ../sql/create.sql
\ No newline at end of file
+psql -h localhost -p $PGPORT $USER"_DB" < ../sql/create.sql
+
+if [ "$1" == "--client-load" ]; then
+	echo "Loading csv files from the client ... "
+	(cd ../java && java -cp "lib/*:bin/" DataLoader $USER"_DB" $PGPORT $USER --data=../data)
+else
+	echo "Copying csv files ... "
+	sleep 1
+	cp ../data/*.csv /tmp/$USER/myDB/data/.
+
+	echo "Loading csv files .. "
+	psql -h localhost -p $PGPORT $USER"_DB" < ../sql/load.sql
+fi
@@ -5,11 +5,28 @@ DROP TABLE IF EXISTS Pilot CASCADE;--OK
 DROP TABLE IF EXISTS Plane CASCADE;--OK
 DROP TABLE IF EXISTS Technician CASCADE;--OK
 
+--Reservation is a view in create_partitioned.sql
+DO $drop_reservation$
+BEGIN
+	IF EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass('reservation') AND relkind = 'v') THEN
+		DROP VIEW Reservation CASCADE;
+	END IF;
+END;
+$drop_reservation$;
 DROP TABLE IF EXISTS Reservation CASCADE;--OK
+DROP TABLE IF EXISTS reservation_part CASCADE;
+DROP TABLE IF EXISTS flight_numbers CASCADE;
+DROP TABLE IF EXISTS reservation_numbers CASCADE;
 DROP TABLE IF EXISTS FlightInfo CASCADE;--OK
 DROP TABLE IF EXISTS Repairs CASCADE;--OK
 DROP TABLE IF EXISTS Schedule CASCADE;--OK
 
+DROP TABLE IF EXISTS repairs_per_plane CASCADE;
+DROP TABLE IF EXISTS repairs_per_year CASCADE;
+DROP TABLE IF EXISTS flight_status_counts CASCADE;
+DROP SEQUENCE IF EXISTS rnum_seq CASCADE;
+DROP FUNCTION IF EXISTS my_seq() CASCADE;
+
 --ADDED: DROP INDEX IF EXISTS 
 DROP INDEX IF EXISTS find_plane_seats CASCADE;  
 DROP INDEX IF EXISTS flight_query6 CASCADE; 
@@ -17,8 +34,7 @@ DROP INDEX IF EXISTS flight_frm_schedule CASCADE;
 DROP INDEX IF EXISTS flightinfo_id CASCADE; 
 DROP INDEX IF EXISTS plane_repairs_index CASCADE; 
 DROP INDEX IF EXISTS repair_date_index CASCADE; 
-DROP INDEX IF EXISTS query9_reservation_index CASCADE; 
-DROP INDEX IF EXISTS query9_flightfnum CASCADE; 
+DROP INDEX IF EXISTS reservation_waitlist CASCADE;
 -------------
 ---DOMAINS---
 -------------
@@ -93,7 +109,7 @@ CREATE TABLE Technician
 
 CREATE TABLE Reservation
 (
-	rnum INTEGER NOT NULL,
+	rnum INTEGER NOT NULL DEFAULT nextval('rnum_seq'),
 	cid INTEGER NOT NULL,
 	fid INTEGER NOT NULL,
 	status _STATUS,
@@ -101,6 +117,9 @@ CREATE TABLE Reservation
 	FOREIGN KEY (cid) REFERENCES Customer(id),
 	FOREIGN KEY (fid) REFERENCES Flight(fnum)
 );
+--rnum is drawn from rnum_seq when the insert leaves it out; inserts get it back with
+--RETURNING rnum, and bulk writers reserve blocks of it up front (RnumAllocator)
+ALTER SEQUENCE rnum_seq OWNED BY Reservation.rnum;
  
 
 CREATE TABLE FlightInfo
@@ -139,14 +158,111 @@ CREATE TABLE Schedule
 	FOREIGN KEY (flightNum) REFERENCES Flight(fnum)
 );
 
-DROP TRIGGER IF EXISTS rnum ON Reservation; 
-CREATE OR REPLACE FUNCTION my_seq() returns TRIGGER AS $rnum$ 
-BEGIN 
-	new.rnum = nextval('rnum_seq'); 
-        return new; 
-END; 
-$rnum$language plpgsql volatile; 
-CREATE TRIGGER rnum before INSERT ON Reservation for each row EXECUTE PROCEDURE my_seq(); 
+-------------------------
+---REPAIR AGGREGATES-----
+-------------------------
+--repair counts for queries 7 and 8, kept current by the triggers on Repairs
+--so the reports read one row per plane / year instead of grouping Repairs.
+--rows are kept when their count drops to 0; the reports skip those.
+CREATE TABLE repairs_per_plane
+(
+	plane_id INTEGER NOT NULL,
+	total_repairs INTEGER NOT NULL,
+	PRIMARY KEY (plane_id)
+);
+
+CREATE TABLE repairs_per_year
+(
+	year INTEGER NOT NULL,
+	total_repairs INTEGER NOT NULL,
+	PRIMARY KEY (year)
+);
+
+CREATE OR REPLACE FUNCTION repairs_summary() RETURNS TRIGGER AS $repairs_summary$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE repairs_per_plane SET total_repairs = total_repairs - 1 WHERE plane_id = OLD.plane_id;
+		UPDATE repairs_per_year SET total_repairs = total_repairs - 1
+		WHERE year = EXTRACT(year FROM OLD.repair_date)::INTEGER;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		INSERT INTO repairs_per_plane (plane_id, total_repairs) VALUES (NEW.plane_id, 1)
+		ON CONFLICT (plane_id) DO UPDATE SET total_repairs = repairs_per_plane.total_repairs + 1;
+		INSERT INTO repairs_per_year (year, total_repairs) VALUES (EXTRACT(year FROM NEW.repair_date)::INTEGER, 1)
+		ON CONFLICT (year) DO UPDATE SET total_repairs = repairs_per_year.total_repairs + 1;
+	END IF;
+	RETURN NULL;
+END;
+$repairs_summary$ LANGUAGE plpgsql;
+CREATE TRIGGER repairs_summary AFTER INSERT OR DELETE OR UPDATE OF plane_id, repair_date ON Repairs
+FOR EACH ROW EXECUTE PROCEDURE repairs_summary();
+
+--TRUNCATE skips row triggers
+CREATE OR REPLACE FUNCTION repairs_summary_truncate() RETURNS TRIGGER AS $repairs_summary_truncate$
+BEGIN
+	TRUNCATE repairs_per_plane, repairs_per_year;
+	RETURN NULL;
+END;
+$repairs_summary_truncate$ LANGUAGE plpgsql;
+CREATE TRIGGER repairs_summary_truncate AFTER TRUNCATE ON Repairs
+FOR EACH STATEMENT EXECUTE PROCEDURE repairs_summary_truncate();
+
+--recompute both tables from Repairs, e.g. after the triggers were disabled
+CREATE OR REPLACE FUNCTION rebuild_repair_summaries() RETURNS VOID AS $rebuild$
+BEGIN
+	LOCK TABLE Repairs IN SHARE MODE;
+	TRUNCATE repairs_per_plane, repairs_per_year;
+	INSERT INTO repairs_per_plane (plane_id, total_repairs)
+	SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;
+	INSERT INTO repairs_per_year (year, total_repairs)
+	SELECT EXTRACT(year FROM repair_date)::INTEGER, COUNT(*) FROM Repairs GROUP BY 1;
+END;
+$rebuild$ LANGUAGE plpgsql;
+-------------------------
+---PASSENGER COUNTS------
+-------------------------
+--passengers per flight and status for query 9, kept current by the triggers
+--on Reservation so the query is a primary key lookup instead of a count over
+--the flight's reservations.  a missing row means 0.
+CREATE TABLE flight_status_counts
+(
+	fid INTEGER NOT NULL,
+	status _STATUS NOT NULL,
+	passengers INTEGER NOT NULL,
+	PRIMARY KEY (fid, status)
+);
+
+CREATE OR REPLACE FUNCTION flight_status_count() RETURNS TRIGGER AS $flight_status_count$
+BEGIN
+	--status is nullable; such rows are not counted, as in the old COUNT query.
+	--the IFs are nested because OLD is unassigned on INSERT and NEW on DELETE
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		IF OLD.status IS NOT NULL THEN
+			UPDATE flight_status_counts SET passengers = passengers - 1
+			WHERE fid = OLD.fid AND status = OLD.status;
+		END IF;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		IF NEW.status IS NOT NULL THEN
+			INSERT INTO flight_status_counts (fid, status, passengers) VALUES (NEW.fid, NEW.status, 1)
+			ON CONFLICT (fid, status) DO UPDATE SET passengers = flight_status_counts.passengers + 1;
+		END IF;
+	END IF;
+	RETURN NULL;
+END;
+$flight_status_count$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_status_count AFTER INSERT OR DELETE OR UPDATE OF fid, status ON Reservation
+FOR EACH ROW EXECUTE PROCEDURE flight_status_count();
+
+--TRUNCATE skips row triggers
+CREATE OR REPLACE FUNCTION flight_status_count_truncate() RETURNS TRIGGER AS $flight_status_count_truncate$
+BEGIN
+	TRUNCATE flight_status_counts;
+	RETURN NULL;
+END;
+$flight_status_count_truncate$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_status_count_truncate AFTER TRUNCATE ON Reservation
+FOR EACH STATEMENT EXECUTE PROCEDURE flight_status_count_truncate();
 ---------------------------
 ----------INDEXES----------
 ---------------------------
@@ -171,100 +287,11 @@ ON Repairs(plane_id);
 CREATE INDEX repair_date_index 
 ON Repairs(repair_date); 
 
---for query9 
-CREATE INDEX query9_reservation_index 
-ON Reservation(fid, status); 
-CREATE INDEX query9_flightfnum
-ON Flight(fnum); 
---------------------------- 
--- INSERT DATA STATEMENTS --
-----------------------------
-
-COPY Customer (
-	id,
-	fname,
-	lname,
-	gtype,
-	dob,
-	address,
-	phone,
-	zipcode
-)
-FROM 'customer.csv'
-WITH DELIMITER ',';
-
-COPY Pilot (
-	id,
-	fullname,
-	nationality
-)
-FROM 'pilots.csv'
-WITH DELIMITER ',';
-
-COPY Plane (
-	id,
-	make,
-	model,
-	age,
-	seats
-)
-FROM 'planes.csv'
-WITH DELIMITER ',';
-
-COPY Technician (
-	id,
-	full_name
-)
-FROM 'technician.csv'
-WITH DELIMITER ',';
-
-COPY Flight (
-	fnum,
-	cost,
-	num_sold,
-	num_stops,
-	actual_departure_date,
-	actual_arrival_date,
-	arrival_airport,
-	departure_airport
-)
-FROM 'flights.csv'
-WITH DELIMITER ',';
-
-COPY Reservation (
-	rnum,
-	cid,
-	fid,
-	status
-)
-FROM 'reservation.csv'
-WITH DELIMITER ',';
-
-COPY FlightInfo (
-	fiid,
-	flight_id,
-	pilot_id,
-	plane_id
-)
-FROM 'flightinfo.csv'
-WITH DELIMITER ',';
+--query9 reads flight_status_counts by its primary key
 
-COPY Repairs (
-	rid,
-	repair_date,
-	repair_code,
-	pilot_id,
-	plane_id,
-	technician_id
-)
-FROM 'repairs.csv'
-WITH DELIMITER ',';
+--for waitlist promotion: the 'W' rows of a flight in rnum (FIFO) order; only
+--waitlisted rows are indexed, so promotion cost does not grow with a flight's
+--reserved and cancelled reservations
+CREATE INDEX reservation_waitlist
+ON Reservation(fid, rnum) WHERE status = 'W';
 
-COPY Schedule (
-	id,
-	flightNum,
-	departure_time,
-	arrival_time
-)
-FROM 'schedule.csv'
-WITH DELIMITER ',';
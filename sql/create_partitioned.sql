@@ -0,0 +1,514 @@
+----------------------------------------------------------------------
+-- Partitioned variant of create.sql (needs PostgreSQL 13 or later) --
+----------------------------------------------------------------------
+--Flight and Schedule are range partitioned by departure month, and the
+--reservations by the departure month of their flight, so the traffic on
+--upcoming flights touches a few small partitions and old months can be
+--detached or archived (archive_month_partitions, PartitionMaintenance).
+--Run it instead of create.sql; an existing database is moved over online
+--with PartitionMigrator.  The application and loaders work on both.
+--
+--Differences from create.sql:
+-- * a partitioned table's primary key must contain its partition key, so
+--   Flight's is (fnum, actual_departure_date).  flight_numbers keeps one row
+--   per fnum with its departure date; it makes fnum unique and is what
+--   FlightInfo, Schedule and Reservation reference.  The triggers on Flight
+--   keep it in step; inserting an existing fnum is skipped (0 rows), as
+--   INSERT ... ON CONFLICT DO NOTHING does, and a flight's number and
+--   departure date cannot be updated.
+-- * Reservation is a view over reservation_part, which adds the departure
+--   date as partition key.  Inserts through the view look it up in
+--   flight_numbers; selects, updates and deletes work as on the table.
+--   reservation_numbers makes rnum unique across the partitions the same
+--   way flight_numbers does for fnum; a reservation's rnum cannot be updated.
+-- * lookups by fnum or rnum alone probe the index of every attached
+--   partition; archiving old months keeps their number small.
+-- * foreign keys are DEFERRABLE (checked per statement unless deferred) so
+--   the migration can replace referenced rows within a transaction.
+-- * new months need their partitions ahead of time (create_month_partitions,
+--   PartitionMaintenance); rows outside them land in the DEFAULT partitions.
+DROP TABLE IF EXISTS Customer CASCADE;
+DROP TABLE IF EXISTS Flight CASCADE;
+DROP TABLE IF EXISTS flight_numbers CASCADE;
+DROP TABLE IF EXISTS Pilot CASCADE;
+DROP TABLE IF EXISTS Plane CASCADE;
+DROP TABLE IF EXISTS Technician CASCADE;
+
+--Reservation is a table in create.sql and a view here
+DO $drop_reservation$
+BEGIN
+	IF EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass('reservation') AND relkind = 'v') THEN
+		DROP VIEW Reservation CASCADE;
+	END IF;
+END;
+$drop_reservation$;
+DROP TABLE IF EXISTS Reservation CASCADE;
+DROP TABLE IF EXISTS reservation_part CASCADE;
+DROP TABLE IF EXISTS reservation_numbers CASCADE;
+DROP TABLE IF EXISTS FlightInfo CASCADE;
+DROP TABLE IF EXISTS Repairs CASCADE;
+DROP TABLE IF EXISTS Schedule CASCADE;
+
+DROP TABLE IF EXISTS repairs_per_plane CASCADE;
+DROP TABLE IF EXISTS repairs_per_year CASCADE;
+DROP TABLE IF EXISTS flight_status_counts CASCADE;
+DROP SEQUENCE IF EXISTS rnum_seq CASCADE;
+-------------
+---DOMAINS---
+-------------
+CREATE DOMAIN us_postal_code AS TEXT CHECK(VALUE ~ '^\d{5}$' OR VALUE ~ '^\d{5}-\d{4}$');
+CREATE DOMAIN _STATUS CHAR(1) CHECK (value IN ( 'W' , 'C', 'R' ) );
+CREATE DOMAIN _GENDER CHAR(1) CHECK (value IN ( 'F' , 'M' ) );
+CREATE DOMAIN _CODE CHAR(2) CHECK (value IN ( 'MJ' , 'MN', 'SV' ) ); --Major, Minimum, Service
+CREATE DOMAIN _PINTEGER AS int4 CHECK(VALUE > 0);
+CREATE DOMAIN _PZEROINTEGER AS int4 CHECK(VALUE >= 0);
+CREATE DOMAIN _YEAR_1970 AS int4 CHECK(VALUE >= 0);
+CREATE DOMAIN _SEATS AS int4 CHECK(VALUE > 0 AND VALUE < 500);--Plane Seats
+
+------------
+CREATE SEQUENCE rnum_seq START WITH 10000;
+
+------------
+---TABLES---
+------------
+CREATE TABLE Customer
+(
+	id INTEGER NOT NULL,
+	fname CHAR(24) NOT NULL,
+	lname CHAR(24) NOT NULL,
+	gtype _GENDER NOT NULL,
+	dob DATE NOT NULL,
+	address CHAR(256),
+	phone CHAR(10),
+	zipcode char(10),
+	PRIMARY KEY (id)
+);
+CREATE TABLE Pilot
+(
+	id INTEGER NOT NULL,
+	fullname CHAR(128),
+	nationality CHAR(24),
+	PRIMARY KEY (id)
+);
+
+CREATE TABLE Flight
+(
+	fnum INTEGER NOT NULL,
+	cost _PINTEGER NOT NULL,
+	num_sold _PZEROINTEGER NOT NULL,
+	num_stops _PZEROINTEGER NOT NULL,
+	actual_departure_date DATE NOT NULL,
+	actual_arrival_date DATE NOT NULL,
+	arrival_airport CHAR(5) NOT NULL,-- AIRPORT CODE --
+	departure_airport CHAR(5) NOT NULL,-- AIRPORT CODE --
+	PRIMARY KEY (fnum, actual_departure_date)
+) PARTITION BY RANGE (actual_departure_date);
+
+--one row per flight number, including those of archived months, so an fnum
+--is never given to two flights
+CREATE TABLE flight_numbers
+(
+	fnum INTEGER NOT NULL,
+	departure_date DATE NOT NULL,
+	PRIMARY KEY (fnum)
+);
+
+--one row per reservation number, including those of archived months, kept
+--by the triggers on reservation_part
+CREATE TABLE reservation_numbers
+(
+	rnum INTEGER NOT NULL,
+	PRIMARY KEY (rnum)
+);
+
+CREATE TABLE Plane
+(
+	id INTEGER NOT NULL,
+	make CHAR(32) NOT NULL,
+	model CHAR(64) NOT NULL,
+	age _YEAR_1970 NOT NULL,
+	seats _SEATS NOT NULL,
+	PRIMARY KEY (id)
+);
+
+CREATE TABLE Technician
+(
+	id INTEGER NOT NULL,
+	full_name CHAR(128) NOT NULL,
+	PRIMARY KEY (id)
+);
+---------------
+---RELATIONS---
+---------------
+
+CREATE TABLE reservation_part
+(
+	rnum INTEGER NOT NULL DEFAULT nextval('rnum_seq'),
+	cid INTEGER NOT NULL,
+	fid INTEGER NOT NULL,
+	status _STATUS,
+	departure_date DATE NOT NULL,-- of flight fid --
+	PRIMARY KEY (rnum, departure_date),
+	FOREIGN KEY (cid) REFERENCES Customer(id) DEFERRABLE,
+	FOREIGN KEY (fid) REFERENCES flight_numbers(fnum) DEFERRABLE
+) PARTITION BY RANGE (departure_date);
+ALTER SEQUENCE rnum_seq OWNED BY reservation_part.rnum;
+
+CREATE VIEW Reservation AS
+SELECT rnum, cid, fid, status FROM reservation_part;
+ALTER VIEW Reservation ALTER COLUMN rnum SET DEFAULT nextval('rnum_seq');
+
+CREATE TABLE FlightInfo
+(
+	fiid INTEGER NOT NULL,
+	flight_id INTEGER NOT NULL,
+	pilot_id INTEGER NOT NULL,
+	plane_id INTEGER NOT NULL,
+	PRIMARY KEY (fiid),
+	FOREIGN KEY (flight_id) REFERENCES flight_numbers(fnum) DEFERRABLE,
+	FOREIGN KEY (pilot_id) REFERENCES Pilot(id) DEFERRABLE,
+	FOREIGN KEY (plane_id) REFERENCES Plane(id) DEFERRABLE
+);
+
+CREATE TABLE Repairs
+(
+	rid INTEGER NOT NULL,
+	repair_date DATE NOT NULL,
+	repair_code _CODE,
+	pilot_id INTEGER NOT NULL,
+	plane_id INTEGER NOT NULL,
+	technician_id INTEGER NOT NULL,
+	PRIMARY KEY (rid),
+	FOREIGN KEY (pilot_id) REFERENCES Pilot(id) DEFERRABLE,
+	FOREIGN KEY (plane_id) REFERENCES Plane(id) DEFERRABLE,
+	FOREIGN KEY (technician_id) REFERENCES Technician(id) DEFERRABLE
+);
+
+CREATE TABLE Schedule
+(
+	id INTEGER NOT NULL,
+	flightNum INTEGER NOT NULL,
+	departure_time DATE NOT NULL,
+	arrival_time DATE NOT NULL,
+	PRIMARY KEY (id, departure_time),
+	FOREIGN KEY (flightNum) REFERENCES flight_numbers(fnum) DEFERRABLE
+) PARTITION BY RANGE (departure_time);
+
+-------------------------
+---FLIGHT NUMBERS--------
+-------------------------
+--claims the fnum; a flight number already in use skips the row
+CREATE OR REPLACE FUNCTION flight_number_insert() RETURNS TRIGGER AS $flight_number_insert$
+BEGIN
+	INSERT INTO flight_numbers (fnum, departure_date) VALUES (NEW.fnum, NEW.actual_departure_date)
+	ON CONFLICT (fnum) DO NOTHING;
+	IF NOT FOUND THEN
+		RETURN NULL;
+	END IF;
+	RETURN NEW;
+END;
+$flight_number_insert$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_number_insert BEFORE INSERT ON Flight
+FOR EACH ROW EXECUTE PROCEDURE flight_number_insert();
+
+--the reservations' partitions follow the departure date, so it cannot move
+CREATE OR REPLACE FUNCTION flight_number_update() RETURNS TRIGGER AS $flight_number_update$
+BEGIN
+	IF NEW.fnum <> OLD.fnum OR NEW.actual_departure_date <> OLD.actual_departure_date THEN
+		RAISE EXCEPTION 'flight %: the number and departure date of a flight cannot be changed', OLD.fnum;
+	END IF;
+	RETURN NEW;
+END;
+$flight_number_update$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_number_update BEFORE UPDATE OF fnum, actual_departure_date ON Flight
+FOR EACH ROW EXECUTE PROCEDURE flight_number_update();
+
+--fails like the foreign keys of create.sql while the flight is referenced
+CREATE OR REPLACE FUNCTION flight_number_delete() RETURNS TRIGGER AS $flight_number_delete$
+BEGIN
+	DELETE FROM flight_numbers WHERE fnum = OLD.fnum;
+	RETURN NULL;
+END;
+$flight_number_delete$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_number_delete AFTER DELETE ON Flight
+FOR EACH ROW EXECUTE PROCEDURE flight_number_delete();
+
+--routes a reservation to the partition of its flight's departure month
+CREATE OR REPLACE FUNCTION reservation_insert() RETURNS TRIGGER AS $reservation_insert$
+DECLARE
+	departure DATE;
+BEGIN
+	SELECT departure_date INTO departure FROM flight_numbers WHERE fnum = NEW.fid;
+	IF NOT FOUND THEN
+		RAISE foreign_key_violation USING MESSAGE = format(
+			'insert into Reservation violates foreign key: flight %s does not exist', NEW.fid);
+	END IF;
+	INSERT INTO reservation_part (rnum, cid, fid, status, departure_date)
+	VALUES (NEW.rnum, NEW.cid, NEW.fid, NEW.status, departure);
+	RETURN NEW;
+END;
+$reservation_insert$ LANGUAGE plpgsql;
+CREATE TRIGGER reservation_insert INSTEAD OF INSERT ON Reservation
+FOR EACH ROW EXECUTE PROCEDURE reservation_insert();
+
+-------------------------
+---RESERVATION NUMBERS---
+-------------------------
+--claims the rnum; the primary key only covers one partition.  The row lock
+--on reservation_numbers serializes concurrent inserts of one rnum whatever
+--their months.
+CREATE OR REPLACE FUNCTION reservation_number_insert() RETURNS TRIGGER AS $reservation_number_insert$
+BEGIN
+	INSERT INTO reservation_numbers (rnum) VALUES (NEW.rnum) ON CONFLICT (rnum) DO NOTHING;
+	IF NOT FOUND THEN
+		RAISE unique_violation USING MESSAGE = format('reservation %s already exists', NEW.rnum);
+	END IF;
+	RETURN NEW;
+END;
+$reservation_number_insert$ LANGUAGE plpgsql;
+CREATE TRIGGER reservation_number_insert BEFORE INSERT ON reservation_part
+FOR EACH ROW EXECUTE PROCEDURE reservation_number_insert();
+
+CREATE OR REPLACE FUNCTION reservation_number_update() RETURNS TRIGGER AS $reservation_number_update$
+BEGIN
+	IF NEW.rnum <> OLD.rnum THEN
+		RAISE EXCEPTION 'reservation %: the number of a reservation cannot be changed', OLD.rnum;
+	END IF;
+	RETURN NEW;
+END;
+$reservation_number_update$ LANGUAGE plpgsql;
+CREATE TRIGGER reservation_number_update BEFORE UPDATE OF rnum ON reservation_part
+FOR EACH ROW EXECUTE PROCEDURE reservation_number_update();
+
+--BEFORE rather than AFTER: a reservation moved to another month's partition
+--runs the BEFORE DELETE and BEFORE INSERT triggers but no AFTER DELETE one
+CREATE OR REPLACE FUNCTION reservation_number_delete() RETURNS TRIGGER AS $reservation_number_delete$
+BEGIN
+	DELETE FROM reservation_numbers WHERE rnum = OLD.rnum;
+	RETURN OLD;
+END;
+$reservation_number_delete$ LANGUAGE plpgsql;
+CREATE TRIGGER reservation_number_delete BEFORE DELETE ON reservation_part
+FOR EACH ROW EXECUTE PROCEDURE reservation_number_delete();
+
+--TRUNCATE skips row triggers
+CREATE OR REPLACE FUNCTION reservation_number_truncate() RETURNS TRIGGER AS $reservation_number_truncate$
+BEGIN
+	TRUNCATE reservation_numbers;
+	RETURN NULL;
+END;
+$reservation_number_truncate$ LANGUAGE plpgsql;
+CREATE TRIGGER reservation_number_truncate AFTER TRUNCATE ON reservation_part
+FOR EACH STATEMENT EXECUTE PROCEDURE reservation_number_truncate();
+
+CREATE OR REPLACE FUNCTION reservation_flight_update() RETURNS TRIGGER AS $reservation_flight_update$
+BEGIN
+	IF NOT EXISTS (SELECT 1 FROM flight_numbers WHERE fnum = NEW.fid AND departure_date = NEW.departure_date) THEN
+		RAISE EXCEPTION 'reservation %: flight % does not depart on %', NEW.rnum, NEW.fid, NEW.departure_date;
+	END IF;
+	RETURN NEW;
+END;
+$reservation_flight_update$ LANGUAGE plpgsql;
+CREATE TRIGGER reservation_flight_update BEFORE UPDATE OF fid, departure_date ON reservation_part
+FOR EACH ROW EXECUTE PROCEDURE reservation_flight_update();
+
+-------------------------
+---REPAIR AGGREGATES-----
+-------------------------
+--as in create.sql
+CREATE TABLE repairs_per_plane
+(
+	plane_id INTEGER NOT NULL,
+	total_repairs INTEGER NOT NULL,
+	PRIMARY KEY (plane_id)
+);
+
+CREATE TABLE repairs_per_year
+(
+	year INTEGER NOT NULL,
+	total_repairs INTEGER NOT NULL,
+	PRIMARY KEY (year)
+);
+
+CREATE OR REPLACE FUNCTION repairs_summary() RETURNS TRIGGER AS $repairs_summary$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE repairs_per_plane SET total_repairs = total_repairs - 1 WHERE plane_id = OLD.plane_id;
+		UPDATE repairs_per_year SET total_repairs = total_repairs - 1
+		WHERE year = EXTRACT(year FROM OLD.repair_date)::INTEGER;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		INSERT INTO repairs_per_plane (plane_id, total_repairs) VALUES (NEW.plane_id, 1)
+		ON CONFLICT (plane_id) DO UPDATE SET total_repairs = repairs_per_plane.total_repairs + 1;
+		INSERT INTO repairs_per_year (year, total_repairs) VALUES (EXTRACT(year FROM NEW.repair_date)::INTEGER, 1)
+		ON CONFLICT (year) DO UPDATE SET total_repairs = repairs_per_year.total_repairs + 1;
+	END IF;
+	RETURN NULL;
+END;
+$repairs_summary$ LANGUAGE plpgsql;
+CREATE TRIGGER repairs_summary AFTER INSERT OR DELETE OR UPDATE OF plane_id, repair_date ON Repairs
+FOR EACH ROW EXECUTE PROCEDURE repairs_summary();
+
+CREATE OR REPLACE FUNCTION repairs_summary_truncate() RETURNS TRIGGER AS $repairs_summary_truncate$
+BEGIN
+	TRUNCATE repairs_per_plane, repairs_per_year;
+	RETURN NULL;
+END;
+$repairs_summary_truncate$ LANGUAGE plpgsql;
+CREATE TRIGGER repairs_summary_truncate AFTER TRUNCATE ON Repairs
+FOR EACH STATEMENT EXECUTE PROCEDURE repairs_summary_truncate();
+
+CREATE OR REPLACE FUNCTION rebuild_repair_summaries() RETURNS VOID AS $rebuild$
+BEGIN
+	LOCK TABLE Repairs IN SHARE MODE;
+	TRUNCATE repairs_per_plane, repairs_per_year;
+	INSERT INTO repairs_per_plane (plane_id, total_repairs)
+	SELECT plane_id, COUNT(*) FROM Repairs GROUP BY plane_id;
+	INSERT INTO repairs_per_year (year, total_repairs)
+	SELECT EXTRACT(year FROM repair_date)::INTEGER, COUNT(*) FROM Repairs GROUP BY 1;
+END;
+$rebuild$ LANGUAGE plpgsql;
+-------------------------
+---PASSENGER COUNTS------
+-------------------------
+--as in create.sql, with the triggers on the partitioned table
+CREATE TABLE flight_status_counts
+(
+	fid INTEGER NOT NULL,
+	status _STATUS NOT NULL,
+	passengers INTEGER NOT NULL,
+	PRIMARY KEY (fid, status)
+);
+
+CREATE OR REPLACE FUNCTION flight_status_count() RETURNS TRIGGER AS $flight_status_count$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		IF OLD.status IS NOT NULL THEN
+			UPDATE flight_status_counts SET passengers = passengers - 1
+			WHERE fid = OLD.fid AND status = OLD.status;
+		END IF;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		IF NEW.status IS NOT NULL THEN
+			INSERT INTO flight_status_counts (fid, status, passengers) VALUES (NEW.fid, NEW.status, 1)
+			ON CONFLICT (fid, status) DO UPDATE SET passengers = flight_status_counts.passengers + 1;
+		END IF;
+	END IF;
+	RETURN NULL;
+END;
+$flight_status_count$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_status_count AFTER INSERT OR DELETE OR UPDATE OF fid, status ON reservation_part
+FOR EACH ROW EXECUTE PROCEDURE flight_status_count();
+
+CREATE OR REPLACE FUNCTION flight_status_count_truncate() RETURNS TRIGGER AS $flight_status_count_truncate$
+BEGIN
+	TRUNCATE flight_status_counts;
+	RETURN NULL;
+END;
+$flight_status_count_truncate$ LANGUAGE plpgsql;
+CREATE TRIGGER flight_status_count_truncate AFTER TRUNCATE ON reservation_part
+FOR EACH STATEMENT EXECUTE PROCEDURE flight_status_count_truncate();
+-------------------------
+---PARTITIONS------------
+-------------------------
+--rows of months without a partition; keep them empty by creating partitions
+--ahead, since a month cannot be created while its rows sit here
+CREATE TABLE flight_default PARTITION OF Flight DEFAULT;
+CREATE TABLE schedule_default PARTITION OF Schedule DEFAULT;
+CREATE TABLE reservation_part_default PARTITION OF reservation_part DEFAULT;
+
+--creates the missing partitions <table>_YYYY_MM of the months from first_day
+--to last_day and returns their names.  A month whose rows already sit in a
+--DEFAULT partition is skipped with a warning.
+CREATE OR REPLACE FUNCTION create_month_partitions(first_day DATE, last_day DATE) RETURNS SETOF TEXT AS $create_month_partitions$
+DECLARE
+	parents TEXT[] := ARRAY['flight', 'schedule', 'reservation_part'];
+	keys TEXT[] := ARRAY['actual_departure_date', 'departure_time', 'departure_date'];
+	lo DATE := date_trunc('month', first_day)::DATE;
+	hi DATE;
+	part TEXT;
+	stray BOOLEAN;
+BEGIN
+	WHILE lo <= last_day LOOP
+		hi := (lo + INTERVAL '1 month')::DATE;
+		FOR i IN 1 .. array_length(parents, 1) LOOP
+			part := parents[i] || to_char(lo, '_YYYY_MM');
+			CONTINUE WHEN to_regclass(part) IS NOT NULL;
+			EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE %I >= %L AND %I < %L)',
+				parents[i] || '_default', keys[i], lo, keys[i], hi) INTO stray;
+			IF stray THEN
+				RAISE WARNING '% not created: % holds rows of that month', part, parents[i] || '_default';
+				CONTINUE;
+			END IF;
+			EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)', part, parents[i], lo, hi);
+			RETURN NEXT part;
+		END LOOP;
+		lo := hi;
+	END LOOP;
+END;
+$create_month_partitions$ LANGUAGE plpgsql;
+
+--detaches the month partitions that end on or before cutoff and
+--moves them to schema archive, or drops them, returning their names.
+--reservations go first; their flights' counters are dropped with them.
+--detaching locks the parent table briefly.
+CREATE OR REPLACE FUNCTION archive_month_partitions(cutoff DATE, drop_them BOOLEAN) RETURNS SETOF TEXT AS $archive_month_partitions$
+DECLARE
+	parent TEXT;
+	part TEXT;
+BEGIN
+	IF NOT drop_them THEN
+		CREATE SCHEMA IF NOT EXISTS archive;
+	END IF;
+	FOREACH parent IN ARRAY ARRAY['reservation_part', 'schedule', 'flight'] LOOP
+		FOR part IN
+			SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+			WHERE i.inhparent = to_regclass(parent) AND c.relname ~ ('^' || parent || '_\d{4}_\d{2}$')
+			AND to_date(right(c.relname, 7), 'YYYY_MM') + INTERVAL '1 month' <= cutoff
+			ORDER BY c.relname
+		LOOP
+			IF parent = 'reservation_part' THEN
+				EXECUTE format('DELETE FROM flight_status_counts WHERE fid IN (SELECT fid FROM %I)', part);
+			END IF;
+			EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', parent, part);
+			IF drop_them THEN
+				EXECUTE format('DROP TABLE %I', part);
+			ELSE
+				EXECUTE format('ALTER TABLE %I SET SCHEMA archive', part);
+			END IF;
+			RETURN NEXT part;
+		END LOOP;
+	END LOOP;
+END;
+$archive_month_partitions$ LANGUAGE plpgsql;
+
+--the current month and the next three
+SELECT create_month_partitions(CURRENT_DATE, (CURRENT_DATE + INTERVAL '3 months')::DATE);
+---------------------------
+----------INDEXES----------
+---------------------------
+--as in create.sql; each is created on every partition
+
+--for query6
+CREATE INDEX find_plane_seats
+ON Plane(seats, id);
+CREATE INDEX flight_query6
+ON Flight(num_sold, fnum, actual_departure_date);
+CREATE INDEX flight_frm_schedule
+ON Schedule(flightNum);
+CREATE INDEX flightinfo_id
+ON FlightInfo(flight_id, plane_id);
+
+--for query7
+CREATE INDEX plane_repairs_index
+ON Repairs(plane_id);
+
+--for query8
+CREATE INDEX repair_date_index
+ON Repairs(repair_date);
+
+--query9 reads flight_status_counts by its primary key
+
+--for waitlist promotion
+CREATE INDEX reservation_waitlist
+ON reservation_part(fid, rnum) WHERE status = 'W';